@@ -0,0 +1,185 @@
+package com.danmakuchat.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 複数のキーワードを 1 つのオートマトンにまとめ、テキストを 1 回走査するだけで
+ * すべてのキーワードの出現を検出する Aho-Corasick オートマトン。
+ *
+ * キーワードごとに整数のフラグを持たせ、走査中に一致したキーワードのフラグの論理和を求めます。
+ * 大文字・小文字は区別しません。構築後は不変なので、複数のスレッドから同時に走査できます。
+ *
+ * 遷移は状態ごとに文字の昇順に並べた配列で持ち、二分探索で引きます。
+ * 失敗遷移の先の出力はあらかじめ各状態に畳み込んでおくため、1 文字あたりの処理は
+ * 失敗遷移を辿る回数（全体で償却定数）と遷移 1 回分の探索だけです。
+ */
+public final class AhoCorasick {
+    /** キーワードを含まない空のオートマトン */
+    public static final AhoCorasick EMPTY = new AhoCorasick(List.of(), new int[0]);
+
+    // 状態 s からの遷移は edgeChars/edgeTargets の [edgeStart[s], edgeStart[s + 1]) にある
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] failure;
+    private final int[] output;
+
+    /**
+     * オートマトンを構築します。
+     *
+     * @param keywords キーワードの一覧（空文字列は無視される）
+     * @param flags 各キーワードに対応するフラグ
+     */
+    public AhoCorasick(List<String> keywords, int[] flags) {
+        // 1. トライを構築する
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> trieOutput = new ArrayList<>();
+        trie.add(new HashMap<>());
+        trieOutput.add(0);
+
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    trieOutput.add(0);
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            trieOutput.set(state, trieOutput.get(state) | flags[k]);
+        }
+
+        // 2. 遷移を状態ごとに文字の昇順で並べた配列に詰め直す
+        int stateCount = trie.size();
+        edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += trie.get(s).size();
+        }
+        edgeStart[stateCount] = edgeCount;
+        edgeChars = new char[edgeCount];
+        edgeTargets = new int[edgeCount];
+        for (int s = 0; s < stateCount; s++) {
+            Character[] chars = trie.get(s).keySet().toArray(new Character[0]);
+            Arrays.sort(chars);
+            for (int i = 0; i < chars.length; i++) {
+                edgeChars[edgeStart[s] + i] = chars[i];
+                edgeTargets[edgeStart[s] + i] = trie.get(s).get(chars[i]);
+            }
+        }
+
+        // 3. 幅優先で失敗遷移を求め、失敗遷移先の出力を畳み込む
+        failure = new int[stateCount];
+        output = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            output[s] = trieOutput.get(s);
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                failure[child] = step(failure[s], edgeChars[e]);
+                output[child] |= output[failure[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 初期状態を返します。
+     *
+     * @return 初期状態
+     */
+    public int initialState() {
+        return 0;
+    }
+
+    /**
+     * 1 文字進めた後の状態を返します。
+     *
+     * @param state 現在の状態
+     * @param c 次の文字
+     * @return 次の状態
+     */
+    public int next(int state, char c) {
+        return step(state, Character.toLowerCase(c));
+    }
+
+    /**
+     * 状態で終わるキーワードのフラグ（失敗遷移先の分を含む）を返します。
+     *
+     * @param state 状態
+     * @return フラグの論理和
+     */
+    public int output(int state) {
+        return output[state];
+    }
+
+    /**
+     * 文字列全体を走査し、出現したキーワードのフラグの論理和を返します。
+     *
+     * @param text 走査する文字列
+     * @return フラグの論理和（一致しなければ 0）
+     */
+    public int scan(CharSequence text) {
+        int state = 0;
+        int flags = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            flags |= output[state];
+        }
+        return flags;
+    }
+
+    public boolean isEmpty() {
+        return edgeChars.length == 0;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int edge = findEdge(state, c);
+            if (edge != -1) {
+                return edgeTargets[edge];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    private int findEdge(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char m = edgeChars[middle];
+            if (m < c) {
+                low = middle + 1;
+            } else if (m > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,23 @@
+package com.danmakuchat.chat;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link MessageClassifier} による判定結果。
+ *
+ * @param kind チャット行の種類
+ * @param sender 送信者名（システムメッセージの場合は null）
+ * @param bodyStart 平坦化したテキストで本文が始まる位置（システムメッセージの場合は 0）
+ */
+public record ChatClassification(MessageKind kind, @Nullable String sender, int bodyStart) {
+    static final ChatClassification SYSTEM = new ChatClassification(MessageKind.SYSTEM, null, 0);
+
+    /**
+     * プレイヤーが送信したチャットかどうかを返します。
+     *
+     * @return バニラ形式またはサーバー形式のチャットの場合は true
+     */
+    public boolean isUserMessage() {
+        return kind != MessageKind.SYSTEM;
+    }
+}
@@ -0,0 +1,147 @@
+package com.danmakuchat.chat;
+
+/**
+ * チャット行の先頭部分の文字列から、プレイヤーチャットかどうかと送信者名を判定する手書きのパーサー。
+ *
+ * Minecraft のテキスト型に依存しないため、ゲームの外（ベンチマークやシミュレーター）でも使えます。
+ * テキストのコンポーネントから先頭部分を集めるのは {@code MessageClassifier} の役割です。
+ *
+ * 認識する形式:
+ * <ul>
+ *   <li>{@code <name> message}（バニラ）</li>
+ *   <li>{@code [rank] name: message}、{@code name: message}</li>
+ *   <li>{@code [rank] name » message}、{@code name » message}</li>
+ * </ul>
+ * ランクの付かない {@code name: message} は誤判定を減らすため、名前がプレイヤー名として有効な
+ * 文字（英数字と _、16 文字以内）だけの場合に限ります。それでも「Note: ...」のような
+ * 1 単語で始まるシステムメッセージはプレイヤーチャットと判定されることがあります。
+ */
+public final class ChatLineParser {
+    /** プレイヤー名の最大長 */
+    private static final int MAX_PLAYER_NAME_LENGTH = 16;
+    /** ランク付きの形式で許す表示名の最大長（ニックネームを考慮して長めにとる） */
+    private static final int MAX_DISPLAY_NAME_LENGTH = 32;
+    private static final char ARROW = '»';
+
+    private ChatLineParser() {
+    }
+
+    /**
+     * 先頭部分の文字列を分類します。
+     *
+     * @param chars 先頭部分
+     * @param length 有効な文字数
+     * @param truncated 先頭部分の後ろにまだ文字が続いている場合は true
+     * @return 判定結果
+     */
+    public static ChatClassification classify(char[] chars, int length, boolean truncated) {
+        if (length == 0) {
+            return ChatClassification.SYSTEM;
+        }
+
+        if (chars[0] == '<') {
+            return classifyVanilla(chars, length, truncated);
+        }
+        return classifyServer(chars, length, truncated);
+    }
+
+    /**
+     * {@code <name> message} 形式を判定します。
+     */
+    private static ChatClassification classifyVanilla(char[] chars, int length, boolean truncated) {
+        for (int i = 1; i < length; i++) {
+            if (chars[i] != '>') {
+                continue;
+            }
+            // 名前が空、または「> 」の後に本文がなければシステムメッセージ
+            if (i == 1 || !hasBody(chars, length, truncated, i + 1)) {
+                return ChatClassification.SYSTEM;
+            }
+            return new ChatClassification(MessageKind.VANILLA_CHAT, new String(chars, 1, i - 1), i + 2);
+        }
+        return ChatClassification.SYSTEM;
+    }
+
+    /**
+     * {@code [rank] name: message} および {@code [rank] name » message} 形式を判定します。
+     */
+    private static ChatClassification classifyServer(char[] chars, int length, boolean truncated) {
+        int pos = 0;
+
+        // 先頭の [rank] を読み飛ばす（複数続いてもよい）
+        boolean ranked = false;
+        while (pos < length && chars[pos] == '[') {
+            int close = indexOf(chars, length, ']', pos + 1);
+            if (close == -1) {
+                return ChatClassification.SYSTEM;
+            }
+            ranked = true;
+            pos = skipSpaces(chars, length, close + 1);
+        }
+
+        // 名前を読む。ランクがない場合はプレイヤー名として有効な文字だけを許す
+        int nameStart = pos;
+        int maxNameLength = ranked ? MAX_DISPLAY_NAME_LENGTH : MAX_PLAYER_NAME_LENGTH;
+        while (pos < length && pos - nameStart <= maxNameLength && isNameChar(chars[pos], ranked)) {
+            pos++;
+        }
+        int nameEnd = pos;
+        if (nameEnd == nameStart || nameEnd - nameStart > maxNameLength || pos >= length) {
+            return ChatClassification.SYSTEM;
+        }
+
+        // 区切り: 「: 」または「 » 」
+        int separatorEnd;
+        if (chars[pos] == ':') {
+            separatorEnd = pos + 1;
+        } else {
+            pos = skipSpaces(chars, length, pos);
+            if (pos >= length || chars[pos] != ARROW) {
+                return ChatClassification.SYSTEM;
+            }
+            separatorEnd = pos + 1;
+        }
+
+        if (!hasBody(chars, length, truncated, separatorEnd)) {
+            return ChatClassification.SYSTEM;
+        }
+        return new ChatClassification(
+            MessageKind.SERVER_CHAT, new String(chars, nameStart, nameEnd - nameStart), separatorEnd + 1
+        );
+    }
+
+    /**
+     * 区切りの直後が空白で、その後に本文が続くかどうかを判定します。
+     */
+    private static boolean hasBody(char[] chars, int length, boolean truncated, int separatorEnd) {
+        if (separatorEnd >= length || chars[separatorEnd] != ' ') {
+            return false;
+        }
+        return separatorEnd + 1 < length || truncated;
+    }
+
+    private static boolean isNameChar(char c, boolean ranked) {
+        if (ranked) {
+            // ランク付きの形式ではニックネームの記号も許すが、区切りと空白は名前に含めない
+            return c != ':' && c != ARROW && !Character.isWhitespace(c);
+        }
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static int indexOf(char[] chars, int length, char target, int from) {
+        for (int i = from; i < length; i++) {
+            if (chars[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(char[] chars, int length, int from) {
+        int pos = from;
+        while (pos < length && chars[pos] == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,17 @@
+package com.danmakuchat.chat;
+
+/**
+ * チャット行の種類。
+ */
+public enum MessageKind {
+    /** バニラ形式のプレイヤーチャット（{@code <name> message}） */
+    VANILLA_CHAT,
+    /** サーバー独自形式のプレイヤーチャット（{@code [rank] name: message}、{@code name » message} など） */
+    SERVER_CHAT,
+    /** 自分宛てのささやき（{@code /msg}、{@code /tell}） */
+    WHISPER,
+    /** ローカルの受信サーバー経由で届いた外部チャット（Discord のブリッジなど） */
+    EXTERNAL,
+    /** 上記のどれにも当てはまらないシステムメッセージ */
+    SYSTEM
+}
@@ -0,0 +1,56 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 弾幕の動きを表す式をまとめたユーティリティ。
+ *
+ * メッセージは出現後一定の速度で右から左へ流れるため、位置や画面から出る時刻は
+ * 出現位置・出現時刻・速度・幅から閉じた式で求まります。
+ * 描画側のメッセージ、SoA ストア、レーンテーブルがすべて同じ式を使うように、ここにまとめています。
+ */
+public final class DanmakuMotion {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private DanmakuMotion() {
+    }
+
+    /**
+     * 目標表示時間で画面を横切る速度を求めます。
+     * 移動距離は画面幅とメッセージ幅の和（右端の外から左端の外まで）です。
+     *
+     * @param screenWidth 画面幅（ピクセル）
+     * @param textWidth メッセージの幅（ピクセル）
+     * @param targetDuration 目標表示時間（秒）
+     * @param speedMultiplier ユーザー設定の速度倍率
+     * @return 速度（ピクセル/秒）
+     */
+    public static float speed(int screenWidth, int textWidth, float targetDuration, float speedMultiplier) {
+        float totalDistance = (float) screenWidth + (float) textWidth;
+        return (totalDistance / targetDuration) * speedMultiplier;
+    }
+
+    /**
+     * 指定した時刻の X 座標を求めます。
+     *
+     * @param startX 出現位置
+     * @param speed 速度（ピクセル/秒）
+     * @param spawnNanos 出現時刻（{@link System#nanoTime()} 基準）
+     * @param nowNanos 現在時刻
+     * @return X 座標（ピクセル）
+     */
+    public static float positionAt(float startX, float speed, long spawnNanos, long nowNanos) {
+        return startX - speed * ((nowNanos - spawnNanos) / 1_000_000_000.0f);
+    }
+
+    /**
+     * メッセージの右端が画面の左端（x = 0）を過ぎる時刻を求めます。
+     *
+     * @param startX 出現位置
+     * @param width メッセージの幅（ピクセル）
+     * @param speed 速度（ピクセル/秒）
+     * @param spawnNanos 出現時刻
+     * @return 画面から出る時刻
+     */
+    public static long exitTime(float startX, int width, float speed, long spawnNanos) {
+        return spawnNanos + (long) ((startX + width) / speed * NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,237 @@
+package com.danmakuchat.danmaku;
+
+import java.util.Arrays;
+
+/**
+ * 表示中のメッセージを構造体の配列ではなく、配列の構造体（SoA）として保持するストア。
+ *
+ * 位置・速度・幅などをメッセージごとのオブジェクトに散らばらせず、
+ * プリミティブ型の並列配列（列）にまとめて持ちます。レイアウト済みのテキストと繰り返し回数は別の配列に置きます。
+ * スロットは先頭から詰めて使い、削除された分はその場で再利用するため、
+ * 定常状態ではメッセージごとの割り当ては発生しません。
+ * 更新と削除の処理は列に対する単純なループになり、JIT による自動ベクトル化が効きやすくなります。
+ *
+ * ストアに入るのは出現済みのメッセージだけなので、初期化済みかどうかの列は持ちません。
+ * Minecraft に依存しないよう、レイアウト済みテキストの型は型引数 {@code L} で受け取ります。
+ *
+ * @param <L> レイアウト済みテキストの型
+ */
+public class DanmakuStore<L> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // 列（インデックス i がひとつのメッセージに対応する）
+    private float[] posX = new float[INITIAL_CAPACITY];
+    private float[] startX = new float[INITIAL_CAPACITY];
+    private float[] posY = new float[INITIAL_CAPACITY];
+    private float[] speed = new float[INITIAL_CAPACITY];
+    private int[] textWidth = new int[INITIAL_CAPACITY];
+    private int[] lane = new int[INITIAL_CAPACITY];
+    private long[] spawnNanos = new long[INITIAL_CAPACITY];
+    private long[] exitNanos = new long[INITIAL_CAPACITY];
+    private Object[] layout = new Object[INITIAL_CAPACITY];
+    private RepeatCounter[] repeats = new RepeatCounter[INITIAL_CAPACITY];
+    // 「×N」のレイアウトと、それを作ったときの回数（回数が変わったときだけ作り直す）
+    private Object[] repeatSuffix = new Object[INITIAL_CAPACITY];
+    private int[] repeatSuffixCount = new int[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    // 最も早く画面から出る時刻。これより前なら削除の走査を省略できる
+    private long earliestExitNanos = Long.MAX_VALUE;
+
+    /**
+     * 出現済みのメッセージの値を列にコピーして追加します。
+     *
+     * @param startX 出現時の X 位置
+     * @param posY Y 位置
+     * @param speed 速度（ピクセル/秒）
+     * @param textWidth 幅（ピクセル）
+     * @param lane レーンインデックス
+     * @param spawnNanos 出現時刻
+     * @param exitNanos 画面から出る時刻
+     * @param layout レイアウト済みのテキスト
+     * @param repeats まとめられた回数（出現後の繰り返しも反映される）
+     * @param repeatSuffix 「×N」のレイアウト、まとめられていなければ null
+     * @param repeatSuffixCount {@code repeatSuffix} を作ったときの回数
+     */
+    public void add(float startX, float posY, float speed, int textWidth, int lane, long spawnNanos, long exitNanos,
+                    L layout, RepeatCounter repeats, L repeatSuffix, int repeatSuffixCount) {
+        if (size == posX.length) {
+            grow();
+        }
+
+        int i = size++;
+        this.startX[i] = startX;
+        this.posX[i] = startX;
+        this.posY[i] = posY;
+        this.speed[i] = speed;
+        this.textWidth[i] = textWidth;
+        this.lane[i] = lane;
+        this.spawnNanos[i] = spawnNanos;
+        this.exitNanos[i] = exitNanos;
+        this.layout[i] = layout;
+        this.repeats[i] = repeats;
+        this.repeatSuffix[i] = repeatSuffix;
+        this.repeatSuffixCount[i] = repeatSuffixCount;
+
+        earliestExitNanos = Math.min(earliestExitNanos, exitNanos);
+    }
+
+    /**
+     * すべてのメッセージの位置を求め直し、画面外に出たものを削除します。
+     *
+     * @param nowNanos 現在の単調時刻（{@link System#nanoTime()}）
+     */
+    public void update(long nowNanos) {
+        int count = size;
+
+        // 位置の計算：分岐のない列単位のループ
+        for (int i = 0; i < count; i++) {
+            posX[i] = startX[i] - speed[i] * ((nowNanos - spawnNanos[i]) * 1.0e-9f);
+        }
+
+        if (nowNanos < earliestExitNanos) {
+            return;
+        }
+
+        // 画面外に出たメッセージを詰めて削除し、空いたスロットを再利用できるようにする
+        int kept = 0;
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (exitNanos[i] > nowNanos) {
+                if (kept != i) {
+                    move(i, kept);
+                }
+                earliest = Math.min(earliest, exitNanos[kept]);
+                kept++;
+            }
+        }
+
+        // 参照を残さないようにレイアウトと繰り返し回数の列だけは解放する
+        Arrays.fill(layout, kept, count, null);
+        Arrays.fill(repeats, kept, count, null);
+        Arrays.fill(repeatSuffix, kept, count, null);
+        size = kept;
+        earliestExitNanos = earliest;
+    }
+
+    private void move(int from, int to) {
+        posX[to] = posX[from];
+        startX[to] = startX[from];
+        posY[to] = posY[from];
+        speed[to] = speed[from];
+        textWidth[to] = textWidth[from];
+        lane[to] = lane[from];
+        spawnNanos[to] = spawnNanos[from];
+        exitNanos[to] = exitNanos[from];
+        layout[to] = layout[from];
+        repeats[to] = repeats[from];
+        repeatSuffix[to] = repeatSuffix[from];
+        repeatSuffixCount[to] = repeatSuffixCount[from];
+    }
+
+    private void grow() {
+        int capacity = posX.length * 2;
+        posX = Arrays.copyOf(posX, capacity);
+        startX = Arrays.copyOf(startX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        textWidth = Arrays.copyOf(textWidth, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+        spawnNanos = Arrays.copyOf(spawnNanos, capacity);
+        exitNanos = Arrays.copyOf(exitNanos, capacity);
+        layout = Arrays.copyOf(layout, capacity);
+        repeats = Arrays.copyOf(repeats, capacity);
+        repeatSuffix = Arrays.copyOf(repeatSuffix, capacity);
+        repeatSuffixCount = Arrays.copyOf(repeatSuffixCount, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 最も早く画面から出る時刻の下限を返します。空の場合は {@link Long#MAX_VALUE} です。
+     */
+    public long getEarliestExitNanos() {
+        return earliestExitNanos;
+    }
+
+    /**
+     * 直近の {@link #update(long)} 時点の X 位置を取得します。
+     */
+    public float getPosX(int index) {
+        return posX[index];
+    }
+
+    public float getStartX(int index) {
+        return startX[index];
+    }
+
+    public float getSpeed(int index) {
+        return speed[index];
+    }
+
+    public long getSpawnNanos(int index) {
+        return spawnNanos[index];
+    }
+
+    public float getPosY(int index) {
+        return posY[index];
+    }
+
+    public int getTextWidth(int index) {
+        return textWidth[index];
+    }
+
+    public int getLane(int index) {
+        return lane[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public L getLayout(int index) {
+        return (L) layout[index];
+    }
+
+    /**
+     * 同じ内容のメッセージがまとめられた回数を取得します。出現後に届いた繰り返しも反映されます。
+     */
+    public int getRepeatCount(int index) {
+        return repeats[index].get();
+    }
+
+    /**
+     * 「×N」のレイアウトを取得します。{@link #getRepeatSuffixCount(int)} が現在の回数と違えば作り直しが必要です。
+     */
+    @SuppressWarnings("unchecked")
+    public L getRepeatSuffix(int index) {
+        return (L) repeatSuffix[index];
+    }
+
+    /**
+     * {@link #getRepeatSuffix(int)} を作ったときの回数を取得します。
+     */
+    public int getRepeatSuffixCount(int index) {
+        return repeatSuffixCount[index];
+    }
+
+    /**
+     * 作り直した「×N」のレイアウトを保持します。
+     *
+     * @param index インデックス
+     * @param suffix 「×N」のレイアウト
+     * @param repeatCount レイアウトした回数
+     */
+    public void setRepeatSuffix(int index, L suffix, int repeatCount) {
+        repeatSuffix[index] = suffix;
+        repeatSuffixCount[index] = repeatCount;
+    }
+
+    public void clear() {
+        Arrays.fill(layout, 0, size, null);
+        Arrays.fill(repeats, 0, size, null);
+        Arrays.fill(repeatSuffix, 0, size, null);
+        size = 0;
+        earliestExitNanos = Long.MAX_VALUE;
+    }
+}
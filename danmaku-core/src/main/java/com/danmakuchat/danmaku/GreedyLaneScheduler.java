@@ -0,0 +1,29 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 待機キューの順に、上から最初に衝突しないレーンを割り当てる貪欲法のスケジューラー。
+ * 従来の {@link DanmakuManager#findBestLane} と同じ振る舞いです。
+ */
+public class GreedyLaneScheduler implements LaneScheduler {
+
+    @Override
+    public int batchLimit(int laneCount) {
+        // 待機キュー全体を毎フレーム試行する
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int schedule(int count, int[] widths, float[] speeds, int[] firstLanes, LaneTable lanes,
+                        int screenWidth, long nowNanos, int[] assignments) {
+        int assigned = 0;
+        for (int i = 0; i < count; i++) {
+            int lane = lanes.findFirstFit(firstLanes[i], screenWidth, widths[i], speeds[i], nowNanos);
+            assignments[i] = lane;
+            if (lane != -1) {
+                lanes.place(lane, screenWidth, widths[i], speeds[i], nowNanos);
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+}
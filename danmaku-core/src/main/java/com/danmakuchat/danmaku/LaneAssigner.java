@@ -0,0 +1,176 @@
+package com.danmakuchat.danmaku;
+
+import com.danmakuchat.jfr.LaneAssignmentEvent;
+import com.danmakuchat.stats.LatencyHistogram;
+
+/**
+ * 待機キューのメッセージをスケジューラーに渡してレーンを割り当てる、1 フレーム分の処理。
+ *
+ * 待ち時刻に達していないメッセージを読み飛ばしながら待機キューから取り出し、スケジューラーに渡して、
+ * 割り当てられたものは {@link Spawner} に渡して表示中にし、割り当てられなかったものは待機キュー内の元の位置に戻します。
+ * 戻したメッセージがすべて待ち時刻付きになった場合は、その最小値まで待機キューを眠らせます。
+ *
+ * Minecraft の型に依存しないため、ゲームと同じ処理をヘッドレスで動かしてテストできます。
+ * 作業領域は使い回すので、定常状態では割り当ては発生しません。
+ * 描画スレッド（シミュレーションスレッドの有効時はそのスレッド）からのみ使用してください。
+ *
+ * @param <M> 待機中のメッセージの型
+ */
+public class LaneAssigner<M extends PendingMessage> {
+    /**
+     * レーンを割り当てられたメッセージを表示中にする処理。
+     *
+     * @param <M> 待機中のメッセージの型
+     */
+    public interface Spawner<M> {
+        /**
+         * メッセージを画面右端から出現させます。待機キューからは取り除き済みです。
+         *
+         * @param message レーンを割り当てられたメッセージ
+         * @param lane 割り当てられたレーン
+         * @param screenWidth 画面幅（ピクセル）
+         * @param nowNanos 出現時刻
+         */
+        void spawn(M message, int lane, int screenWidth, long nowNanos);
+    }
+
+    private final PendingQueue<M> pendingQueue;
+    private final LaneTable lanes;
+    private final LatencyHistogram displayLatency;
+    private final Spawner<M> spawner;
+
+    // フレームごとの割り当てを避けるため使い回す作業領域
+    private PendingMessage[] batch = new PendingMessage[64];
+    private int[] batchLanes = new int[64];
+    // スケジューラーに渡すメッセージの batch 内での位置
+    private int[] batchReady = new int[64];
+    private int[] batchWidths = new int[64];
+    private float[] batchSpeeds = new float[64];
+    private int[] batchFirstLanes = new int[64];
+    private int[] batchAssignments = new int[64];
+
+    /**
+     * @param pendingQueue 待機キュー
+     * @param lanes レーン表
+     * @param displayLatency 受信してから出現するまでの待ち時間を記録するヒストグラム
+     * @param spawner レーンを割り当てられたメッセージを表示中にする処理
+     */
+    public LaneAssigner(PendingQueue<M> pendingQueue, LaneTable lanes, LatencyHistogram displayLatency, Spawner<M> spawner) {
+        this.pendingQueue = pendingQueue;
+        this.lanes = lanes;
+        this.displayLatency = displayLatency;
+        this.spawner = spawner;
+    }
+
+    /**
+     * 待機中のメッセージにレーンを割り当てます。
+     * 待機中のメッセージは幅と速度が計算済みである必要があります（測定中のものは読み飛ばす）。
+     * レーン表の索引は呼び出し側で画面幅に合わせておいてください。
+     *
+     * @param scheduler 使うスケジューラー
+     * @param reserveTopLane 最上段のレーンをメンションとささやき専用にする場合は true
+     * @param room 新たに出現させてよいメッセージ数
+     * @param earliestExitNanos 表示中のメッセージが最も早く画面から出る時刻（room が 0 以下のときの待ち時刻）
+     * @param screenWidth 画面幅（ピクセル）
+     * @param nowNanos 現在の単調時刻（出現時刻として記録される）
+     */
+    @SuppressWarnings("unchecked")
+    public void assign(LaneScheduler scheduler, boolean reserveTopLane, int room, long earliestExitNanos,
+                       int screenWidth, long nowNanos) {
+        int pendingCount = pendingQueue.size();
+        if (pendingCount == 0) {
+            return;
+        }
+        if (room <= 0) {
+            // 表示中のメッセージが画面から出るまでは空きができない
+            pendingQueue.sleepUntil(earliestExitNanos, lanes.getEpoch());
+            return;
+        }
+        ensureBatchCapacity(pendingCount);
+
+        // 待ち時刻に達していないメッセージは読み飛ばし、スケジューラーに渡す分だけを集める
+        int epoch = lanes.getEpoch();
+        int limit = Math.min(scheduler.batchLimit(lanes.size()), room);
+        int polled = 0;
+        int ready = 0;
+        while (polled < pendingCount && ready < limit) {
+            M message = pendingQueue.poll();
+            batch[polled] = message;
+            batchLanes[polled] = -1;
+            if (!message.isDeferred(nowNanos, epoch) && !message.isMeasuring()) {
+                message.countAssignAttempt();
+                batchReady[ready] = polled;
+                batchWidths[ready] = message.getTextWidth();
+                batchSpeeds[ready] = message.getCalculatedSpeed();
+                batchFirstLanes[ready] = reserveTopLane && !message.getPriority().mayUseReservedLane() ? 1 : 0;
+                ready++;
+            }
+            polled++;
+        }
+
+        if (ready > 0) {
+            scheduler.schedule(ready, batchWidths, batchSpeeds, batchFirstLanes, lanes, screenWidth, nowNanos, batchAssignments);
+
+            for (int i = 0; i < ready; i++) {
+                int lane = batchAssignments[i];
+                PendingMessage message = batch[batchReady[i]];
+                LaneAssignmentEvent.emit(lane, message.getAssignAttempts(), batchWidths[i], nowNanos - message.getIngressNanos());
+                if (lane != -1) {
+                    batchLanes[batchReady[i]] = lane;
+                } else {
+                    // 今回の配置を反映したレーン状態から、次に試す価値のある時刻を求める
+                    long notBefore = lanes.earliestEntryTime(
+                        batchFirstLanes[i], screenWidth, batchWidths[i], batchSpeeds[i], nowNanos
+                    );
+                    message.deferUntil(notBefore, epoch);
+                }
+            }
+        }
+
+        // 割り当てられなかったメッセージは待機キュー内の元の位置に戻る
+        // 取り出さなかったメッセージが残っている場合は、次のフレームもそのまま処理する
+        boolean idle = polled == pendingCount;
+        long wakeNanos = Long.MAX_VALUE;
+        for (int i = polled - 1; i >= 0; i--) {
+            // batch には待機キューから取り出した M しか入らない
+            M message = (M) batch[i];
+            batch[i] = null;
+            int lane = batchLanes[i];
+
+            if (lane == -1) {
+                if (message.isDeferred(nowNanos, epoch)) {
+                    wakeNanos = Math.min(wakeNanos, message.getNotBeforeNanos());
+                } else if (!message.isMeasuring()) {
+                    // レイアウトの返却待ちのメッセージは、返ってきたときに待機キューが起こされる
+                    idle = false;
+                }
+                pendingQueue.pushFront(message);
+                continue;
+            }
+
+            // 待機キューを離れたので送信者の待機件数から外す
+            pendingQueue.release(message);
+            displayLatency.record(nowNanos - message.getIngressNanos());
+            spawner.spawn(message, lane, screenWidth, nowNanos);
+        }
+
+        if (idle) {
+            pendingQueue.sleepUntil(wakeNanos, epoch);
+        } else {
+            pendingQueue.wake();
+        }
+    }
+
+    private void ensureBatchCapacity(int count) {
+        if (batch.length < count) {
+            int capacity = Math.max(count, batch.length * 2);
+            batch = new PendingMessage[capacity];
+            batchLanes = new int[capacity];
+            batchReady = new int[capacity];
+            batchWidths = new int[capacity];
+            batchSpeeds = new float[capacity];
+            batchFirstLanes = new int[capacity];
+            batchAssignments = new int[capacity];
+        }
+    }
+}
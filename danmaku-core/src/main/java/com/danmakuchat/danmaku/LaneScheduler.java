@@ -0,0 +1,35 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 待機中のメッセージの束にレーンを割り当てる戦略。
+ *
+ * 実装は {@link LaneTable#canEnter} の衝突判定を必ず満たすレーンだけを割り当て、
+ * 割り当てたレーンには {@link LaneTable#place} で最後尾を記録します。
+ * これにより、どの実装でも同じレーン内での追い越しは起こりません。
+ */
+public interface LaneScheduler {
+
+    /**
+     * 1 フレームで検討するメッセージ数の上限を返します。
+     *
+     * @param laneCount 現在のレーン数
+     * @return 束の最大件数
+     */
+    int batchLimit(int laneCount);
+
+    /**
+     * メッセージの束にレーンを割り当てます。束は待機キューから取り出した順に並んでいます。
+     *
+     * @param count 束の件数
+     * @param widths 各メッセージの幅（ピクセル）
+     * @param speeds 各メッセージの速度（ピクセル/秒）
+     * @param firstLanes 各メッセージが使ってよい最も上のレーン（予約されたレーンより下に限定する場合は 1）
+     * @param lanes レーンの状態（割り当てたレーンは更新される）
+     * @param screenWidth 画面幅（ピクセル）
+     * @param nowNanos 現在の単調時刻（出現時刻になる）
+     * @param assignments 出力：各メッセージに割り当てたレーン、割り当てなかった場合は -1
+     * @return 割り当てたメッセージ数
+     */
+    int schedule(int count, int[] widths, float[] speeds, int[] firstLanes, LaneTable lanes,
+                 int screenWidth, long nowNanos, int[] assignments);
+}
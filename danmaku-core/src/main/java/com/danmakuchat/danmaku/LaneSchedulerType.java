@@ -0,0 +1,11 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 設定で選択できるレーン割り当て戦略の種類。
+ */
+public enum LaneSchedulerType {
+    /** 到着順に、上から最初に空いているレーンを割り当てる（従来の方式） */
+    GREEDY,
+    /** 待機中の束をまとめて見て、同時に表示できるメッセージ数が最大になるよう割り当てる */
+    LOOKAHEAD
+}
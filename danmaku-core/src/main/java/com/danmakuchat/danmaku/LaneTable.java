@@ -0,0 +1,292 @@
+package com.danmakuchat.danmaku;
+
+import java.util.Arrays;
+
+/**
+ * 各レーンの最後尾メッセージの状態と、ニコニコ風の衝突判定をまとめたテーブル。
+ *
+ * 最後尾メッセージはオブジェクトではなく、出現位置・出現時刻・速度・幅のプリミティブ値で保持します。
+ * 速度は出現後一定なので、任意の時刻の位置はこれらの値から求まります。
+ *
+ * さらにレーンごとに、最後尾が右端から離れて新しいメッセージが入れるようになる時刻（空き時刻）と、
+ * 最後尾が画面から出る時刻を最後尾の配置時に求めておきます。
+ * 空き時刻は速度に依存しない下限なので、その最小値を持つセグメント木で
+ * 「今入れる可能性のあるレーン」だけを上から順に辿れます（通常 O(log レーン数)）。
+ * 追い越し判定を含めた正確な入場可能時刻も、速度 v に対して O(1) で求まります。
+ */
+public class LaneTable {
+    /** 同じレーン内で前後のメッセージの間に空ける最小の間隔（ピクセル） */
+    public static final float MIN_SPACING = 5.0f;
+
+    private int laneCount = 0;
+    private boolean[] occupied = new boolean[0];
+    private float[] tailStartX = new float[0];
+    private long[] tailSpawnNanos = new long[0];
+    private float[] tailSpeed = new float[0];
+    private int[] tailWidth = new int[0];
+    private long[] tailExitNanos = new long[0];
+
+    // 空き時刻の最小値を持つセグメント木（葉はレーン、空きレーンは Long.MIN_VALUE）
+    private long[] clearTree = new long[2];
+    private int leafCount = 1;
+    // 空き時刻を計算したときの画面幅。変わったら索引を作り直す
+    private int indexedScreenWidth = -1;
+    // 索引が作り直されるたびに増える世代番号（メッセージ側の「T まで待つ」キャッシュの無効化に使う）
+    private int epoch = 0;
+
+    /**
+     * レーン数を変更します。残るレーンの最後尾は保持し、増えたレーンは空になります。
+     * 表示中のメッセージに後続が重ならないよう、レーン数が変わっても最後尾の状態は捨てません。
+     *
+     * @param laneCount 新しいレーン数
+     */
+    public void resize(int laneCount) {
+        this.laneCount = laneCount;
+        this.occupied = Arrays.copyOf(occupied, laneCount);
+        this.tailStartX = Arrays.copyOf(tailStartX, laneCount);
+        this.tailSpawnNanos = Arrays.copyOf(tailSpawnNanos, laneCount);
+        this.tailSpeed = Arrays.copyOf(tailSpeed, laneCount);
+        this.tailWidth = Arrays.copyOf(tailWidth, laneCount);
+        this.tailExitNanos = Arrays.copyOf(tailExitNanos, laneCount);
+
+        leafCount = 1;
+        while (leafCount < laneCount) {
+            leafCount <<= 1;
+        }
+        clearTree = new long[leafCount * 2];
+        rebuildIndex(indexedScreenWidth);
+    }
+
+    public int size() {
+        return laneCount;
+    }
+
+    /**
+     * 新しいメッセージが現在時刻にレーンへ入れるかどうかを判定します。
+     *
+     * @param lane レーンインデックス
+     * @param screenWidth 画面幅（ピクセル）
+     * @param newMessageWidth 新しいメッセージの幅（ピクセル）
+     * @param newCalculatedSpeed 新しいメッセージの計算された速度
+     * @param nowNanos 現在の単調時刻（{@link System#nanoTime()}）
+     * @return 衝突せずに入れる場合は true
+     */
+    public boolean canEnter(int lane, int screenWidth, int newMessageWidth, float newCalculatedSpeed, long nowNanos) {
+        // --- 1. 空きレーンの即時採用 (最優先) ---
+        if (!occupied[lane]) {
+            return true;
+        }
+
+        float prevCalculatedSpeed = tailSpeed[lane];
+        int prevMessageWidth = tailWidth[lane];
+        float prevPosX = DanmakuMotion.positionAt(tailStartX[lane], prevCalculatedSpeed, tailSpawnNanos[lane], nowNanos);
+
+        // 最後のメッセージがすでに画面外へ出ていれば空きレーンとみなす
+        if (prevPosX + prevMessageWidth < 0) {
+            return true;
+        }
+
+        // --- 2. 初期衝突チェック (右端での衝突回避) ---
+        if (prevPosX + prevMessageWidth + MIN_SPACING > screenWidth) {
+            return false;
+        }
+
+        // --- 3. 追い越し衝突チェック ---
+        if (newCalculatedSpeed > prevCalculatedSpeed) {
+
+            float relativeSpeed = newCalculatedSpeed - prevCalculatedSpeed;
+            // Prevの終点: prevPosX + prevMessageWidth
+            // Newの始点: screenWidth
+            // 間隔が MIN_SPACING まで縮むまでに詰められる距離
+            float distanceToClose = screenWidth - (prevPosX + prevMessageWidth) - MIN_SPACING;
+
+            if (distanceToClose > 0) {
+                float timeToCollision = distanceToClose / relativeSpeed;
+                float prevTimeToExitScreen = (prevPosX + prevMessageWidth) / prevCalculatedSpeed;
+
+                if (timeToCollision < prevTimeToExitScreen) {
+                    return false; // 衝突予測がある
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 上から順（レーンインデックスが小さい順）に、最初に見つかった衝突しないレーンを返します。
+     *
+     * @return レーンインデックス、または利用可能なレーンがない場合は -1
+     */
+    public int findFirstFit(int screenWidth, int newMessageWidth, float newCalculatedSpeed, long nowNanos) {
+        return findFirstFit(0, screenWidth, newMessageWidth, newCalculatedSpeed, nowNanos);
+    }
+
+    /**
+     * 指定したレーンから下の範囲で、上から順に最初に見つかった衝突しないレーンを返します。
+     *
+     * @param fromLane 使ってよい最も上のレーン（予約されたレーンを避けるために使う）
+     * @return レーンインデックス、または利用可能なレーンがない場合は -1
+     */
+    public int findFirstFit(int fromLane, int screenWidth, int newMessageWidth, float newCalculatedSpeed, long nowNanos) {
+        ensureIndex(screenWidth);
+
+        // レーンはインデックスの昇順（上から下）に並んでいるため、
+        // 木を左から辿ることで垂直方向の優先度が保証されます。
+        // 空き時刻がまだ来ていない部分木は丸ごと読み飛ばします。
+        return findFirstFit(1, 0, leafCount, fromLane, screenWidth, newMessageWidth, newCalculatedSpeed, nowNanos);
+    }
+
+    private int findFirstFit(int node, int from, int to, int fromLane, int screenWidth, int newMessageWidth,
+                             float newCalculatedSpeed, long nowNanos) {
+        if (to <= fromLane) {
+            return -1;
+        }
+        if (clearTree[node] > nowNanos) {
+            // すべてのレーンが埋まっているか、衝突するため利用できない
+            return -1;
+        }
+
+        if (to - from == 1) {
+            return canEnter(from, screenWidth, newMessageWidth, newCalculatedSpeed, nowNanos) ? from : -1;
+        }
+
+        int middle = (from + to) >>> 1;
+        int lane = findFirstFit(node * 2, from, middle, fromLane, screenWidth, newMessageWidth, newCalculatedSpeed, nowNanos);
+        if (lane != -1) {
+            return lane;
+        }
+        return findFirstFit(node * 2 + 1, middle, to, fromLane, screenWidth, newMessageWidth, newCalculatedSpeed, nowNanos);
+    }
+
+    /**
+     * どのレーンにも入れないとき、指定した速度と幅のメッセージがいずれかのレーンに入れるようになる
+     * 最も早い時刻を求めます。この時刻までは再試行しても必ず失敗します。
+     *
+     * @param fromLane 使ってよい最も上のレーン
+     * @return 入場可能になる最も早い時刻（{@link System#nanoTime()} 基準）
+     */
+    public long earliestEntryTime(int fromLane, int screenWidth, int newMessageWidth, float newCalculatedSpeed, long nowNanos) {
+        ensureIndex(screenWidth);
+
+        long earliest = Long.MAX_VALUE;
+        for (int lane = fromLane; lane < laneCount; lane++) {
+            earliest = Math.min(earliest, entryTime(lane, screenWidth, newCalculatedSpeed));
+        }
+        return Math.max(earliest, nowNanos);
+    }
+
+    /**
+     * 速度 v のメッセージがレーンに入れるようになる時刻を求めます。
+     * 最後尾の経過時間を a、出現位置を X0、幅を w、速度を u、画面幅を W、間隔を S とすると、
+     * 右端の条件は a ≥ (X0 - W + w + S) / u（空き時刻）、
+     * 追い越しの条件は v > u のとき a ≥ (X0 + w) / u - (W - S) / v（画面外に出る時刻から逆算）です。
+     */
+    private long entryTime(int lane, int screenWidth, float speed) {
+        if (!occupied[lane]) {
+            return Long.MIN_VALUE;
+        }
+
+        long entry = clearTree[leafCount + lane];
+        if (speed > tailSpeed[lane]) {
+            long overtakeSafe = tailExitNanos[lane] - (long) ((screenWidth - MIN_SPACING) / speed * 1_000_000_000.0);
+            entry = Math.max(entry, overtakeSafe);
+        }
+        return entry;
+    }
+
+    /**
+     * 現在時刻に画面右端から出現したメッセージをレーンの最後尾として記録します。
+     *
+     * @param lane レーンインデックス
+     * @param startX 出現位置（画面幅）
+     * @param width メッセージの幅（ピクセル）
+     * @param speed メッセージの速度（ピクセル/秒）
+     * @param nowNanos 出現時刻
+     */
+    public void place(int lane, float startX, int width, float speed, long nowNanos) {
+        if (lane < 0 || lane >= laneCount) {
+            return;
+        }
+        occupied[lane] = true;
+        tailStartX[lane] = startX;
+        tailWidth[lane] = width;
+        tailSpeed[lane] = speed;
+        tailSpawnNanos[lane] = nowNanos;
+        tailExitNanos[lane] = DanmakuMotion.exitTime(startX, width, speed, nowNanos);
+        updateClearTime(lane, clearTime(lane, indexedScreenWidth));
+    }
+
+    /**
+     * 最後尾のメッセージがまだ画面内にあるレーンの数を返します。
+     * 統計の表示用に、テーブルを更新するスレッド以外から呼び出しても例外にならないようにしています（値は概算になります）。
+     *
+     * @param nowNanos 現在の単調時刻
+     * @return 使用中のレーン数
+     */
+    public int countOccupied(long nowNanos) {
+        boolean[] occupied = this.occupied;
+        long[] tailExitNanos = this.tailExitNanos;
+        int lanes = Math.min(occupied.length, tailExitNanos.length);
+        int count = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (occupied[lane] && tailExitNanos[lane] > nowNanos) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void clear() {
+        Arrays.fill(occupied, false);
+        rebuildIndex(indexedScreenWidth);
+    }
+
+    /**
+     * 索引の世代番号を返します。レーン数・画面幅の変更やクリアで索引が作り直されると変わります。
+     *
+     * @return 世代番号
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * 指定した画面幅で空き時刻の索引を用意します。画面幅が前回と異なる場合は作り直します。
+     *
+     * @param screenWidth 画面幅（ピクセル）
+     */
+    public void ensureIndex(int screenWidth) {
+        if (screenWidth != indexedScreenWidth) {
+            rebuildIndex(screenWidth);
+        }
+    }
+
+    private void rebuildIndex(int screenWidth) {
+        indexedScreenWidth = screenWidth;
+        Arrays.fill(clearTree, Long.MAX_VALUE);
+        for (int lane = 0; lane < laneCount; lane++) {
+            clearTree[leafCount + lane] = clearTime(lane, screenWidth);
+        }
+        for (int node = leafCount - 1; node >= 1; node--) {
+            clearTree[node] = Math.min(clearTree[node * 2], clearTree[node * 2 + 1]);
+        }
+        epoch++;
+    }
+
+    private long clearTime(int lane, int screenWidth) {
+        if (!occupied[lane]) {
+            return Long.MIN_VALUE;
+        }
+        float clearSeconds = (tailStartX[lane] - screenWidth + tailWidth[lane] + MIN_SPACING) / tailSpeed[lane];
+        return tailSpawnNanos[lane] + (long) (clearSeconds * 1_000_000_000.0);
+    }
+
+    private void updateClearTime(int lane, long clearTime) {
+        int node = leafCount + lane;
+        clearTree[node] = clearTime;
+        for (node >>>= 1; node >= 1; node >>>= 1) {
+            clearTree[node] = Math.min(clearTree[node * 2], clearTree[node * 2 + 1]);
+        }
+    }
+}
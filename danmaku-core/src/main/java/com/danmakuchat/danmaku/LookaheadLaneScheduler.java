@@ -0,0 +1,94 @@
+package com.danmakuchat.danmaku;
+
+import java.util.Arrays;
+
+/**
+ * 待機中のメッセージの束をまとめて見てレーンを割り当てるスケジューラー。
+ *
+ * 貪欲法では、速くて長いメッセージが上のレーンを先に取ってしまい、
+ * そのレーンにしか入れない短いメッセージが待たされることがあります。
+ * ここでは「メッセージがそのレーンに今入れるか」を辺とする二部グラフの最大マッチングを
+ * 増加路法（Kuhn 法）で求め、1 フレームで出現させられるメッセージ数を最大にします。
+ *
+ * メッセージは待機キューの順に処理され、一度マッチしたメッセージは以降の増加路で外れないため、
+ * 最大マッチングの中でも先に並んでいるメッセージが優先されます。レーンも上から順に試すので、
+ * 同じ条件なら上のレーンが選ばれます。衝突判定は {@link LaneTable#canEnter} に従うため、
+ * 追い越しが起きないことは貪欲法と同じく保証されます。
+ */
+public class LookaheadLaneScheduler implements LaneScheduler {
+    /** レーン 1 本あたりに検討するメッセージ数 */
+    private static final int WINDOW_PER_LANE = 4;
+
+    private boolean[] compatible = new boolean[0];
+    private int[] laneMatch = new int[0];
+    private boolean[] visited = new boolean[0];
+    private int laneCount;
+
+    @Override
+    public int batchLimit(int laneCount) {
+        return laneCount * WINDOW_PER_LANE;
+    }
+
+    @Override
+    public int schedule(int count, int[] widths, float[] speeds, int[] firstLanes, LaneTable lanes,
+                        int screenWidth, long nowNanos, int[] assignments) {
+        laneCount = lanes.size();
+        ensureCapacity(count);
+
+        // 各メッセージが今入れるレーンの表を作る（フレーム開始時点のレーン状態で判定）
+        for (int i = 0; i < count; i++) {
+            for (int lane = 0; lane < laneCount; lane++) {
+                compatible[i * laneCount + lane] = lane >= firstLanes[i]
+                    && lanes.canEnter(lane, screenWidth, widths[i], speeds[i], nowNanos);
+            }
+        }
+
+        // 1 フレームで各レーンに出現できるのは 1 件だけなので、レーンとメッセージのマッチングになる
+        Arrays.fill(laneMatch, 0, laneCount, -1);
+        int matched = 0;
+        for (int i = 0; i < count && matched < laneCount; i++) {
+            Arrays.fill(visited, 0, laneCount, false);
+            if (augment(i)) {
+                matched++;
+            }
+        }
+
+        Arrays.fill(assignments, 0, count, -1);
+        for (int lane = 0; lane < laneCount; lane++) {
+            int message = laneMatch[lane];
+            if (message != -1) {
+                assignments[message] = lane;
+                lanes.place(lane, screenWidth, widths[message], speeds[message], nowNanos);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * メッセージ {@code message} から始まる増加路を探し、見つかればマッチングを更新します。
+     */
+    private boolean augment(int message) {
+        int row = message * laneCount;
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (!compatible[row + lane] || visited[lane]) {
+                continue;
+            }
+            visited[lane] = true;
+            if (laneMatch[lane] == -1 || augment(laneMatch[lane])) {
+                laneMatch[lane] = message;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int count) {
+        if (compatible.length < count * laneCount) {
+            compatible = new boolean[count * laneCount];
+        }
+        if (laneMatch.length < laneCount) {
+            laneMatch = new int[laneCount];
+            visited = new boolean[laneCount];
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 取り込み時にメッセージに付ける優先度。宣言順に優先度が低くなっています。
+ *
+ * 待機キューでは、優先度ごとの持ち時間だけ到着時刻を前倒ししたものとして並べます。
+ * 持ち時間は有限なので、低い優先度のメッセージも待っているうちに後から届いた高い優先度の
+ * メッセージより前に出るようになり、いつまでも順番が回ってこないことはありません（エージング）。
+ */
+public enum MessagePriority {
+    /** 自分の名前を含むメッセージ */
+    MENTION(8_000L, true),
+    /** 自分宛てのささやき */
+    WHISPER(8_000L, true),
+    /** フレンドに登録したプレイヤーのチャット */
+    FRIEND(3_000L, false),
+    /** 通常のプレイヤーチャット */
+    NORMAL(0L, false),
+    /** システムメッセージ */
+    SYSTEM(-2_000L, false);
+
+    private final long headStartMillis;
+    private final boolean mayUseReservedLane;
+
+    MessagePriority(long headStartMillis, boolean mayUseReservedLane) {
+        this.headStartMillis = headStartMillis;
+        this.mayUseReservedLane = mayUseReservedLane;
+    }
+
+    /**
+     * 待機キューで到着時刻を前倒しする時間（ミリ秒）。負の値は後ろ倒しを表します。
+     *
+     * @return 前倒しする時間
+     */
+    public long getHeadStartMillis() {
+        return headStartMillis;
+    }
+
+    /**
+     * 予約された最上段のレーンを使えるかどうかを返します。
+     *
+     * @return メンションとささやきの場合は true
+     */
+    public boolean mayUseReservedLane() {
+        return mayUseReservedLane;
+    }
+}
@@ -0,0 +1,81 @@
+package com.danmakuchat.danmaku;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ロックを使わない複数プロデューサー・単一コンシューマー（MPSC）キュー。
+ *
+ * Dmitry Vyukov の連結リスト方式の MPSC キューを実装しています。
+ * プロデューサーは任意のスレッドから {@link #offer(Object)} を呼び出せ、
+ * アトミックな交換 1 回だけでブロックせずに追加できます。
+ * {@link #poll()} は単一のコンシューマースレッド（描画スレッド）からのみ呼び出してください。
+ *
+ * @param <E> 要素の型
+ */
+public class MpscQueue<E> {
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    // プロデューサー間で共有される末尾。getAndSet で競合なく付け替える
+    private final AtomicReference<Node<E>> tail;
+
+    // コンシューマー専用の先頭（値を持たないダミーノード）
+    private Node<E> head;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * 要素を末尾に追加します。どのスレッドから呼び出しても安全で、ブロックしません。
+     *
+     * @param value 追加する要素（null 不可）
+     */
+    public void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        Node<E> node = new Node<>(value);
+        Node<E> previous = tail.getAndSet(node);
+        // この書き込みまでの間、コンシューマーからは新しいノードが見えないだけで、
+        // 次の poll で取り出される
+        previous.next = node;
+    }
+
+    /**
+     * 先頭の要素を取り出します。コンシューマースレッドからのみ呼び出してください。
+     *
+     * @return 先頭の要素、空の場合は null
+     */
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+
+        E value = next.value;
+        // 取り出したノードを新しいダミーノードにする
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    /**
+     * キューが空かどうかを返します。コンシューマースレッドからのみ呼び出してください。
+     *
+     * @return 空の場合は true
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+}
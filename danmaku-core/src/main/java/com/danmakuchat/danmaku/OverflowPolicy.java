@@ -0,0 +1,15 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 待機キューが満杯になったときの振る舞いを表します。
+ */
+public enum OverflowPolicy {
+    /** 最も古い待機メッセージを破棄して新しいメッセージを受け入れます。 */
+    DROP_OLDEST,
+    /** 新しいメッセージを破棄します。 */
+    DROP_NEWEST,
+    /** 一定時間表示されなかったメッセージを期限切れとして破棄し、それでも満杯なら新しいメッセージを破棄します。 */
+    AGE_OUT,
+    /** 同じ内容のメッセージが待機中なら新しいメッセージをそれに統合し、なければ最も古いメッセージを破棄します。 */
+    COALESCE
+}
@@ -0,0 +1,167 @@
+package com.danmakuchat.danmaku;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The part of a message that the {@link PendingQueue} and {@link LaneAssigner} work with:
+ * sender, priority, arrival time, queue order, measured width and speed, and the earliest time a lane can take it.
+ * Kept free of Minecraft types so the pending path can be driven headless.
+ */
+public abstract class PendingMessage {
+    private final @Nullable String sender;  // Sender parsed from the chat line, null for system lines
+    private final MessagePriority priority; // Priority class assigned at ingestion
+    private final long creationTime;        // Wall-clock time (System.currentTimeMillis) the message was created
+    private final long ingressNanos;        // Monotonic time (System.nanoTime) when the message arrived (see getIngressNanos)
+    private int assignAttempts;             // Times the message has been offered to the lane scheduler
+    private boolean dropped = false;        // Discarded by the pending queue before it got a lane
+    private int pendingRound;               // Number of messages the sender already had waiting when queued
+    private long pendingKey;                // Virtual arrival time that orders the pending queue
+    private long arrivalOrder;              // Arrival sequence number in the pending queue
+    private boolean deferred;               // Whether notBeforeNanos/notBeforeEpoch hold a deferral (see deferUntil)
+    private long notBeforeNanos;            // No lane can take this message before this time (see deferUntil)
+    private int notBeforeEpoch;             // Lane index epoch the deferral was computed against
+
+    /**
+     * @param sender Sender parsed from the chat line, or null for system lines
+     * @param priority Priority class used by the pending queue and the reserved lane
+     * @param creationTime Wall-clock time the message was created ({@link System#currentTimeMillis()})
+     */
+    protected PendingMessage(@Nullable String sender, MessagePriority priority, long creationTime) {
+        this(sender, priority, creationTime, System.nanoTime());
+    }
+
+    /**
+     * @param sender Sender parsed from the chat line, or null for system lines
+     * @param priority Priority class used by the pending queue and the reserved lane
+     * @param creationTime Wall-clock time the message was created ({@link System#currentTimeMillis()})
+     * @param ingressNanos Monotonic time ({@link System#nanoTime()}) at which the message arrived
+     */
+    protected PendingMessage(@Nullable String sender, MessagePriority priority, long creationTime, long ingressNanos) {
+        this.sender = sender;
+        this.priority = priority;
+        this.creationTime = creationTime;
+        this.ingressNanos = ingressNanos;
+    }
+
+    /**
+     * Returns the plain text of the message. The {@link OverflowPolicy#COALESCE} policy compares it
+     * against the queued messages when the queue is full.
+     */
+    public abstract String getPlainText();
+
+    /**
+     * Returns the measured width of the text in pixels, which the lane scheduler places.
+     */
+    public abstract int getTextWidth();
+
+    /**
+     * Returns the scroll speed in pixels per second, computed from the width.
+     */
+    public abstract float getCalculatedSpeed();
+
+    /**
+     * Whether the width is still being measured elsewhere. Lane assignment skips the message until it is not.
+     */
+    public boolean isMeasuring() {
+        return false;
+    }
+
+    public @Nullable String getSender() {
+        return sender;
+    }
+
+    public MessagePriority getPriority() {
+        return priority;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Returns the monotonic time ({@link System#nanoTime()}) at which the message arrived: when it was handed
+     * to the manager, or for external chat when the line was read from the socket.
+     * Used to measure how long a message waited before it appeared on screen.
+     */
+    public long getIngressNanos() {
+        return ingressNanos;
+    }
+
+    /**
+     * Counts one more attempt to place the message on a lane.
+     */
+    void countAssignAttempt() {
+        assignAttempts++;
+    }
+
+    public int getAssignAttempts() {
+        return assignAttempts;
+    }
+
+    public boolean isDropped() {
+        return dropped;
+    }
+
+    void markDropped() {
+        this.dropped = true;
+    }
+
+    int getPendingRound() {
+        return pendingRound;
+    }
+
+    long getPendingKey() {
+        return pendingKey;
+    }
+
+    long getArrivalOrder() {
+        return arrivalOrder;
+    }
+
+    void setPendingOrder(int pendingRound, long pendingKey, long arrivalOrder) {
+        this.pendingRound = pendingRound;
+        this.pendingKey = pendingKey;
+        this.arrivalOrder = arrivalOrder;
+    }
+
+    /**
+     * Records that no lane can take this message before the given time, so lane assignment
+     * can skip it until then instead of retrying every frame.
+     *
+     * @param notBeforeNanos Earliest time a lane can take the message ({@link System#nanoTime()})
+     * @param laneEpoch Epoch of the lane index the time was computed against
+     */
+    public void deferUntil(long notBeforeNanos, int laneEpoch) {
+        this.deferred = true;
+        this.notBeforeNanos = notBeforeNanos;
+        this.notBeforeEpoch = laneEpoch;
+    }
+
+    /**
+     * Forgets the recorded deferral. Called when the width or speed the entry time was computed from changes.
+     */
+    protected void clearDeferral() {
+        this.deferred = false;
+    }
+
+    /**
+     * Returns the time recorded by the last {@link #deferUntil}. Only meaningful while {@link #isDeferred} holds.
+     */
+    long getNotBeforeNanos() {
+        return notBeforeNanos;
+    }
+
+    /**
+     * Whether lane assignment should skip this message for now.
+     * A deferral only holds while the lane index it was computed against is unchanged.
+     * Whether one is recorded at all is tracked separately, since {@link System#nanoTime()}
+     * has an arbitrary origin and no time or epoch value can stand for "not deferred".
+     *
+     * @param nowNanos Current monotonic time
+     * @param laneEpoch Current epoch of the lane index
+     * @return true if no lane can take the message yet
+     */
+    public boolean isDeferred(long nowNanos, int laneEpoch) {
+        return deferred && notBeforeEpoch == laneEpoch && nowNanos - notBeforeNanos < 0;
+    }
+}
@@ -0,0 +1,402 @@
+package com.danmakuchat.danmaku;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * レーンの割り当てを待っているメッセージの有界キュー。
+ *
+ * チャットが大量に流れてもキューの長さは上限を超えないため、
+ * 1 フレームあたりのレーン割り当てコストは一定に保たれます。
+ * 上限に達したときの振る舞いは {@link OverflowPolicy} で決まります。
+ *
+ * 取り出す順序は、追加時に各メッセージに付ける仮想的な到着時刻の小さい順です。
+ * <ul>
+ *   <li>{@link MessagePriority} ごとの持ち時間だけ前倒しする（メンションやささやきが先に出る）</li>
+ *   <li>その送信者がすでに待たせている件数（ラウンド）1 件ごとに {@link #ROUND_SPACING_MILLIS} だけ後ろ倒しする</li>
+ * </ul>
+ * ラウンドによる後ろ倒しで、1 人が大量に送ってきてもほかの送信者のメッセージが間に挟まり、
+ * 送信者の間でおおむねラウンドロビンになります。どちらの補正も有限なので、
+ * 待っているメッセージはいずれ後から届いたメッセージより前に出ます（エージング）。
+ * 並び順はメッセージに付けた値だけで決まるため、取り出したメッセージを {@link #pushFront} で戻すと元の位置に戻ります。
+ * 取り出して戻すだけでは送信者ごとの件数は変わらず、レーンを得たメッセージを {@link #release} したときに減ります。
+ * 内部は二分ヒープです。
+ *
+ * 待機中のメッセージがすべて入場可能時刻待ちになったときは、その最小の時刻とレーン索引の世代番号を
+ * {@link #sleepUntil} で記録します。その時刻になるか、世代番号が変わるか、{@link #wake} が呼ばれるまでは
+ * {@link #isAsleep} が true を返し、呼び出し側はキューの走査とレーン割り当てをまとめて省略できます。
+ *
+ * @param <M> 待機させるメッセージの型
+ */
+public class PendingQueue<M extends PendingMessage> {
+    /** 同じ送信者の待機中のメッセージ 1 件ごとに、仮想的な到着時刻を後ろ倒しする時間（ミリ秒） */
+    static final long ROUND_SPACING_MILLIS = 1_000L;
+
+    private PendingMessage[] heap = new PendingMessage[64];
+    private int size = 0;
+
+    // 送信者ごとの待機中の件数（待機中のメッセージがある送信者だけを保持）
+    private final Map<String, int[]> senders = new HashMap<>();
+    private long nextArrival = 0;
+
+    private int capacity = 50;
+    private OverflowPolicy policy = OverflowPolicy.DROP_OLDEST;
+    private long maxAgeMillis = 10_000L;
+
+    private long droppedCount = 0;
+    private long expiredCount = 0;
+
+    // 待機中のメッセージのうち最も古い作成時刻の下限（これより前なら期限切れの走査を省略できる）
+    private long earliestCreationMillis = Long.MAX_VALUE;
+
+    // 次に処理が必要になる時刻と、それを求めたときのレーン索引の世代番号
+    private boolean awake = true;
+    private long wakeNanos;
+    private int wakeEpoch;
+
+    /**
+     * キューの上限と溢れたときの方針を設定します。
+     *
+     * @param capacity 待機できるメッセージの最大数
+     * @param policy 満杯時の方針
+     * @param maxAgeMillis {@link OverflowPolicy#AGE_OUT} で破棄するまでの待機時間（ミリ秒）
+     */
+    public void setLimits(int capacity, OverflowPolicy policy, long maxAgeMillis) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy != null ? policy : OverflowPolicy.DROP_OLDEST;
+        this.maxAgeMillis = maxAgeMillis;
+
+        // 上限が下げられた場合は、優先度の低いものや多く待たせている送信者のメッセージから切り詰める
+        while (size > this.capacity) {
+            PendingMessage victim = removeAt(findVictim());
+            release(victim);
+            discard(victim);
+        }
+    }
+
+    /**
+     * メッセージを待機キューに追加します。
+     *
+     * @param message 追加するメッセージ
+     * @return メッセージが受け入れられた場合は true、破棄または統合された場合は false
+     */
+    public boolean offer(M message) {
+        assignRound(message);
+
+        if (size < capacity) {
+            insert(message);
+            return true;
+        }
+
+        switch (policy) {
+            case DROP_NEWEST:
+                discard(message);
+                return false;
+
+            case AGE_OUT:
+                expire(message.getCreationTime());
+                if (size < capacity) {
+                    insert(message);
+                    return true;
+                }
+                discard(message);
+                return false;
+
+            case COALESCE:
+                if (containsSameContent(message)) {
+                    discard(message);
+                    return false;
+                }
+                return replaceVictim(message);
+
+            case DROP_OLDEST:
+            default:
+                return replaceVictim(message);
+        }
+    }
+
+    /**
+     * ラウンド（送信者がすでに待たせている件数）と、並び順を決める仮想的な到着時刻を付けます。
+     */
+    private void assignRound(PendingMessage message) {
+        int[] state = senders.get(message.getSender());
+        int round = state != null ? state[0] : 0;
+        long key = message.getCreationTime()
+            - message.getPriority().getHeadStartMillis()
+            + round * ROUND_SPACING_MILLIS;
+        message.setPendingOrder(round, key, nextArrival++);
+    }
+
+    /**
+     * 満杯時に、最も優先度が低く、最も後ろのラウンドの中で最も古いメッセージを破棄して新しいメッセージを入れます。
+     * 同じ優先度の送信者が 1 件ずつしか待っていなければ全体で最も古いメッセージが、
+     * 1 人が大量に待たせていればその送信者のメッセージが破棄されます。
+     */
+    private boolean replaceVictim(PendingMessage message) {
+        int victim = findVictim();
+        if (compareVictim(message, heap[victim]) < 0) {
+            // 新しいメッセージ自身が最も後ろのラウンドにいる
+            discard(message);
+            return false;
+        }
+        PendingMessage removed = removeAt(victim);
+        release(removed);
+        discard(removed);
+        insert(message);
+        return true;
+    }
+
+    private int findVictim() {
+        int victim = 0;
+        for (int i = 1; i < size; i++) {
+            if (compareVictim(heap[i], heap[victim]) < 0) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * 破棄する順で比較します。優先度が低いほど、次にラウンドが大きいほど、同じなら古いほど先に破棄します。
+     */
+    private static int compareVictim(PendingMessage a, PendingMessage b) {
+        if (a.getPriority() != b.getPriority()) {
+            return Integer.compare(b.getPriority().ordinal(), a.getPriority().ordinal());
+        }
+        if (a.getPendingRound() != b.getPendingRound()) {
+            return Integer.compare(b.getPendingRound(), a.getPendingRound());
+        }
+        return Long.compare(a.getArrivalOrder(), b.getArrivalOrder());
+    }
+
+    /**
+     * {@link OverflowPolicy#AGE_OUT} の場合、待機時間が上限を超えたメッセージを破棄します。
+     *
+     * @param nowMillis 現在時刻（{@link System#currentTimeMillis()}）
+     */
+    public void expire(long nowMillis) {
+        if (policy != OverflowPolicy.AGE_OUT || nowMillis - earliestCreationMillis <= maxAgeMillis) {
+            return;
+        }
+
+        // 期限切れのものを取り除いて詰め、ヒープを組み直す（キューの上限で抑えられる）
+        int kept = 0;
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            PendingMessage message = heap[i];
+            if (nowMillis - message.getCreationTime() > maxAgeMillis) {
+                release(message);
+                discard(message);
+                expiredCount++;
+            } else {
+                heap[kept++] = message;
+                earliest = Math.min(earliest, message.getCreationTime());
+            }
+        }
+        earliestCreationMillis = earliest;
+        if (kept != size) {
+            Arrays.fill(heap, kept, size, null);
+            size = kept;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+    }
+
+    private void discard(PendingMessage message) {
+        message.markDropped();
+        droppedCount++;
+    }
+
+    private boolean containsSameContent(PendingMessage message) {
+        // 満杯時のみ呼ばれ、走査はキューの上限で抑えられる
+        String content = message.getPlainText();
+        for (int i = 0; i < size; i++) {
+            if (heap[i].getPlainText().equals(content)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 次に順番が回ってくるメッセージを取り出します。
+     * 送信者ごとの待機件数はそのまま残るため、取り出したメッセージは {@link #pushFront} で戻すか、
+     * レーンを得たら {@link #release} を呼んでください。
+     *
+     * @return 先頭のメッセージ、空の場合は null
+     */
+    @SuppressWarnings("unchecked")
+    public M poll() {
+        if (size == 0) {
+            return null;
+        }
+        // ヒープには offer で受け取った M しか入らない
+        return (M) removeAt(0);
+    }
+
+    /**
+     * 取り出したメッセージをキューに戻します。並び順を決める値は取り出す前のままなので、元の位置に戻ります。
+     * 送信者ごとの待機件数は取り出したときから変わっていないので、ここでも数えません。
+     *
+     * @param message 戻すメッセージ
+     */
+    public void pushFront(M message) {
+        push(message);
+    }
+
+    /**
+     * {@link #poll} で取り出したメッセージがキューを離れたことを記録し、送信者の待機件数を減らします。
+     * 待機中のメッセージがなくなった送信者は忘れます。
+     *
+     * @param message レーンを得たメッセージ
+     */
+    public void release(PendingMessage message) {
+        int[] state = senders.get(message.getSender());
+        if (state != null && --state[0] == 0) {
+            senders.remove(message.getSender());
+        }
+    }
+
+    /**
+     * 待機中のメッセージがどれもまだレーンに入れないことを記録します。
+     *
+     * @param wakeNanos 最も早くレーンに入れるようになる時刻（{@link System#nanoTime()}）、
+     *                  {@link Long#MAX_VALUE} なら {@link #wake} が呼ばれるまで
+     * @param laneEpoch その時刻を求めたときのレーン索引の世代番号
+     */
+    public void sleepUntil(long wakeNanos, int laneEpoch) {
+        this.awake = false;
+        this.wakeNanos = wakeNanos;
+        this.wakeEpoch = laneEpoch;
+    }
+
+    /**
+     * 次の呼び出しで待機中のメッセージを処理させます。
+     * メッセージが追加・まとめられたときや、幅や速度の前提（フォントサイズ・設定など）が変わったときに呼びます。
+     */
+    public void wake() {
+        awake = true;
+    }
+
+    /**
+     * {@link #sleepUntil} で記録した時刻まで、待機中のメッセージを処理する必要がないかどうかを返します。
+     *
+     * @param nowNanos 現在の単調時刻
+     * @param laneEpoch 現在のレーン索引の世代番号
+     * @return 処理を省略してよい場合は true
+     */
+    public boolean isAsleep(long nowNanos, int laneEpoch) {
+        return !awake && wakeEpoch == laneEpoch && (wakeNanos == Long.MAX_VALUE || nowNanos - wakeNanos < 0);
+    }
+
+    /**
+     * 待機中のメッセージを取得します。順序は取り出す順序とは一致しません。
+     * 取り出さずに全件を走査するために使います。
+     *
+     * @param index 0 以上 {@link #size()} 未満のインデックス
+     * @return メッセージ
+     */
+    @SuppressWarnings("unchecked")
+    public M get(int index) {
+        return (M) heap[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 破棄したメッセージの累計数を返します。待機時間の上限で破棄したものも含みます。
+     *
+     * @return 破棄したメッセージ数
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * {@link OverflowPolicy#AGE_OUT} で待機時間の上限を超えて破棄したメッセージの累計数を返します。
+     *
+     * @return 期限切れで破棄したメッセージ数
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        senders.clear();
+        earliestCreationMillis = Long.MAX_VALUE;
+        awake = true;
+    }
+
+    private void insert(PendingMessage message) {
+        push(message);
+        senders.computeIfAbsent(message.getSender(), sender -> new int[1])[0]++;
+        earliestCreationMillis = Math.min(earliestCreationMillis, message.getCreationTime());
+        awake = true;
+    }
+
+    private void push(PendingMessage message) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = message;
+        siftUp(size++);
+    }
+
+    private PendingMessage removeAt(int index) {
+        PendingMessage removed = heap[index];
+        int last = --size;
+        if (index != last) {
+            heap[index] = heap[last];
+            heap[last] = null;
+            siftDown(index);
+            siftUp(index);
+        } else {
+            heap[last] = null;
+        }
+        return removed;
+    }
+
+    private static boolean before(PendingMessage a, PendingMessage b) {
+        if (a.getPendingKey() != b.getPendingKey()) {
+            return a.getPendingKey() < b.getPendingKey();
+        }
+        return a.getArrivalOrder() < b.getArrivalOrder();
+    }
+
+    private void siftUp(int index) {
+        PendingMessage message = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(message, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = message;
+    }
+
+    private void siftDown(int index) {
+        PendingMessage message = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], message)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = message;
+    }
+}
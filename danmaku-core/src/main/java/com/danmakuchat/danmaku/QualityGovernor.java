@@ -0,0 +1,145 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 1 フレームあたりの弾幕の処理時間を予算と比べ、超え続けたら表示品質を 1 段ずつ下げ、
+ * 十分に下回り続けたら 1 段ずつ戻すガバナー。
+ *
+ * 品質は {@link Level} の順に下げます（影を描かない → 表示数を制限する → 速く流す → レーンを減らす）。
+ * 処理時間は指数移動平均で平滑化し、下げるときは予算を {@link #STEP_DOWN_HOLD_NANOS} 超え続けた場合、
+ * 戻すときは予算の {@link #STEP_UP_RATIO} 倍を {@link #STEP_UP_HOLD_NANOS} 下回り続けた場合だけ段を変えます。
+ * 下げる条件と戻す条件の間に幅を持たせ、戻す方を長く待つことで、境界付近で品質が行き来しないようにしています。
+ *
+ * ガバナーは設定値を書き換えず、設定値に掛ける補正だけを返します。
+ * {@link #onFrame} と {@link #reset()} は描画スレッドから呼び出してください。段とその補正はどのスレッドからでも読み取れます。
+ */
+public class QualityGovernor {
+    /** 処理時間の指数移動平均の重み */
+    private static final double SMOOTHING = 0.1;
+    /** 品質を 1 段下げるまでに予算を超え続ける時間 */
+    private static final long STEP_DOWN_HOLD_NANOS = 250_000_000L;
+    /** 品質を 1 段戻すまでに予算を十分に下回り続ける時間 */
+    private static final long STEP_UP_HOLD_NANOS = 3_000_000_000L;
+    /** 品質を戻してよいとみなす処理時間の、予算に対する割合 */
+    private static final double STEP_UP_RATIO = 0.5;
+    /** 表示数を制限するときの、レーン 1 本あたりの表示数 */
+    private static final int VISIBLE_PER_LANE = 2;
+    /** 速く流すときの速度の倍率 */
+    private static final float FAST_SPEED_MULTIPLIER = 1.5f;
+
+    /**
+     * 品質の段階。下の段ほど、上の段の制限もすべて含みます。
+     */
+    public enum Level {
+        /** 設定どおり */
+        FULL,
+        /** 影を描かない */
+        NO_SHADOW,
+        /** 表示中のメッセージ数を制限する */
+        CAPPED,
+        /** 速く流して画面にいる時間を短くする */
+        FAST,
+        /** 使うレーンを半分にする */
+        FEW_LANES
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private volatile Level level = Level.FULL;
+    private double smoothedNanos = 0;
+    // 条件を満たし始めた時刻（満たしていなければ -1）
+    private long overBudgetSince = -1;
+    private long underBudgetSince = -1;
+
+    /**
+     * 1 フレーム分の処理時間を記録し、必要なら品質の段を変えます。
+     *
+     * @param frameNanos このフレームの弾幕の処理時間
+     * @param budgetNanos 1 フレームあたりの予算
+     * @param nowNanos 現在の単調時刻
+     * @return 段が変わった場合は true
+     */
+    public boolean onFrame(long frameNanos, long budgetNanos, long nowNanos) {
+        smoothedNanos += (frameNanos - smoothedNanos) * SMOOTHING;
+
+        if (smoothedNanos > budgetNanos) {
+            underBudgetSince = -1;
+            if (overBudgetSince == -1) {
+                overBudgetSince = nowNanos;
+            } else if (nowNanos - overBudgetSince >= STEP_DOWN_HOLD_NANOS && level.ordinal() < LEVELS.length - 1) {
+                level = LEVELS[level.ordinal() + 1];
+                overBudgetSince = nowNanos;
+                return true;
+            }
+        } else if (smoothedNanos < budgetNanos * STEP_UP_RATIO) {
+            overBudgetSince = -1;
+            if (underBudgetSince == -1) {
+                underBudgetSince = nowNanos;
+            } else if (nowNanos - underBudgetSince >= STEP_UP_HOLD_NANOS && level != Level.FULL) {
+                level = LEVELS[level.ordinal() - 1];
+                underBudgetSince = nowNanos;
+                return true;
+            }
+        } else {
+            // 予算内だが余裕はない：今の段を保つ
+            overBudgetSince = -1;
+            underBudgetSince = -1;
+        }
+        return false;
+    }
+
+    /**
+     * 設定どおりの品質に戻し、計測をやり直します。
+     */
+    public void reset() {
+        level = Level.FULL;
+        smoothedNanos = 0;
+        overBudgetSince = -1;
+        underBudgetSince = -1;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * 処理時間の指数移動平均を返します。
+     *
+     * @return 平滑化した 1 フレームあたりの処理時間（ナノ秒）
+     */
+    public double getSmoothedNanos() {
+        return smoothedNanos;
+    }
+
+    public boolean shouldDrawShadows() {
+        return level.compareTo(Level.NO_SHADOW) < 0;
+    }
+
+    /**
+     * 同時に表示してよいメッセージ数を返します。
+     *
+     * @param laneCount 使用するレーン数
+     * @return 表示数の上限、制限しない場合は {@link Integer#MAX_VALUE}
+     */
+    public int getVisibleLimit(int laneCount) {
+        return level.compareTo(Level.CAPPED) >= 0 ? laneCount * VISIBLE_PER_LANE : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 設定のスクロール速度に掛ける倍率を返します。
+     *
+     * @return 速度の倍率
+     */
+    public float getSpeedMultiplier() {
+        return level.compareTo(Level.FAST) >= 0 ? FAST_SPEED_MULTIPLIER : 1.0f;
+    }
+
+    /**
+     * 実際に使うレーン数を返します。
+     *
+     * @param configuredLanes 設定されたレーン数
+     * @return 使用するレーン数
+     */
+    public int getLaneCount(int configuredLanes) {
+        return level.compareTo(Level.FEW_LANES) >= 0 ? Math.max(1, (configuredLanes + 1) / 2) : configuredLanes;
+    }
+}
@@ -0,0 +1,20 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 同じ内容のメッセージがまとめられた回数。
+ *
+ * メッセージと、compactStore 有効時の {@link DanmakuStore} の両方から参照されるため、
+ * 出現後に届いた繰り返しもどちらの経路の表示にも反映されます。
+ * 描画スレッド（simulationThread 有効時はシミュレーションスレッド）からのみ使用してください。
+ */
+public final class RepeatCounter {
+    private int count = 1;
+
+    public int get() {
+        return count;
+    }
+
+    void increment() {
+        count++;
+    }
+}
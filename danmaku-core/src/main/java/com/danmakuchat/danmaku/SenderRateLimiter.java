@@ -0,0 +1,126 @@
+package com.danmakuchat.danmaku;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 送信者ごとのトークンバケットで、1 人のプレイヤーやボットが流せるメッセージの量を制限します。
+ *
+ * バケットは一定の速度でトークンが補充され、メッセージ 1 件ごとに 1 トークンを消費します。
+ * トークンが足りない場合、そのメッセージは弾幕として流しません。
+ * バケットはアクセス順の有界マップで保持します。上限に達したら、満杯まで補充されたバケット
+ * （最後の発言から burst / rate 秒以上たった送信者）だけを忘れます。満杯のバケットは新しく作るバケットと
+ * 同じ状態なので、忘れても結果は変わりません。どのバケットもまだ補充中の場合は、新しい送信者は
+ * 全員で 1 つの溢れ用バケットを共有します。名前を次々に変えるボットがバケットを追い出して
+ * 満杯の状態からやり直すことはできません。
+ *
+ * 送信者が分からないシステムメッセージは制限しません。描画スレッドからのみ使用してください。
+ */
+public class SenderRateLimiter {
+    private static final int MAX_SENDERS = 256;
+
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    // 上限に達していて、補充済みのバケットがないときに新しい送信者が共有するバケット
+    private final Bucket overflow = new Bucket();
+
+    private double ratePerSecond = 2.0;
+    private int burst = 5;
+
+    private long limitedCount = 0;
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefillMillis;
+
+        void refill(long nowMillis, double ratePerSecond, int burst) {
+            double elapsedSeconds = Math.max(0L, nowMillis - lastRefillMillis) / 1000.0;
+            tokens = Math.min(burst, tokens + elapsedSeconds * ratePerSecond);
+            lastRefillMillis = nowMillis;
+        }
+
+        boolean isFull(long nowMillis, double ratePerSecond, int burst) {
+            double elapsedSeconds = Math.max(0L, nowMillis - lastRefillMillis) / 1000.0;
+            return tokens + elapsedSeconds * ratePerSecond >= burst;
+        }
+    }
+
+    /**
+     * 補充速度とバケットの容量を設定します。
+     *
+     * @param ratePerSecond 1 秒あたりに補充されるトークン数、0 以下で制限しない
+     * @param burst バケットの容量（続けて流せる最大件数）
+     */
+    public void setLimits(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * 送信者のバケットから 1 トークンを取り出します。
+     *
+     * @param sender 送信者名（null の場合は制限しない）
+     * @param nowMillis 現在時刻（{@link System#currentTimeMillis()}）
+     * @return メッセージを流してよい場合は true
+     */
+    public boolean tryAcquire(String sender, long nowMillis) {
+        if (sender == null || ratePerSecond <= 0) {
+            return true;
+        }
+
+        Bucket bucket = buckets.get(sender);
+        if (bucket == null) {
+            bucket = createBucket(sender, nowMillis);
+        }
+        bucket.refill(nowMillis, ratePerSecond, burst);
+
+        if (bucket.tokens < 1.0) {
+            limitedCount++;
+            return false;
+        }
+        bucket.tokens -= 1.0;
+        return true;
+    }
+
+    /**
+     * 新しい送信者のバケットを作ります。上限に達している場合は満杯まで補充されたバケットを 1 つ忘れて空きを作り、
+     * 補充済みのバケットがなければ溢れ用のバケットを返します。
+     */
+    private Bucket createBucket(String sender, long nowMillis) {
+        if (buckets.size() >= MAX_SENDERS && !evictFullBucket(nowMillis)) {
+            return overflow;
+        }
+        Bucket bucket = new Bucket();
+        bucket.tokens = burst;
+        bucket.lastRefillMillis = nowMillis;
+        buckets.put(sender, bucket);
+        return bucket;
+    }
+
+    /**
+     * 満杯まで補充されたバケットを、最も長く発言していない送信者から探して 1 つ忘れます。
+     * 走査はバケット数の上限で抑えられ、上限に達した状態で新しい送信者が来たときだけ行います。
+     *
+     * @return 忘れるバケットがあった場合は true
+     */
+    private boolean evictFullBucket(long nowMillis) {
+        Iterator<Bucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFull(nowMillis, ratePerSecond, burst)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getLimitedCount() {
+        return limitedCount;
+    }
+
+    public void clear() {
+        buckets.clear();
+        overflow.tokens = 0;
+        overflow.lastRefillMillis = 0;
+    }
+}
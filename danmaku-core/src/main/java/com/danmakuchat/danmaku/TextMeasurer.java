@@ -0,0 +1,34 @@
+package com.danmakuchat.danmaku;
+
+/**
+ * 弾幕のテキストの幅を測るためのインターフェース。
+ *
+ * ゲーム内ではフォントのレンダラーで測りますが、ベンチマークやシミュレーターのように
+ * ゲームの外で動かす場合は {@link #fixedWidth} のような近似で代用できます。
+ */
+@FunctionalInterface
+public interface TextMeasurer {
+    /**
+     * テキストの幅を返します。
+     *
+     * @param text 測るテキスト（書式は含まない）
+     * @return 幅（ピクセル、フォントサイズの倍率を掛ける前）
+     */
+    int getWidth(String text);
+
+    /**
+     * 1 文字あたりの幅が固定の近似を返します。
+     * Minecraft の標準フォントに合わせ、ASCII は 6 ピクセル（字間を含む）、それ以外は 9 ピクセルとします。
+     *
+     * @return 固定幅の測定器
+     */
+    static TextMeasurer fixedWidth() {
+        return text -> {
+            int width = 0;
+            for (int i = 0; i < text.length(); i++) {
+                width += text.charAt(i) < 0x80 ? 6 : 9;
+            }
+            return width;
+        };
+    }
+}
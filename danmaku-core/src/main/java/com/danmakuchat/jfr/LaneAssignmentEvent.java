@@ -0,0 +1,62 @@
+package com.danmakuchat.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 待機中のメッセージにレーンを割り当てた、または割り当てられなかったことを表す JFR イベント。
+ *
+ * スケジューラーに渡したメッセージ 1 件ごとに発生します。割り当てられなかったメッセージは
+ * 次に入れる見込みの時刻まで再試行されないため、1 件あたりのイベント数は再試行回数で抑えられます。
+ */
+@Name("danmakuchat.LaneAssignment")
+@Label("Danmaku Lane Assignment")
+@Description("The lane scheduler placed a pending message on a lane or rejected it")
+@Category({"DanmakuChat", "Scheduling"})
+@StackTrace(false)
+public final class LaneAssignmentEvent extends Event {
+    @Label("Assigned")
+    boolean assigned;
+
+    @Label("Lane")
+    @Description("Assigned lane, or -1 when no lane could take the message")
+    int lane;
+
+    @Label("Attempts")
+    @Description("Number of times the message has been offered to the scheduler, including this one")
+    int attempts;
+
+    @Label("Width")
+    int width;
+
+    @Label("Waited")
+    @Description("Time since the message was ingested")
+    @Timespan(Timespan.NANOSECONDS)
+    long waited;
+
+    /**
+     * JFR が記録中でイベントが有効な場合だけ、イベントを記録します。
+     *
+     * @param lane 割り当てたレーン、割り当てられなかった場合は -1
+     * @param attempts スケジューラーに渡した回数（今回を含む）
+     * @param width メッセージの幅（ピクセル）
+     * @param waitedNanos 受信してからの経過時間
+     */
+    public static void emit(int lane, int attempts, int width, long waitedNanos) {
+        LaneAssignmentEvent event = new LaneAssignmentEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.assigned = lane != -1;
+        event.lane = lane;
+        event.attempts = attempts;
+        event.width = width;
+        event.waited = waitedNanos;
+        event.commit();
+    }
+}
@@ -0,0 +1,196 @@
+package com.danmakuchat.record;
+
+import com.danmakuchat.chat.MessageKind;
+import com.danmakuchat.danmaku.MessagePriority;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 弾幕セッションの記録ファイル（追記専用のバイナリログ）の形式。
+ *
+ * <pre>
+ * ヘッダー: "DMKR"(4) バージョン(u16) 記録開始時刻(i64, エポックミリ秒)
+ * レコード: 長さ(i32, 以降のバイト数)
+ *           到着時刻(i64, 記録開始からのナノ秒)
+ *           種類(u8, MessageKind) 優先度(u8, MessagePriority) 本文の位置(i32)
+ *           送信者(文字列、なければ長さ -1) 表示用の平文(文字列) テキストの JSON(文字列)
+ * 文字列:   長さ(i32, バイト数) UTF-8 のバイト列
+ * </pre>
+ *
+ * レコードは長さで始まるため、書き込み途中で終了したファイルでも末尾の不完全なレコードだけを読み捨てられます。
+ * 平文はゲームの外（シミュレーターなど）で負荷の再現に使い、JSON はゲーム内で装飾付きのテキストを復元するのに使います。
+ */
+public final class SessionLog {
+    public static final String FILE_EXTENSION = ".dmkr";
+
+    private static final byte[] MAGIC = {'D', 'M', 'K', 'R'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 8;
+
+    private SessionLog() {
+    }
+
+    /**
+     * 記録された 1 件のメッセージ。
+     *
+     * @param arrivalNanos 記録開始からの到着時刻（ナノ秒）
+     * @param kind チャット行の種類
+     * @param priority 混雑時の優先度
+     * @param sender 送信者名
+     * @param bodyStart 平文で本文が始まる位置
+     * @param plainText 書式を除いた表示用の文字列
+     * @param textJson 装飾を含むテキストの JSON 表現
+     */
+    public record Entry(long arrivalNanos, MessageKind kind, MessagePriority priority, @Nullable String sender,
+                        int bodyStart, String plainText, String textJson) {
+    }
+
+    /**
+     * ファイルの先頭にヘッダーを書き込みます。
+     *
+     * @param output 出力先
+     * @param startEpochMillis 記録開始時刻
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static void writeHeader(DataOutputStream output, long startEpochMillis) throws IOException {
+        output.write(MAGIC);
+        output.writeShort(VERSION);
+        output.writeLong(startEpochMillis);
+    }
+
+    /**
+     * レコードを 1 件書き込みます。
+     *
+     * @param output 出力先
+     * @param entry 書き込むメッセージ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static void writeEntry(DataOutputStream output, Entry entry) throws IOException {
+        byte[] sender = entry.sender() == null ? null : entry.sender().getBytes(StandardCharsets.UTF_8);
+        byte[] plain = entry.plainText().getBytes(StandardCharsets.UTF_8);
+        byte[] json = entry.textJson().getBytes(StandardCharsets.UTF_8);
+
+        int length = 8 + 1 + 1 + 4
+            + 4 + (sender == null ? 0 : sender.length)
+            + 4 + plain.length
+            + 4 + json.length;
+        output.writeInt(length);
+        output.writeLong(entry.arrivalNanos());
+        output.writeByte(entry.kind().ordinal());
+        output.writeByte(entry.priority().ordinal());
+        output.writeInt(entry.bodyStart());
+        writeBytes(output, sender);
+        writeBytes(output, plain);
+        writeBytes(output, json);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * 記録ファイルをメモリマップして読み込むリーダーを開きます。
+     *
+     * @param path 記録ファイル
+     * @return リーダー
+     * @throws IOException ファイルを開けない場合、または記録ファイルの形式でない場合
+     */
+    public static Reader open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // マップはチャネルを閉じた後も有効
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new Reader(path, buffer);
+    }
+
+    /**
+     * 記録ファイルを先頭から順に読むリーダー。1 つのスレッドからのみ使用してください。
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final long startEpochMillis;
+
+        private Reader(Path path, ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.remaining() < HEADER_SIZE) {
+                throw new IOException(path + ": not a danmaku session log");
+            }
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException(path + ": not a danmaku session log");
+                }
+            }
+            int version = buffer.getShort() & 0xFFFF;
+            if (version != VERSION) {
+                throw new IOException(path + ": unsupported session log version " + version);
+            }
+            this.startEpochMillis = buffer.getLong();
+        }
+
+        public long getStartEpochMillis() {
+            return startEpochMillis;
+        }
+
+        /**
+         * 次のレコードを読みます。
+         *
+         * @return 次のメッセージ、ファイルの終わり（または末尾の不完全なレコード）に達した場合は null
+         */
+        public @Nullable Entry next() {
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length < 0 || buffer.remaining() < length) {
+                    // 書き込み途中で終了したレコード
+                    buffer.position(buffer.limit());
+                    return null;
+                }
+
+                ByteBuffer record = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                try {
+                    return readEntry(record);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    // 壊れたレコードは読み飛ばす
+                }
+            }
+            return null;
+        }
+
+        private static Entry readEntry(ByteBuffer record) {
+            long arrivalNanos = record.getLong();
+            MessageKind kind = MessageKind.values()[record.get() & 0xFF];
+            MessagePriority priority = MessagePriority.values()[record.get() & 0xFF];
+            int bodyStart = record.getInt();
+            String sender = readString(record);
+            String plain = readString(record);
+            String json = readString(record);
+            return new Entry(arrivalNanos, kind, priority, sender, bodyStart,
+                plain == null ? "" : plain, json == null ? "" : json);
+        }
+
+        private static @Nullable String readString(ByteBuffer record) {
+            int length = record.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
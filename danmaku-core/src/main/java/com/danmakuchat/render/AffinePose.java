@@ -0,0 +1,89 @@
+package com.danmakuchat.render;
+
+/**
+ * GUI の描画で使う 2 次元のアフィン変換（JOML の Matrix3x2f と同じ列優先の 6 要素）。
+ *
+ * バッチにまとめたグリフは、メッセージの位置ではなく原点に置いて用意してあるため、
+ * 現在の変換に描画先の位置への平行移動を右から掛けた変換で書き出します。
+ * その組み立てを Minecraft の型に依存せずに確かめられるよう、ここにまとめています。
+ */
+public final class AffinePose {
+    private float m00 = 1;
+    private float m01;
+    private float m10;
+    private float m11 = 1;
+    private float m20;
+    private float m21;
+
+    /**
+     * 要素を設定します。
+     *
+     * @param m00 1 列目の x 成分
+     * @param m01 1 列目の y 成分
+     * @param m10 2 列目の x 成分
+     * @param m11 2 列目の y 成分
+     * @param m20 平行移動の x 成分
+     * @param m21 平行移動の y 成分
+     * @return この変換
+     */
+    public AffinePose set(float m00, float m01, float m10, float m11, float m20, float m21) {
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m20 = m20;
+        this.m21 = m21;
+        return this;
+    }
+
+    /**
+     * pose の後に (x, y) への平行移動を行う変換（pose × translate(x, y)）を設定します。
+     * 原点に置いたものをこの変換で書き出すと、(x, y) に置いたものを pose で書き出した場合と同じ位置になります。
+     *
+     * @param pose 現在の変換
+     * @param x 描画先の X 座標
+     * @param y 描画先の Y 座標
+     * @return この変換
+     */
+    public AffinePose setTranslated(AffinePose pose, float x, float y) {
+        return set(pose.m00, pose.m01, pose.m10, pose.m11, pose.transformX(x, y), pose.transformY(x, y));
+    }
+
+    /**
+     * @return 点 (x, y) を変換した X 座標
+     */
+    public float transformX(float x, float y) {
+        return m00 * x + m10 * y + m20;
+    }
+
+    /**
+     * @return 点 (x, y) を変換した Y 座標
+     */
+    public float transformY(float x, float y) {
+        return m01 * x + m11 * y + m21;
+    }
+
+    public float m00() {
+        return m00;
+    }
+
+    public float m01() {
+        return m01;
+    }
+
+    public float m10() {
+        return m10;
+    }
+
+    public float m11() {
+        return m11;
+    }
+
+    public float m20() {
+        return m20;
+    }
+
+    public float m21() {
+        return m21;
+    }
+}
@@ -0,0 +1,146 @@
+package com.danmakuchat.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 1 フレーム分の描画項目（グリフなど）を、描画先の位置と一緒にキー（テクスチャのページなど）ごとにまとめるバッファ。
+ *
+ * 項目を追加した順序はキーの中では保たれるので、キーごとに 1 回の描画で書き出しても、
+ * 1 件ずつ描画した場合と同じ頂点が同じ順序で並びます（キーをまたいだ順序は変わります）。
+ * キーは同一性（==）で比較します。
+ *
+ * 配列はフレームをまたいで再利用し、足りなくなったときだけ伸ばすので、定常状態では割り当ては発生しません。
+ * 描画スレッドからのみ使用してください。
+ *
+ * @param <K> まとめる単位のキーの型
+ * @param <E> 項目の型
+ */
+public class GroupedBatch<K, E> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Group<K, E>> groups = new ArrayList<>();
+    private Group<K, E> lastGroup;
+
+    /**
+     * 同じキーの項目と、それぞれの描画先の位置。
+     *
+     * @param <K> キーの型
+     * @param <E> 項目の型
+     */
+    public static final class Group<K, E> {
+        private final K key;
+        private Object[] items = new Object[INITIAL_CAPACITY];
+        private float[] positions = new float[INITIAL_CAPACITY * 2];
+        private int count;
+
+        private Group(K key) {
+            this.key = key;
+        }
+
+        private void add(E item, float x, float y) {
+            if (count == items.length) {
+                int capacity = items.length * 2;
+                items = Arrays.copyOf(items, capacity);
+                positions = Arrays.copyOf(positions, capacity * 2);
+            }
+            items[count] = item;
+            positions[count * 2] = x;
+            positions[count * 2 + 1] = y;
+            count++;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @param index 0 以上 {@link #size()} 未満のインデックス
+         * @return 追加された順で index 番目の項目
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            // add で受け取った E しか入らない
+            return (E) items[index];
+        }
+
+        public float getX(int index) {
+            return positions[index * 2];
+        }
+
+        public float getY(int index) {
+            return positions[index * 2 + 1];
+        }
+    }
+
+    /**
+     * フレームの開始時に呼び、前のフレームの項目を捨てます（配列は再利用する）。
+     */
+    public void begin() {
+        for (int i = 0, size = groups.size(); i < size; i++) {
+            Group<K, E> group = groups.get(i);
+            Arrays.fill(group.items, 0, group.count, null);
+            group.count = 0;
+        }
+    }
+
+    /**
+     * 項目を 1 件追加します。
+     *
+     * @param key まとめる単位のキー
+     * @param item 項目
+     * @param x 描画先の X 座標
+     * @param y 描画先の Y 座標
+     */
+    public void add(K key, E item, float x, float y) {
+        groupOf(key).add(item, x, y);
+    }
+
+    /**
+     * これまでに現れたキーの数を返します。このフレームに項目がないキーも含みます。
+     *
+     * @return キーの数
+     */
+    public int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * @param index 0 以上 {@link #groupCount()} 未満のインデックス
+     * @return キーが最初に現れた順で index 番目のまとまり（項目が 0 件のこともある）
+     */
+    public Group<K, E> getGroup(int index) {
+        return groups.get(index);
+    }
+
+    /**
+     * すべてのキーと配列を解放します。
+     */
+    public void clear() {
+        groups.clear();
+        lastGroup = null;
+    }
+
+    private Group<K, E> groupOf(K key) {
+        // 同じキーの項目が続くことが多いので、直前のキーを先に見る
+        if (lastGroup != null && lastGroup.key == key) {
+            return lastGroup;
+        }
+        for (int i = 0, size = groups.size(); i < size; i++) {
+            Group<K, E> group = groups.get(i);
+            if (group.key == key) {
+                lastGroup = group;
+                return group;
+            }
+        }
+        Group<K, E> group = new Group<>(key);
+        groups.add(group);
+        lastGroup = group;
+        return group;
+    }
+}
@@ -0,0 +1,146 @@
+package com.danmakuchat.sim;
+
+import com.danmakuchat.danmaku.MessagePriority;
+import com.danmakuchat.record.SessionLog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * タイムスタンプ付きのチャットの記録。シミュレーターの入力になります。
+ *
+ * テキスト形式では 1 行に 1 件を {@code 経過ミリ秒<TAB>送信者<TAB>本文} で書きます。
+ * 送信者は空でもよく、{@code #} で始まる行と空行は無視します。
+ * テキスト形式には優先度がないため、送信者のある行は通常のチャット、ない行はシステムメッセージとして扱います。
+ * ゲーム内で記録したセッションログ（{@link SessionLog}）もそのまま読み込めます。
+ */
+public final class ChatTrace {
+    private final List<Entry> entries;
+
+    /**
+     * トレースの 1 件。
+     *
+     * @param timeMillis トレース開始からの経過時間（ミリ秒）
+     * @param sender 送信者名（不明な場合は空文字列）
+     * @param text 弾幕として表示するテキスト
+     * @param priority 取り込み時の優先度（最上段のレーンを使えるかどうかが決まる）
+     */
+    public record Entry(long timeMillis, String sender, String text, MessagePriority priority) {
+    }
+
+    /**
+     * @param entries 到着順に並んだエントリ（時刻順でなければ並べ替える）
+     */
+    public ChatTrace(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort((a, b) -> Long.compare(a.timeMillis(), b.timeMillis()));
+        this.entries = Collections.unmodifiableList(sorted);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * トレースの長さ（最後のエントリの時刻）を返します。
+     *
+     * @return 経過ミリ秒
+     */
+    public long getDurationMillis() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).timeMillis();
+    }
+
+    /**
+     * トレースを読み込みます。拡張子が {@value SessionLog#FILE_EXTENSION} のファイルはゲーム内で記録した
+     * セッションログとして、それ以外はテキスト形式として読みます。
+     *
+     * @param path ファイルのパス
+     * @return 読み込んだトレース
+     * @throws IOException 読み込みに失敗した場合、または形式が正しくない場合
+     */
+    public static ChatTrace read(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(SessionLog.FILE_EXTENSION)) {
+            return readSessionLog(path);
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    throw new IOException(path + ":" + lineNumber + ": expected <millis>\\t<sender>\\t<text>");
+                }
+                try {
+                    MessagePriority priority = fields[1].isEmpty() ? MessagePriority.SYSTEM : MessagePriority.NORMAL;
+                    entries.add(new Entry(Long.parseLong(fields[0].strip()), fields[1], fields[2], priority));
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": invalid timestamp '" + fields[0] + "'");
+                }
+            }
+        }
+        return new ChatTrace(entries);
+    }
+
+    /**
+     * ゲーム内の {@code /danmaku record} で記録したセッションログを読み込みます。
+     * 表示用の平文を本文として使い、優先度は記録されたものを使います。
+     *
+     * @param path 記録ファイルのパス
+     * @return 読み込んだトレース
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public static ChatTrace readSessionLog(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        SessionLog.Reader reader = SessionLog.open(path);
+        SessionLog.Entry entry;
+        while ((entry = reader.next()) != null) {
+            String sender = entry.sender() == null ? "" : entry.sender();
+            entries.add(new Entry(entry.arrivalNanos() / 1_000_000L, sender, entry.plainText(), entry.priority()));
+        }
+        return new ChatTrace(entries);
+    }
+
+    /**
+     * 一定の平均レートでランダムに到着する合成トレースを生成します。同じシードからは同じトレースが得られます。
+     *
+     * @param messagesPerSecond 平均到着レート
+     * @param durationSeconds トレースの長さ（秒）
+     * @param senderCount 送信者数
+     * @param seed 乱数のシード
+     * @return 生成したトレース
+     */
+    public static ChatTrace synthetic(double messagesPerSecond, int durationSeconds, int senderCount, long seed) {
+        Random random = new Random(seed);
+        List<Entry> entries = new ArrayList<>();
+        double time = 0;
+        double end = durationSeconds * 1000.0;
+        while (true) {
+            // 指数分布の到着間隔（ポアソン到着）
+            time += -Math.log(1.0 - random.nextDouble()) / messagesPerSecond * 1000.0;
+            if (time >= end) {
+                break;
+            }
+            String sender = "Player" + random.nextInt(senderCount);
+            String text = "<" + sender + "> " + "w".repeat(1 + random.nextInt(8)) + " message " + random.nextInt(1000);
+            entries.add(new Entry((long) time, sender, text, MessagePriority.NORMAL));
+        }
+        return new ChatTrace(entries);
+    }
+}
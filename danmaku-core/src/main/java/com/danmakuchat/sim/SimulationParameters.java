@@ -0,0 +1,37 @@
+package com.danmakuchat.sim;
+
+import com.danmakuchat.danmaku.LaneSchedulerType;
+
+/**
+ * シミュレーションの条件。ゲーム内の設定項目に対応します。
+ *
+ * @param screenWidth 画面幅（GUI スケール適用後のピクセル）
+ * @param laneCount レーン数（maxLanes）
+ * @param fontSize フォントサイズの倍率（テキストの幅に掛かる）
+ * @param scrollSpeed 速度倍率（scrollSpeed）
+ * @param displayDuration 目標表示時間（秒、displayDuration）
+ * @param maxPendingMessages 待機キューの上限。超えた分は古いものから破棄する
+ * @param framesPerSecond シミュレーションのフレームレート
+ * @param scheduler レーン割り当て戦略
+ * @param reserveTopLane 最上段のレーンをメンションとささやき専用にする（reserveTopLane）
+ */
+public record SimulationParameters(
+    int screenWidth,
+    int laneCount,
+    float fontSize,
+    float scrollSpeed,
+    float displayDuration,
+    int maxPendingMessages,
+    int framesPerSecond,
+    LaneSchedulerType scheduler,
+    boolean reserveTopLane
+) {
+    /**
+     * ゲーム内の既定値と同じ条件を返します。
+     *
+     * @return 既定の条件
+     */
+    public static SimulationParameters defaults() {
+        return new SimulationParameters(640, 10, 1.0f, 1.0f, 5.0f, 50, 60, LaneSchedulerType.GREEDY, true);
+    }
+}
@@ -0,0 +1,69 @@
+package com.danmakuchat.sim;
+
+import java.util.Locale;
+
+/**
+ * シミュレーションの結果。
+ *
+ * @param simulatedSeconds シミュレートした時間（秒）
+ * @param frames シミュレートしたフレーム数
+ * @param arrived 到着したメッセージ数
+ * @param displayed 表示されたメッセージ数
+ * @param dropped 待機キューからあふれて破棄されたメッセージ数
+ * @param pendingAtEnd 終了時点で待機中のメッセージ数
+ * @param waitP50Millis 到着から表示までの待ち時間の中央値（ミリ秒）
+ * @param waitP99Millis 到着から表示までの待ち時間の 99 パーセンタイル（ミリ秒）
+ * @param laneUtilization フレームごとの、メッセージが 1 件以上流れているレーンの割合の平均
+ * @param collisionViolations 同じレーンで前後のメッセージが重なったフレームの延べ数（0 でなければ衝突判定の不具合）
+ * @param cpuMicrosPerFrame 1 フレームあたりのスケジューリングの CPU 時間の平均（マイクロ秒）
+ * @param cpuMicrosMaxFrame 最も重かったフレームの CPU 時間（マイクロ秒）
+ */
+public record SimulationReport(
+    double simulatedSeconds,
+    long frames,
+    long arrived,
+    long displayed,
+    long dropped,
+    int pendingAtEnd,
+    double waitP50Millis,
+    double waitP99Millis,
+    double laneUtilization,
+    long collisionViolations,
+    double cpuMicrosPerFrame,
+    double cpuMicrosMaxFrame
+) {
+    /**
+     * 1 秒あたりに表示されたメッセージ数を返します。
+     *
+     * @return スループット
+     */
+    public double getThroughput() {
+        return simulatedSeconds > 0 ? displayed / simulatedSeconds : 0;
+    }
+
+    /**
+     * 到着したメッセージのうち破棄された割合を返します。
+     *
+     * @return 破棄率（0〜1）
+     */
+    public double getDropRate() {
+        return arrived > 0 ? (double) dropped / arrived : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "simulated        %.1f s (%d frames)%n"
+                + "arrived          %d%n"
+                + "displayed        %d (%.2f msg/s)%n"
+                + "dropped          %d (%.2f%%)%n"
+                + "pending at end   %d%n"
+                + "wait p50 / p99   %.1f ms / %.1f ms%n"
+                + "lane utilization %.1f%%%n"
+                + "collisions       %d%n"
+                + "cpu per frame    %.2f us (max %.2f us)",
+            simulatedSeconds, frames, arrived, displayed, getThroughput(), dropped, getDropRate() * 100,
+            pendingAtEnd, waitP50Millis, waitP99Millis, laneUtilization * 100, collisionViolations,
+            cpuMicrosPerFrame, cpuMicrosMaxFrame);
+    }
+}
@@ -0,0 +1,308 @@
+package com.danmakuchat.sim;
+
+import com.danmakuchat.danmaku.DanmakuMotion;
+import com.danmakuchat.danmaku.GreedyLaneScheduler;
+import com.danmakuchat.danmaku.LaneScheduler;
+import com.danmakuchat.danmaku.LaneSchedulerType;
+import com.danmakuchat.danmaku.LaneTable;
+import com.danmakuchat.danmaku.LookaheadLaneScheduler;
+import com.danmakuchat.danmaku.TextMeasurer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * チャットのトレースを仮想時計で再生し、レーン割り当ての品質とコストを測るヘッドレスのシミュレーター。
+ *
+ * ゲーム内と同じ {@link LaneTable} の衝突判定と {@link LaneScheduler} を使い、フレームごとに
+ * 到着したメッセージを待機キューに入れ、レーンを割り当て、画面から出たメッセージを取り除きます。
+ * 時刻はすべて仮想時計なので、同じトレースと条件からは CPU 時間以外は常に同じ結果が得られます。
+ *
+ * テキストの幅はゲーム内（CachedText#getScaledWidth）と同じく、フォントサイズを掛けた後に切り捨てます。
+ * reserveTopLane が有効でレーンが 2 本以上ある場合は、ゲーム内と同じく最上段のレーンをメンションとささやきだけに使わせます。
+ *
+ * ゲーム内の待機キューにある優先度順の並べ替え・送信者ごとの流量制限・連投のまとめはここでは再現せず、
+ * 待機キューは上限を超えたら古いものから破棄する FIFO として扱います。
+ *
+ * 衝突の検査では、各フレームで同じレーン内の前後のメッセージが重なっていないかを確かめます。
+ * 衝突判定が正しければ常に 0 になるはずです。
+ */
+public class TraceSimulator {
+    /** トレースの最後の到着から、待機キューが空になるのを待つ最大時間（秒） */
+    private static final int MAX_DRAIN_SECONDS = 120;
+    /** 重なりとみなす最小の幅（浮動小数点の誤差を無視するため） */
+    private static final float OVERLAP_TOLERANCE = 0.5f;
+
+    private final SimulationParameters parameters;
+    private final TextMeasurer measurer;
+
+    /**
+     * @param parameters シミュレーションの条件
+     * @param measurer テキストの幅の測定器
+     */
+    public TraceSimulator(SimulationParameters parameters, TextMeasurer measurer) {
+        this.parameters = parameters;
+        this.measurer = measurer;
+    }
+
+    /**
+     * 表示中のメッセージ 1 件。
+     */
+    private static final class Active {
+        final float startX;
+        final float speed;
+        final int width;
+        final long spawnNanos;
+        final long exitNanos;
+
+        Active(float startX, float speed, int width, long spawnNanos) {
+            this.startX = startX;
+            this.speed = speed;
+            this.width = width;
+            this.spawnNanos = spawnNanos;
+            this.exitNanos = DanmakuMotion.exitTime(startX, width, speed, spawnNanos);
+        }
+    }
+
+    /**
+     * トレースを最初から最後まで再生します。
+     *
+     * @param trace 再生するトレース
+     * @return 結果
+     */
+    public SimulationReport run(ChatTrace trace) {
+        List<ChatTrace.Entry> entries = trace.getEntries();
+        int screenWidth = parameters.screenWidth();
+        int laneCount = parameters.laneCount();
+        long frameNanos = 1_000_000_000L / parameters.framesPerSecond();
+        long endNanos = (trace.getDurationMillis() + MAX_DRAIN_SECONDS * 1000L) * 1_000_000L;
+
+        // 幅と速度は到着前に求めておく（ゲーム内でも測定はレイアウトキャッシュで一度だけ行われる）
+        boolean reserveTopLane = parameters.reserveTopLane() && laneCount > 1;
+        int[] widths = new int[entries.size()];
+        float[] speeds = new float[entries.size()];
+        int[] firstLanes = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            ChatTrace.Entry entry = entries.get(i);
+            widths[i] = (int) (measurer.getWidth(entry.text()) * parameters.fontSize());
+            speeds[i] = DanmakuMotion.speed(screenWidth, widths[i], parameters.displayDuration(), parameters.scrollSpeed());
+            firstLanes[i] = reserveTopLane && !entry.priority().mayUseReservedLane() ? 1 : 0;
+        }
+
+        LaneTable lanes = new LaneTable();
+        lanes.resize(laneCount);
+        lanes.ensureIndex(screenWidth);
+        LaneScheduler scheduler = parameters.scheduler() == LaneSchedulerType.LOOKAHEAD
+            ? new LookaheadLaneScheduler()
+            : new GreedyLaneScheduler();
+
+        List<ArrayDeque<Active>> onScreen = new ArrayList<>(laneCount);
+        for (int lane = 0; lane < laneCount; lane++) {
+            onScreen.add(new ArrayDeque<>());
+        }
+
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        int batchCapacity = Math.min(parameters.maxPendingMessages(), scheduler.batchLimit(laneCount));
+        int[] batch = new int[batchCapacity];
+        int[] batchWidths = new int[batchCapacity];
+        float[] batchSpeeds = new float[batchCapacity];
+        int[] batchFirstLanes = new int[batchCapacity];
+        int[] batchAssignments = new int[batchCapacity];
+
+        long[] waits = new long[entries.size()];
+        int displayed = 0;
+        long dropped = 0;
+        long violations = 0;
+        double utilizationSum = 0;
+        long cpuSum = 0;
+        long cpuMax = 0;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+
+        int next = 0;
+        long frames = 0;
+        long now = 0;
+        for (; now <= endNanos; now += frameNanos) {
+            if (next >= entries.size() && pending.isEmpty()) {
+                break;
+            }
+            frames++;
+            long cpuStart = cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+
+            // 1. このフレームまでに到着したメッセージを待機キューに入れる
+            while (next < entries.size() && entries.get(next).timeMillis() * 1_000_000L <= now) {
+                pending.addLast(next++);
+                if (pending.size() > parameters.maxPendingMessages()) {
+                    pending.pollFirst();
+                    dropped++;
+                }
+            }
+
+            // 2. 画面から出たメッセージを取り除く
+            for (int lane = 0; lane < laneCount; lane++) {
+                Iterator<Active> iterator = onScreen.get(lane).iterator();
+                while (iterator.hasNext()) {
+                    if (now >= iterator.next().exitNanos) {
+                        iterator.remove();
+                    }
+                }
+            }
+
+            // 3. 待機キューの先頭の束にレーンを割り当てる
+            int count = Math.min(pending.size(), batchCapacity);
+            for (int b = 0; b < count; b++) {
+                batch[b] = pending.pollFirst();
+                batchWidths[b] = widths[batch[b]];
+                batchSpeeds[b] = speeds[batch[b]];
+                batchFirstLanes[b] = firstLanes[batch[b]];
+            }
+            if (count > 0) {
+                scheduler.schedule(count, batchWidths, batchSpeeds, batchFirstLanes, lanes, screenWidth, now, batchAssignments);
+            }
+
+            // 割り当てられなかったメッセージは順序を保って待機キューの先頭に戻す
+            for (int b = count - 1; b >= 0; b--) {
+                int lane = batchAssignments[b];
+                if (lane == -1) {
+                    pending.addFirst(batch[b]);
+                    continue;
+                }
+                int index = batch[b];
+                onScreen.get(lane).addLast(new Active(screenWidth, speeds[index], widths[index], now));
+                waits[displayed++] = now - entries.get(index).timeMillis() * 1_000_000L;
+            }
+
+            long cpu = (cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime()) - cpuStart;
+            cpuSum += cpu;
+            cpuMax = Math.max(cpuMax, cpu);
+
+            // 4. 計測（CPU 時間には含めない）
+            int busyLanes = 0;
+            for (int lane = 0; lane < laneCount; lane++) {
+                if (!onScreen.get(lane).isEmpty()) {
+                    busyLanes++;
+                }
+                violations += countOverlaps(onScreen.get(lane), now);
+            }
+            utilizationSum += (double) busyLanes / laneCount;
+        }
+
+        long[] sortedWaits = Arrays.copyOf(waits, displayed);
+        Arrays.sort(sortedWaits);
+        return new SimulationReport(
+            now / 1_000_000_000.0,
+            frames,
+            next,
+            displayed,
+            dropped,
+            pending.size(),
+            percentile(sortedWaits, 0.50) / 1_000_000.0,
+            percentile(sortedWaits, 0.99) / 1_000_000.0,
+            frames > 0 ? utilizationSum / frames : 0,
+            violations,
+            frames > 0 ? cpuSum / 1000.0 / frames : 0,
+            cpuMax / 1000.0
+        );
+    }
+
+    /**
+     * レーン内で前後に並ぶメッセージのうち、現在時刻に重なっている組の数を返します。
+     * レーン内のメッセージは出現順に並んでおり、前のメッセージほど左にあるはずです。
+     */
+    private static int countOverlaps(ArrayDeque<Active> lane, long nowNanos) {
+        int overlaps = 0;
+        Active previous = null;
+        for (Active current : lane) {
+            if (previous != null) {
+                float previousRight = DanmakuMotion.positionAt(previous.startX, previous.speed, previous.spawnNanos, nowNanos)
+                    + previous.width;
+                float currentLeft = DanmakuMotion.positionAt(current.startX, current.speed, current.spawnNanos, nowNanos);
+                // 前のメッセージが画面内に残っている間だけ検査する
+                if (previousRight > 0 && previousRight - currentLeft > OVERLAP_TOLERANCE) {
+                    overlaps++;
+                }
+            }
+            previous = current;
+        }
+        return overlaps;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * コマンドラインから実行します。
+     * <pre>
+     * --trace &lt;file&gt;       トレースファイルまたは .dmkr の記録（省略時は --rate の合成トレース）
+     * --rate &lt;msg/s&gt;       合成トレースの平均到着レート（既定: 10）
+     * --seconds &lt;n&gt;        合成トレースの長さ（既定: 60）
+     * --width &lt;px&gt;         画面幅（既定: 640）
+     * --lanes &lt;n&gt;          レーン数（既定: 10）
+     * --font-size &lt;x&gt;      フォントサイズの倍率（既定: 1.0）
+     * --speed &lt;x&gt;          速度倍率（既定: 1.0）
+     * --duration &lt;s&gt;       目標表示時間（既定: 5.0）
+     * --max-pending &lt;n&gt;    待機キューの上限（既定: 50）
+     * --fps &lt;n&gt;            フレームレート（既定: 60）
+     * --scheduler &lt;type&gt;   GREEDY または LOOKAHEAD（既定: GREEDY）
+     * --reserve-top-lane &lt;b&gt; 最上段のレーンをメンションとささやき専用にする（既定: true）
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        SimulationParameters defaults = SimulationParameters.defaults();
+        Path tracePath = null;
+        double rate = 10;
+        int seconds = 60;
+        int width = defaults.screenWidth();
+        int lanes = defaults.laneCount();
+        float fontSize = defaults.fontSize();
+        float speed = defaults.scrollSpeed();
+        float duration = defaults.displayDuration();
+        int maxPending = defaults.maxPendingMessages();
+        int fps = defaults.framesPerSecond();
+        LaneSchedulerType scheduler = defaults.scheduler();
+        boolean reserveTopLane = defaults.reserveTopLane();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--trace" -> tracePath = Path.of(value);
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                case "--width" -> width = Integer.parseInt(value);
+                case "--lanes" -> lanes = Integer.parseInt(value);
+                case "--font-size" -> fontSize = Float.parseFloat(value);
+                case "--speed" -> speed = Float.parseFloat(value);
+                case "--duration" -> duration = Float.parseFloat(value);
+                case "--max-pending" -> maxPending = Integer.parseInt(value);
+                case "--fps" -> fps = Integer.parseInt(value);
+                case "--scheduler" -> scheduler = LaneSchedulerType.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--reserve-top-lane" -> reserveTopLane = Boolean.parseBoolean(value);
+                default -> throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+
+        ChatTrace trace = tracePath != null
+            ? ChatTrace.read(tracePath)
+            : ChatTrace.synthetic(rate, seconds, 50, 1);
+        SimulationParameters parameters = new SimulationParameters(
+            width, lanes, fontSize, speed, duration, maxPending, fps, scheduler, reserveTopLane
+        );
+
+        System.out.println(parameters);
+        System.out.println(new TraceSimulator(parameters, TextMeasurer.fixedWidth()).run(trace));
+    }
+}
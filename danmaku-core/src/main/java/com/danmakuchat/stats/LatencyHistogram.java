@@ -0,0 +1,111 @@
+package com.danmakuchat.stats;
+
+import java.util.Arrays;
+
+/**
+ * 時間（ナノ秒）の分布を固定の対数線形バケットで数えるヒストグラム。
+ *
+ * HdrHistogram と同じく、2 のべき乗ごとの区間をさらに {@link #SUB_BUCKET_COUNT} 個に等分したバケットを使います。
+ * どの値でも相対誤差は 1/{@link #SUB_BUCKET_COUNT} 以内に収まり、バケットは生成時にすべて確保するため、
+ * 記録時にオブジェクトを生成しません（記録 1 回は配列の加算 1 回です）。
+ *
+ * スレッドセーフではありません。記録と読み取りは同じスレッドから行ってください。
+ */
+public class LatencyHistogram {
+    /** 2 のべき乗の区間 1 つあたりのバケット数のビット数 */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** 2 のべき乗の区間 1 つあたりのバケット数 */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** long の正の値をすべて表せるバケット数 */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * 値を 1 件記録します。負の値は 0 として数えます。
+     *
+     * @param value 記録する値（ナノ秒）
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * 記録した値の平均を返します。
+     *
+     * @return 平均値、記録がない場合は 0
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * 指定したパーセンタイルの値を返します。値はバケットの上端（同じバケットに入る最大の値）です。
+     *
+     * @param percentile 0 から 100 のパーセンタイル
+     * @return パーセンタイル値、記録がない場合は 0
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(totalCount * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 記録をすべて消去します。
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // 最上位ビットの下 SUB_BUCKET_BITS ビットで区間内の位置を決める
+        int exponent = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> exponent) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + exponent * SUB_BUCKET_COUNT + mantissa;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long mantissa = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+}
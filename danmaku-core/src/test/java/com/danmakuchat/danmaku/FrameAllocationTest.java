@@ -0,0 +1,127 @@
+package com.danmakuchat.danmaku;
+
+import com.danmakuchat.stats.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 表示中のメッセージが 200 件ある定常状態で、1 フレーム分の処理（表示中のメッセージの更新と削除、
+ * 待機キューからのレーン割り当て）がヒープを 1 バイトも確保しないことを確かめるテスト。
+ *
+ * フレームの処理はゲームと同じく、{@link DanmakuStore#update} で画面外に出たメッセージを削除し、
+ * 待機キューが起きていれば {@link LaneAssigner#assign}（DanmakuManager#assignPending が呼ぶものと同じ）で
+ * レーンを割り当てます。JFR のイベントと表示までの待ち時間の記録もこの中で行われます。
+ * レーンを得たメッセージは新しく届いたメッセージとして待機キューに戻すので、流入と流出がつり合い、
+ * 送信者ごとの待機件数も 0 にならずに続きます。時刻は仮想の時計で進めます。
+ */
+class FrameAllocationTest {
+    private static final int SCREEN_WIDTH = 1920;
+    private static final int LANE_COUNT = 12;
+    private static final int ACTIVE_MESSAGES = 200;
+    private static final int BACKLOG = 400;
+    private static final int SENDERS = 8;
+    private static final float TARGET_DURATION = 5.0f;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int MEASURED_FRAMES = 2_000;
+
+    private final PendingQueue<TestMessage> pending = new PendingQueue<>();
+    private final LaneTable lanes = new LaneTable();
+    private final LaneScheduler scheduler = new GreedyLaneScheduler();
+    private final DanmakuStore<String> store = new DanmakuStore<>();
+    private final LatencyHistogram displayLatency = new LatencyHistogram();
+    private final LaneAssigner<TestMessage> assigner = new LaneAssigner<>(pending, lanes, displayLatency, this::spawn);
+
+    private long now = 1_000_000_000_000L;
+    private int minActive = Integer.MAX_VALUE;
+    private long spawned = 0;
+
+    /**
+     * 幅と速度を測り終えた待機中のメッセージ。
+     */
+    private static final class TestMessage extends PendingMessage {
+        private final String text;
+        private final int width;
+        private final float speed;
+        private final RepeatCounter repeats = new RepeatCounter();
+
+        private TestMessage(String sender, String text, int width) {
+            super(sender, MessagePriority.NORMAL, 0L);
+            this.text = text;
+            this.width = width;
+            this.speed = DanmakuMotion.speed(SCREEN_WIDTH, width, TARGET_DURATION, 1.0f);
+        }
+
+        @Override
+        public String getPlainText() {
+            return text;
+        }
+
+        @Override
+        public int getTextWidth() {
+            return width;
+        }
+
+        @Override
+        public float getCalculatedSpeed() {
+            return speed;
+        }
+    }
+
+    @Test
+    void steadyStateFrameDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "allocation counting is not supported by this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        pending.setLimits(BACKLOG, OverflowPolicy.DROP_OLDEST, Long.MAX_VALUE);
+        lanes.resize(LANE_COUNT);
+        for (int i = 0; i < BACKLOG; i++) {
+            // 幅は 60〜136 ピクセル
+            pending.offer(new TestMessage("sender" + (i % SENDERS), "line " + i, 60 + (i * 37) % 77));
+        }
+
+        // 配列の伸長と JIT コンパイルを済ませる
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame();
+        }
+        minActive = Integer.MAX_VALUE;
+        long spawnedBefore = spawned;
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            frame();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(minActive >= ACTIVE_MESSAGES, "only " + minActive + " messages were on screen");
+        assertTrue(spawned > spawnedBefore, "no message was assigned a lane while measuring");
+        assertTrue(displayLatency.getCount() >= spawned, "display latency was not recorded");
+        assertEquals(0L, allocated, "bytes allocated over " + MEASURED_FRAMES + " frames");
+    }
+
+    private void frame() {
+        now += FRAME_NANOS;
+        store.update(now);
+        minActive = Math.min(minActive, store.size());
+
+        lanes.ensureIndex(SCREEN_WIDTH);
+        if (!pending.isAsleep(now, lanes.getEpoch())) {
+            assigner.assign(scheduler, true, Integer.MAX_VALUE, store.getEarliestExitNanos(), SCREEN_WIDTH, now);
+        }
+    }
+
+    private void spawn(TestMessage message, int lane, int screenWidth, long nowNanos) {
+        long exitNanos = DanmakuMotion.exitTime(screenWidth, message.width, message.speed, nowNanos);
+        store.add(screenWidth, lane * 12, message.speed, message.width, lane, nowNanos, exitNanos,
+            message.text, message.repeats, null, 1);
+        spawned++;
+
+        // 同じ内容が新しく届いたものとして待機キューに戻す
+        pending.offer(message);
+    }
+}
@@ -0,0 +1,166 @@
+package com.danmakuchat.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * テクスチャのページごとにまとめて書き出した頂点が、メッセージを 1 件ずつ描画した場合の頂点と一致することを確かめるテスト。
+ *
+ * 2 枚のページにまたがる架空のフォントで、影付きのグリフ（影と本体の 2 枚の矩形）を持つメッセージを並べます。
+ * 1 件ずつ描画する経路（DrawContext#drawText）はメッセージの位置にグリフを置いて現在の変換で書き出し、
+ * バッチの経路（GlyphBatch）は原点に置いたグリフを {@link AffinePose#setTranslated} で作った変換で書き出します。
+ * 前者をページごとに分けた頂点と、{@link GroupedBatch} でまとめて後者で書き出した頂点を比べるので、
+ * まとまりごとの順序と、描画先の位置を変換に組み込む計算の両方を確かめます。
+ * 変換には拡大（フォントサイズ）に加えて回転と平行移動を含め、行と列の取り違えも検出できるようにしています。
+ */
+class GroupedBatchTest {
+    private static final String PAGE_A = "page-a";
+    private static final String PAGE_B = "page-b";
+    private static final int SHADOW_COLOR = 0xFF3F3F3F;
+    private static final int TEXT_COLOR = 0xFFFFFFFF;
+    private static final float TOLERANCE = 1e-3f;
+
+    private static final AffinePose POSE = new AffinePose().set(1.5f, 0.25f, -0.5f, 1.5f, 10, 4);
+
+    /**
+     * メッセージの原点からの位置とページ上の位置を持つグリフ。
+     */
+    private record Glyph(String page, float x, float y, float width, float u, float v) {
+        /**
+         * (originX, originY) に置いたグリフの影と本体の矩形を、pose で変換して続けて書き出します。
+         */
+        void emit(Vertices out, AffinePose pose, float originX, float originY) {
+            quad(out, pose, originX + x + 1, originY + y + 1, u, v, SHADOW_COLOR);
+            quad(out, pose, originX + x, originY + y, u, v, TEXT_COLOR);
+        }
+
+        private void quad(Vertices out, AffinePose pose, float x0, float y0, float u0, float v0, int color) {
+            float x1 = x0 + width;
+            float y1 = y0 + 9;
+            out.add(pose, x0, y0, u0, v0, color);
+            out.add(pose, x0, y1, u0, v0 + 0.1f, color);
+            out.add(pose, x1, y1, u0 + 0.1f, v0 + 0.1f, color);
+            out.add(pose, x1, y0, u0 + 0.1f, v0, color);
+        }
+    }
+
+    private record Message(Glyph[] glyphs, float x, float y) {
+    }
+
+    /**
+     * 書き出された頂点を記録します。
+     */
+    private static final class Vertices {
+        private float[] data = new float[64];
+        private int[] colors = new int[16];
+        private int size;
+        private int count;
+
+        void add(AffinePose pose, float x, float y, float u, float v, int color) {
+            if (size + 4 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+                colors = Arrays.copyOf(colors, colors.length * 2);
+            }
+            data[size++] = pose.transformX(x, y);
+            data[size++] = pose.transformY(x, y);
+            data[size++] = u;
+            data[size++] = v;
+            colors[count++] = color;
+        }
+
+        float[] positions() {
+            return Arrays.copyOf(data, size);
+        }
+
+        int[] colors() {
+            return Arrays.copyOf(colors, count);
+        }
+    }
+
+    @Test
+    void batchedVerticesMatchPerMessagePath() {
+        GroupedBatch<String, Glyph> batch = new GroupedBatch<>();
+        Random random = new Random(25);
+
+        Message[] frame = messages(random, 40);
+        assertBatchMatches(batch, frame);
+
+        // 2 フレーム目は件数を減らし、前のフレームの項目が残らないことも確かめる
+        Message[] smaller = Arrays.copyOf(messages(random, 40), 15);
+        assertBatchMatches(batch, smaller);
+    }
+
+    @Test
+    void emptyFrameEmitsNothing() {
+        GroupedBatch<String, Glyph> batch = new GroupedBatch<>();
+        assertBatchMatches(batch, messages(new Random(1), 10));
+
+        batch.begin();
+        for (int i = 0; i < batch.groupCount(); i++) {
+            assertEquals(0, batch.getGroup(i).size(), "group " + batch.getGroup(i).getKey() + " was not reset");
+        }
+    }
+
+    private static void assertBatchMatches(GroupedBatch<String, Glyph> batch, Message[] messages) {
+        // 1 件ずつ描画した場合の頂点を、ページごとに分けて記録する
+        Map<String, Vertices> expected = new HashMap<>();
+        for (Message message : messages) {
+            for (Glyph glyph : message.glyphs()) {
+                glyph.emit(expected.computeIfAbsent(glyph.page(), page -> new Vertices()), POSE, message.x(), message.y());
+            }
+        }
+
+        batch.begin();
+        for (Message message : messages) {
+            for (Glyph glyph : message.glyphs()) {
+                batch.add(glyph.page(), glyph, message.x(), message.y());
+            }
+        }
+
+        AffinePose offset = new AffinePose();
+        int drawCalls = 0;
+        for (int i = 0; i < batch.groupCount(); i++) {
+            GroupedBatch.Group<String, Glyph> group = batch.getGroup(i);
+            if (group.size() == 0) {
+                continue;
+            }
+            drawCalls++;
+            Vertices actual = new Vertices();
+            for (int j = 0; j < group.size(); j++) {
+                // GlyphBatch と同じく、原点に置いたグリフを描画先の位置を組み込んだ変換で書き出す
+                offset.setTranslated(POSE, group.getX(j), group.getY(j));
+                group.get(j).emit(actual, offset, 0, 0);
+            }
+            Vertices expectedVertices = expected.get(group.getKey());
+            assertArrayEquals(expectedVertices.positions(), actual.positions(), TOLERANCE,
+                "vertices of " + group.getKey());
+            assertArrayEquals(expectedVertices.colors(), actual.colors(), "colors of " + group.getKey());
+        }
+        assertEquals(expected.size(), drawCalls, "draw calls");
+    }
+
+    private static Message[] messages(Random random, int count) {
+        Message[] messages = new Message[count];
+        for (int i = 0; i < count; i++) {
+            int length = 1 + random.nextInt(20);
+            Glyph[] glyphs = new Glyph[length];
+            float advance = 0;
+            for (int j = 0; j < length; j++) {
+                // およそ 5 文字に 1 文字は 2 枚目のページに載っている文字
+                String page = random.nextInt(5) == 0 ? PAGE_B : PAGE_A;
+                float width = 4 + random.nextInt(5);
+                glyphs[j] = new Glyph(page, advance, 0, width, random.nextInt(16) / 16.0f, random.nextInt(16) / 16.0f);
+                advance += width + 1;
+            }
+            messages[i] = new Message(glyphs, 1920 - random.nextInt(2400), 2 + random.nextInt(12) * 12);
+        }
+        return messages;
+    }
+}
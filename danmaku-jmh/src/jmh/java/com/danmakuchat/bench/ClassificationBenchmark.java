@@ -0,0 +1,91 @@
+package com.danmakuchat.bench;
+
+import com.danmakuchat.chat.AhoCorasick;
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.chat.ChatLineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * チャット行の分類とキーワードフィルターのベンチマーク。
+ *
+ * {@link #regexBaseline()} は以前の分類（行全体を文字列にして正規表現で照合）を同じ行で測る比較用です。
+ * Minecraft に依存しないため Text#getString() による文字列化は含まず、以前の処理の下限になります。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassificationBenchmark {
+    private static final int MESSAGE_COUNT = 1024;
+    private static final int HEAD_LENGTH = 96;
+
+    @Param({"STEADY", "SPAM"})
+    public FloodProfile profile;
+
+    @Param({"10", "500"})
+    public int keywordCount;
+
+    private char[][] heads;
+    private int[] headLengths;
+    private boolean[] truncated;
+    private String[] lines;
+    private String[] bodies;
+    private AhoCorasick automaton;
+    private int next;
+
+    @Setup
+    public void setup() {
+        List<FloodProfile.SyntheticLine> generated = profile.generate(MESSAGE_COUNT, 11);
+        heads = new char[MESSAGE_COUNT][HEAD_LENGTH];
+        headLengths = new int[MESSAGE_COUNT];
+        truncated = new boolean[MESSAGE_COUNT];
+        lines = new String[MESSAGE_COUNT];
+        bodies = new String[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            String line = generated.get(i).line();
+            lines[i] = line;
+            headLengths[i] = Math.min(line.length(), HEAD_LENGTH);
+            line.getChars(0, headLengths[i], heads[i], 0);
+            truncated[i] = line.length() > HEAD_LENGTH;
+            bodies[i] = generated.get(i).body();
+        }
+
+        List<String> keywords = new ArrayList<>(keywordCount);
+        int[] flags = new int[keywordCount];
+        for (int k = 0; k < keywordCount; k++) {
+            keywords.add("keyword" + k);
+            flags[k] = 1;
+        }
+        keywords.set(0, "creeper");
+        automaton = new AhoCorasick(keywords, flags);
+    }
+
+    @Benchmark
+    public ChatClassification classify() {
+        int i = next++ & (MESSAGE_COUNT - 1);
+        return ChatLineParser.classify(heads[i], headLengths[i], truncated[i]);
+    }
+
+    @Benchmark
+    public boolean regexBaseline() {
+        int i = next++ & (MESSAGE_COUNT - 1);
+        // 以前の判定と同じく、呼び出しごとにパターンをコンパイルする String.matches を使う
+        return lines[i].matches("^<[^>]+> .+$");
+    }
+
+    @Benchmark
+    public int keywordScan() {
+        int i = next++ & (MESSAGE_COUNT - 1);
+        return automaton.scan(bodies[i]);
+    }
+}
@@ -0,0 +1,128 @@
+package com.danmakuchat.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ゲーム内の外部チャット受信サーバーに、合成チャットを一定のレートでループバック経由で送り続ける負荷試験のクライアント。
+ *
+ * 1 秒ごとに、実際に送れた件数と、書き込みにかかった時間（サーバーの背圧で送信側のバッファが埋まると伸びる）、
+ * 書き込みを始める時点で予定より遅れていた最大の件数を表示します。
+ * 受信してから画面に出るまでの待ち時間はゲーム側で測っています。サーバーは行を読み終えた時点を受信時刻とするため、
+ * 背圧で待たされた時間も含めて {@code /danmaku stats} の表示待ち時間に出ます。
+ * 試験の前に {@code /danmaku stats reset} で計測値を消しておいてください。
+ */
+public final class ExternalChatLoadClient {
+    private static final int LINE_COUNT = 4096;
+    /** 予定に追いついたときに待つ時間 */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private ExternalChatLoadClient() {
+    }
+
+    /**
+     * コマンドラインから実行します。
+     * <pre>
+     * --port &lt;n&gt;        受信サーバーのポート（既定: 25580）
+     * --rate &lt;msg/s&gt;     送信レート（既定: 10000）
+     * --seconds &lt;n&gt;     送信する時間（既定: 30）
+     * --profile &lt;name&gt;  STEADY、BURST、SPAM のいずれか（既定: BURST）
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 25580;
+        double rate = 10_000;
+        int seconds = 30;
+        FloodProfile profile = FloodProfile.BURST;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                case "--profile" -> profile = FloodProfile.valueOf(value.toUpperCase(Locale.ROOT));
+                default -> throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+
+        // JSON への変換は送信前に済ませ、送信ループでは書き込みだけを行う
+        List<FloodProfile.SyntheticLine> generated = profile.generate(LINE_COUNT, 17);
+        byte[][] lines = new byte[LINE_COUNT][];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            FloodProfile.SyntheticLine line = generated.get(i);
+            String json = "{\"sender\":\"" + escape(line.sender()) + "\",\"text\":\"" + escape(line.body()) + "\"}\n";
+            lines[i] = json.getBytes(StandardCharsets.UTF_8);
+        }
+
+        System.out.printf(Locale.ROOT, "127.0.0.1:%d に %.0f msg/s で %d 秒間送信します (%s)%n", port, rate, seconds, profile);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            run(new BufferedOutputStream(socket.getOutputStream(), 1 << 16), lines, rate, seconds);
+        }
+    }
+
+    private static void run(OutputStream output, byte[][] lines, double rate, int seconds) throws IOException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+
+        long sent = 0;
+        long sentAtReport = 0;
+        long blockedNanos = 0;
+        long blockedAtReport = 0;
+        long maxBehind = 0;
+
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            // 開始からの経過時間で送るべき件数を決めるので、遅れた分は次の書き込みでまとめて送る
+            long due = (long) ((now - start) * rate / 1e9);
+            if (sent < due) {
+                maxBehind = Math.max(maxBehind, due - sent);
+                long before = System.nanoTime();
+                while (sent < due) {
+                    output.write(lines[(int) (sent % lines.length)]);
+                    sent++;
+                }
+                output.flush();
+                blockedNanos += System.nanoTime() - before;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+
+            if (now >= nextReport) {
+                System.out.printf(Locale.ROOT, "%6d msg/s  書き込み %5.1f ms  最大の遅れ %d 件%n",
+                    sent - sentAtReport, (blockedNanos - blockedAtReport) / 1e6, maxBehind);
+                sentAtReport = sent;
+                blockedAtReport = blockedNanos;
+                maxBehind = 0;
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "合計 %d 件（平均 %.0f msg/s）、書き込み %.1f ms%n",
+            sent, sent / elapsedSeconds, blockedNanos / 1e6);
+        System.out.println("受信から表示までの待ち時間はゲーム内の /danmaku stats で確認してください");
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
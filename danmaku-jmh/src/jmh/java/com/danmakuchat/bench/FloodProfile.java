@@ -0,0 +1,78 @@
+package com.danmakuchat.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の合成チャットの流量パターン。
+ * 同じシードからは常に同じメッセージ列が生成されます。
+ */
+public enum FloodProfile {
+    /** 少数の送信者が長さのばらついた文を普通に流す */
+    STEADY(20, 0.0),
+    /** イベント時など、多数の送信者が一斉に書き込む */
+    BURST(500, 0.1),
+    /** 少数の送信者が「www」「888」のような短い定型文を連投する */
+    SPAM(5, 0.8);
+
+    private static final String[] SHORT_LINES = {"www", "888", "gg", "草", "ｗｗｗｗ", "nice", "lol", "!!!"};
+    private static final String WORDS = "the quick brown fox jumps over lazy dog diamond creeper nether portal "
+        + "redstone villager trade enchant beacon elytra 建築 すごい 天才 かわいい";
+
+    private final int senderCount;
+    private final double shortLineRatio;
+
+    FloodProfile(int senderCount, double shortLineRatio) {
+        this.senderCount = senderCount;
+        this.shortLineRatio = shortLineRatio;
+    }
+
+    /**
+     * 合成メッセージを生成します。
+     *
+     * @param count 生成する件数
+     * @param seed 乱数のシード
+     * @return 生成したメッセージ
+     */
+    public List<SyntheticLine> generate(int count, long seed) {
+        Random random = new Random(seed);
+        String[] words = WORDS.split(" ");
+        List<SyntheticLine> lines = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            String sender = "Player" + random.nextInt(senderCount);
+            String body;
+            if (random.nextDouble() < shortLineRatio) {
+                body = SHORT_LINES[random.nextInt(SHORT_LINES.length)];
+            } else {
+                StringBuilder builder = new StringBuilder();
+                int wordCount = 1 + random.nextInt(12);
+                for (int w = 0; w < wordCount; w++) {
+                    if (w > 0) {
+                        builder.append(' ');
+                    }
+                    builder.append(words[random.nextInt(words.length)]);
+                }
+                body = builder.toString();
+            }
+
+            // バニラ形式とサーバー独自形式を混ぜる
+            String line = random.nextInt(4) == 0
+                ? "[VIP] " + sender + ": " + body
+                : "<" + sender + "> " + body;
+            lines.add(new SyntheticLine(sender, body, line));
+        }
+        return lines;
+    }
+
+    /**
+     * 合成したチャット行。
+     *
+     * @param sender 送信者名
+     * @param body 本文
+     * @param line 送信者の表記を含むチャット行全体
+     */
+    public record SyntheticLine(String sender, String body, String line) {
+    }
+}
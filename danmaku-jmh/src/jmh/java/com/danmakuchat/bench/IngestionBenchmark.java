@@ -0,0 +1,84 @@
+package com.danmakuchat.bench;
+
+import com.danmakuchat.danmaku.MpscQueue;
+import com.danmakuchat.danmaku.SenderRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 受信キューから待機キューへの取り込み（drainIngress 相当）のベンチマーク。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IngestionBenchmark {
+    private static final int MESSAGE_COUNT = 4096;
+    /** 1 フレームに届くメッセージ数 */
+    private static final int FRAME_BATCH = 64;
+
+    @Param({"STEADY", "BURST", "SPAM"})
+    public FloodProfile profile;
+
+    private final MpscQueue<FloodProfile.SyntheticLine> queue = new MpscQueue<>();
+    private final SenderRateLimiter rateLimiter = new SenderRateLimiter();
+    private List<FloodProfile.SyntheticLine> lines;
+    private int next;
+    private long nowMillis;
+
+    @Setup
+    public void setup() {
+        lines = profile.generate(MESSAGE_COUNT, 3);
+        rateLimiter.setLimits(2.0, 5);
+    }
+
+    /**
+     * 1 フレーム分のメッセージを受信キューに入れ、描画スレッドと同じように取り出して流量制限にかけます。
+     */
+    @Benchmark
+    public int offerAndDrain() {
+        for (int b = 0; b < FRAME_BATCH; b++) {
+            queue.offer(lines.get(next++ & (MESSAGE_COUNT - 1)));
+        }
+
+        nowMillis += 16;
+        int accepted = 0;
+        FloodProfile.SyntheticLine line;
+        while ((line = queue.poll()) != null) {
+            if (rateLimiter.tryAcquire(line.sender(), nowMillis)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 複数のプロデューサー（チャットの受信スレッドや外部連携）が同時に追加する場合の追加側のコスト。
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void produce() {
+        queue.offer(lines.get(0));
+    }
+
+    /**
+     * 複数プロデューサーと並行して取り出す単一コンシューマー側のコスト。
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public FloodProfile.SyntheticLine consume() {
+        return queue.poll();
+    }
+}
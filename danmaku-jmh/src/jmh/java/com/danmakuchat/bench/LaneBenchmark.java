@@ -0,0 +1,127 @@
+package com.danmakuchat.bench;
+
+import com.danmakuchat.danmaku.DanmakuMotion;
+import com.danmakuchat.danmaku.GreedyLaneScheduler;
+import com.danmakuchat.danmaku.LaneScheduler;
+import com.danmakuchat.danmaku.LaneTable;
+import com.danmakuchat.danmaku.LookaheadLaneScheduler;
+import com.danmakuchat.danmaku.TextMeasurer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * レーン探索（findBestLane 相当）とスケジューラーのベンチマーク。
+ *
+ * 合成メッセージを一定間隔で流し続け、レーンが埋まった定常状態でのコストを測ります。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LaneBenchmark {
+    private static final int SCREEN_WIDTH = 640;
+    private static final float TARGET_DURATION = 5.0f;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final int MESSAGE_COUNT = 4096;
+
+    @Param({"10", "20"})
+    public int laneCount;
+
+    @Param({"STEADY", "BURST", "SPAM"})
+    public FloodProfile profile;
+
+    private final LaneTable lanes = new LaneTable();
+    private final LaneScheduler greedy = new GreedyLaneScheduler();
+    private final LaneScheduler lookahead = new LookaheadLaneScheduler();
+
+    private int[] widths;
+    private float[] speeds;
+    private int next;
+    private long now;
+
+    private int[] batchWidths;
+    private float[] batchSpeeds;
+    private int[] batchFirstLanes;
+    private int[] batchAssignments;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<FloodProfile.SyntheticLine> lines = profile.generate(MESSAGE_COUNT, 42);
+        TextMeasurer measurer = TextMeasurer.fixedWidth();
+        widths = new int[MESSAGE_COUNT];
+        speeds = new float[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            widths[i] = measurer.getWidth(lines.get(i).line());
+            speeds[i] = DanmakuMotion.speed(SCREEN_WIDTH, widths[i], TARGET_DURATION, 1.0f);
+        }
+
+        int batchSize = lookahead.batchLimit(laneCount);
+        batchWidths = new int[batchSize];
+        batchSpeeds = new float[batchSize];
+        batchFirstLanes = new int[batchSize];
+        batchAssignments = new int[batchSize];
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        lanes.resize(laneCount);
+        lanes.ensureIndex(SCREEN_WIDTH);
+        next = 0;
+        now = 0;
+    }
+
+    /**
+     * 1 件ずつ上から空きレーンを探して配置します（1 フレームに 4 件の流量）。
+     */
+    @Benchmark
+    public int findBestLane() {
+        now += FRAME_NANOS / 4;
+        int i = next++ & (MESSAGE_COUNT - 1);
+        int lane = lanes.findFirstFit(SCREEN_WIDTH, widths[i], speeds[i], now);
+        if (lane != -1) {
+            lanes.place(lane, SCREEN_WIDTH, widths[i], speeds[i], now);
+        }
+        return lane;
+    }
+
+    @Benchmark
+    public int scheduleGreedy() {
+        return scheduleFrame(greedy);
+    }
+
+    @Benchmark
+    public int scheduleLookahead() {
+        return scheduleFrame(lookahead);
+    }
+
+    /**
+     * 待機中のメッセージの束を 1 フレーム分スケジュールします。
+     * 比較のため、どちらのスケジューラーにも先読みスケジューラーの窓と同じ件数を渡します。
+     */
+    private int scheduleFrame(LaneScheduler scheduler) {
+        now += FRAME_NANOS;
+        int count = batchWidths.length;
+        for (int b = 0; b < count; b++) {
+            int i = (next + b) & (MESSAGE_COUNT - 1);
+            batchWidths[b] = widths[i];
+            batchSpeeds[b] = speeds[i];
+        }
+        Arrays.fill(batchFirstLanes, 0, count, 0);
+
+        int placed = scheduler.schedule(
+            count, batchWidths, batchSpeeds, batchFirstLanes, lanes, SCREEN_WIDTH, now, batchAssignments
+        );
+        next += placed;
+        return placed;
+    }
+}
@@ -0,0 +1,139 @@
+package com.danmakuchat.bench;
+
+import com.danmakuchat.danmaku.DanmakuMotion;
+import com.danmakuchat.danmaku.DanmakuStore;
+import com.danmakuchat.danmaku.RepeatCounter;
+import com.danmakuchat.danmaku.TextMeasurer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表示中のメッセージを 1 フレーム進めて画面外のものを削除する処理を、
+ * SoA の {@link DanmakuStore} と、以前のオブジェクトのリスト（位置を積分して removeIf で削除）で比べるベンチマーク。
+ *
+ * どちらも削除した分だけ右端から新しいメッセージを足し、表示数を一定に保ちます。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoreBenchmark {
+    private static final int SCREEN_WIDTH = 640;
+    private static final float TARGET_DURATION = 5.0f;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final float FRAME_SECONDS = FRAME_NANOS * 1.0e-9f;
+    private static final int MESSAGE_COUNT = 4096;
+
+    @Param({"1000", "10000"})
+    public int activeCount;
+
+    private final RepeatCounter repeats = new RepeatCounter();
+
+    private String[] lines;
+    private int[] widths;
+    private float[] speeds;
+    private int next;
+    private long now;
+
+    private DanmakuStore<String> store;
+    private List<ListMessage> list;
+
+    /**
+     * 以前の表示中のメッセージ。位置をフレームごとに積分して持ちます。
+     */
+    private static final class ListMessage {
+        final String line;
+        final int width;
+        final float speed;
+        float posX;
+
+        ListMessage(String line, int width, float speed, float posX) {
+            this.line = line;
+            this.width = width;
+            this.speed = speed;
+            this.posX = posX;
+        }
+
+        boolean isOffScreen() {
+            return posX + width < 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<FloodProfile.SyntheticLine> generated = FloodProfile.STEADY.generate(MESSAGE_COUNT, 5);
+        TextMeasurer measurer = TextMeasurer.fixedWidth();
+        lines = new String[MESSAGE_COUNT];
+        widths = new int[MESSAGE_COUNT];
+        speeds = new float[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            lines[i] = generated.get(i).line();
+            widths[i] = measurer.getWidth(lines[i]);
+            speeds[i] = DanmakuMotion.speed(SCREEN_WIDTH, widths[i], TARGET_DURATION, 1.0f);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        Random random = new Random(5);
+        store = new DanmakuStore<>();
+        list = new ArrayList<>(activeCount);
+        next = 0;
+        now = (long) (TARGET_DURATION * 1_000_000_000L);
+
+        // 出現時刻をばらけさせて、画面上に均等に散らばった状態から始める
+        for (int n = 0; n < activeCount; n++) {
+            int i = next++ & (MESSAGE_COUNT - 1);
+            long spawnNanos = now - (long) (random.nextDouble() * TARGET_DURATION * 1_000_000_000L);
+            addToStore(i, spawnNanos);
+            list.add(new ListMessage(lines[i], widths[i], speeds[i],
+                DanmakuMotion.positionAt(SCREEN_WIDTH, speeds[i], spawnNanos, now)));
+        }
+    }
+
+    @Benchmark
+    public int store() {
+        now += FRAME_NANOS;
+        store.update(now);
+
+        int spawned = 0;
+        while (store.size() < activeCount) {
+            addToStore(next++ & (MESSAGE_COUNT - 1), now);
+            spawned++;
+        }
+        return spawned;
+    }
+
+    @Benchmark
+    public int list() {
+        for (int n = 0, count = list.size(); n < count; n++) {
+            ListMessage message = list.get(n);
+            message.posX -= message.speed * FRAME_SECONDS;
+        }
+        list.removeIf(ListMessage::isOffScreen);
+
+        int spawned = 0;
+        while (list.size() < activeCount) {
+            int i = next++ & (MESSAGE_COUNT - 1);
+            list.add(new ListMessage(lines[i], widths[i], speeds[i], SCREEN_WIDTH));
+            spawned++;
+        }
+        return spawned;
+    }
+
+    private void addToStore(int i, long spawnNanos) {
+        long exitNanos = DanmakuMotion.exitTime(SCREEN_WIDTH, widths[i], speeds[i], spawnNanos);
+        store.add(SCREEN_WIDTH, 0, speeds[i], widths[i], 0, spawnNanos, exitNanos, lines[i], repeats, null, 1);
+    }
+}
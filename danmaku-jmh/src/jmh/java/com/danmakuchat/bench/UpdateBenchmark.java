@@ -0,0 +1,84 @@
+package com.danmakuchat.bench;
+
+import com.danmakuchat.danmaku.DanmakuMotion;
+import com.danmakuchat.danmaku.TextMeasurer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表示中のメッセージを 1 フレーム進める処理（update と描画前の位置計算）のベンチマーク。
+ *
+ * 各メッセージの位置を閉じた式で求め、画面から出たものは右端から出し直して件数を一定に保ちます。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UpdateBenchmark {
+    private static final int SCREEN_WIDTH = 640;
+    private static final float TARGET_DURATION = 5.0f;
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    @Param({"100", "1000", "10000"})
+    public int activeCount;
+
+    @Param({"STEADY", "SPAM"})
+    public FloodProfile profile;
+
+    private float[] startX;
+    private float[] speed;
+    private int[] width;
+    private long[] spawnNanos;
+    private long[] exitNanos;
+    private float[] posX;
+    private long now;
+
+    @Setup
+    public void setup() {
+        List<FloodProfile.SyntheticLine> lines = profile.generate(activeCount, 7);
+        TextMeasurer measurer = TextMeasurer.fixedWidth();
+        Random random = new Random(7);
+
+        startX = new float[activeCount];
+        speed = new float[activeCount];
+        width = new int[activeCount];
+        spawnNanos = new long[activeCount];
+        exitNanos = new long[activeCount];
+        posX = new float[activeCount];
+        now = (long) (TARGET_DURATION * 1_000_000_000L);
+
+        for (int i = 0; i < activeCount; i++) {
+            width[i] = measurer.getWidth(lines.get(i).line());
+            speed[i] = DanmakuMotion.speed(SCREEN_WIDTH, width[i], TARGET_DURATION, 1.0f);
+            startX[i] = SCREEN_WIDTH;
+            // 出現時刻をばらけさせて、画面上に均等に散らばった状態から始める
+            spawnNanos[i] = now - (long) (random.nextDouble() * TARGET_DURATION * 1_000_000_000L);
+            exitNanos[i] = DanmakuMotion.exitTime(startX[i], width[i], speed[i], spawnNanos[i]);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        now += FRAME_NANOS;
+
+        int respawned = 0;
+        for (int i = 0; i < activeCount; i++) {
+            if (now >= exitNanos[i]) {
+                spawnNanos[i] = now;
+                exitNanos[i] = DanmakuMotion.exitTime(startX[i], width[i], speed[i], now);
+                respawned++;
+            }
+            posX[i] = DanmakuMotion.positionAt(startX[i], speed[i], spawnNanos[i], now);
+        }
+        return respawned;
+    }
+}
@@ -1,8 +1,15 @@
 package com.danmakuchat;
 
+import com.danmakuchat.chat.KeywordFilter;
 import com.danmakuchat.command.DanmakuCommand;
 import com.danmakuchat.render.DanmakuRenderer;
+import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.danmaku.DanmakuSimulation;
+import com.danmakuchat.external.ExternalChatServer;
+import com.danmakuchat.record.SessionRecorder;
+import com.danmakuchat.record.SessionReplayer;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import org.slf4j.Logger;
@@ -24,9 +31,27 @@ public class DanmakuChat implements ClientModInitializer {
     public void onInitializeClient() {
         LOGGER.info("DanmakuChat を初期化中 - チャットを流しましょう！");
 
+        // 設定を読み込む（描画中にファイルを読まないよう、ここで一度だけ）
+        DanmakuConfig.init();
+
+        // 外部チャット連携が有効なら受信サーバーを起動
+        ExternalChatServer.getInstance().sync();
+
+        // 終了時に受信サーバーを止め、保存待ちの設定を書き出す
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> {
+            ExternalChatServer.getInstance().stop();
+            SessionReplayer.getInstance().stop();
+            SessionRecorder.getInstance().stop();
+            DanmakuSimulation.getInstance().stop();
+            DanmakuConfig.getInstance().flush();
+        });
+
         // レンダラーを初期化
         renderer = new DanmakuRenderer();
 
+        // 設定のキーワード一覧からフィルターを構築（バックグラウンド）
+        KeywordFilter.getInstance().rebuild();
+
         // HudRenderCallback API を使用して弾幕レンダラーを HUD に登録
         HudRenderCallback.EVENT.register(renderer::render);
 
@@ -0,0 +1,89 @@
+package com.danmakuchat.chat;
+
+import com.danmakuchat.mixin.ChatHudInvoker;
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+
+import java.util.ArrayDeque;
+
+/**
+ * バニラのチャット処理を省略している間に届いたメッセージを保持する履歴バッファ。
+ *
+ * バニラチャットを隠しているときは {@link ChatHud#addMessage} の本体（行の折り返し、表示行リストの構築、
+ * 履歴の保持）を省略し、[CHAT] のログだけをその場で出して、行はここに記録するだけにします。
+ * バニラチャットが再び描画されるときに、記録した行を古い順に ChatHud へ流し込んで
+ * 表示状態を作り直します。行は届いたときの作成ティックのまま流し込むので、フェードアウトもバニラと同じ時刻に始まります。
+ * バニラと同じく保持する件数には上限があります（ログは記録時に出しているので、上限で捨てた行もログには残ります）。
+ *
+ * クライアントスレッドからのみ使用してください。
+ */
+public class ChatHistoryBuffer {
+    /** バニラの ChatHud が保持するメッセージ数と同じ上限 */
+    private static final int CAPACITY = 100;
+
+    private static final ChatHistoryBuffer instance = new ChatHistoryBuffer();
+
+    private final ArrayDeque<ChatHudLine> entries = new ArrayDeque<>();
+    private boolean replaying = false;
+
+    private ChatHistoryBuffer() {
+    }
+
+    public static ChatHistoryBuffer getInstance() {
+        return instance;
+    }
+
+    /**
+     * バニラの処理を省略した行を記録します。
+     *
+     * @param line 届いたときの作成ティックを持つ行
+     */
+    public void record(ChatHudLine line) {
+        if (entries.size() == CAPACITY) {
+            entries.pollFirst();
+        }
+        entries.addLast(line);
+    }
+
+    /**
+     * 記録した行を古い順に ChatHud に追加し、バッファを空にします。
+     * ログの出力と弾幕への転送は記録時に済んでいるため、公開の addMessage は通さず、表示行と履歴への追加だけを行います。
+     * 追加中は {@link #isReplaying()} が true になります。
+     *
+     * @param chatHud 流し込む先の ChatHud
+     */
+    public void flushTo(ChatHud chatHud) {
+        if (entries.isEmpty() || replaying) {
+            return;
+        }
+
+        replaying = true;
+        try {
+            ChatHudInvoker invoker = (ChatHudInvoker) chatHud;
+            ChatHudLine line;
+            while ((line = entries.pollFirst()) != null) {
+                invoker.invokeAddVisibleMessage(line);
+                invoker.invokeAddMessage(line);
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * 記録したメッセージを ChatHud に流し込んでいる最中かどうかを返します。
+     *
+     * @return 流し込み中の場合は true
+     */
+    public boolean isReplaying() {
+        return replaying;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.danmakuchat.chat;
+
+/**
+ * キーワードフィルターがメッセージに対して行う処理。
+ */
+public enum FilterAction {
+    /** 何もしない */
+    NONE,
+    /** 目立つ色で表示する */
+    HIGHLIGHT,
+    /** 自分の名前を含む：目立つ色で表示し、優先的に流す */
+    MENTION,
+    /** 弾幕として表示しない */
+    MUTE
+}
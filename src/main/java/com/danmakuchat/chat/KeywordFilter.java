@@ -0,0 +1,187 @@
+package com.danmakuchat.chat;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.config.DanmakuConfig;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.StringVisitable;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 設定されたミュート・ハイライト用のキーワードでメッセージを振り分けるフィルター。
+ *
+ * すべてのキーワードを 1 つの {@link AhoCorasick} オートマトンにまとめるため、
+ * キーワードが何百個あってもメッセージ 1 件あたりの走査は本文の長さに比例する 1 回だけです。
+ * テキストは平坦化せず、コンポーネントごとにオートマトンの状態を引き継いで走査します。
+ *
+ * 自分のプレイヤー名もメンション用のキーワードとして同じオートマトンに入れるため、追加の走査は発生しません。
+ * ただし名前は単語として現れた場合だけメンションとし、前後が名前に使える文字（英数字と _）でないこと
+ * （またはテキストの端であること）を走査中に確かめます（「Steve」は「Steven」には一致しない）。
+ *
+ * キーワード一覧が変わったときは、オートマトンをバックグラウンドのスレッドで構築し直し、
+ * 完成したものを volatile な参照で差し替えます。構築中は以前のオートマトンで判定を続けます。
+ */
+public class KeywordFilter {
+    private static final int MUTE = 1;
+    private static final int HIGHLIGHT = 2;
+    private static final int MENTION = 4;
+
+    private static final KeywordFilter instance = new KeywordFilter();
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DanmakuChat keyword filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Compiled compiled = new Compiled(AhoCorasick.EMPTY, 0);
+
+    /**
+     * オートマトンと、メンション用のキーワード（自分の名前）の長さ。同じ構築結果として一緒に差し替える。
+     */
+    private record Compiled(AhoCorasick automaton, int mentionLength) {
+    }
+
+    private KeywordFilter() {
+    }
+
+    public static KeywordFilter getInstance() {
+        return instance;
+    }
+
+    /**
+     * 設定のキーワード一覧からオートマトンをバックグラウンドで構築し直します。
+     * 一覧は呼び出し時点の内容がコピーされます。
+     */
+    public void rebuild() {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        List<String> keywords = new ArrayList<>(config.getMutedWords());
+        int muteCount = keywords.size();
+        keywords.addAll(config.getHighlightedWords());
+        int highlightCount = keywords.size();
+
+        // 自分の名前はメンションとして扱う
+        MinecraftClient client = MinecraftClient.getInstance();
+        int mentionLength = 0;
+        if (client != null && client.getSession() != null) {
+            String username = client.getSession().getUsername();
+            keywords.add(username);
+            mentionLength = username.length();
+        }
+        int builtMentionLength = mentionLength;
+
+        int[] flags = new int[keywords.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = i < muteCount ? MUTE : i < highlightCount ? HIGHLIGHT : MENTION;
+        }
+
+        // 単一スレッドのエグゼキューターなので、後から依頼した構築結果が必ず最後に反映される
+        rebuildExecutor.execute(() -> {
+            AhoCorasick built = new AhoCorasick(keywords, flags);
+            compiled = new Compiled(built, builtMentionLength);
+            DanmakuChat.LOGGER.debug("キーワードフィルターを再構築しました（{} 件）", keywords.size());
+        });
+    }
+
+    /**
+     * メッセージに対する処理を判定します。複数に一致した場合はミュート、メンション、ハイライトの順に優先します。
+     *
+     * 自分の名前の一致をメンションとして扱わない場合（自分の発言や、送信者のいないシステムメッセージ）は
+     * mentionable に false を渡してください。名前の一致だけを除いて判定するので、
+     * 同じ行がハイライト用のキーワードにも一致していればハイライトになります。
+     *
+     * @param message チャットメッセージテキスト
+     * @param mentionable 自分の名前の一致をメンションとして扱う場合は true
+     * @return 処理の種類
+     */
+    public FilterAction match(Text message, boolean mentionable) {
+        Compiled current = compiled;
+        if (current.automaton().isEmpty()) {
+            return FilterAction.NONE;
+        }
+
+        Scanner scanner = new Scanner(current.automaton(), current.mentionLength());
+        message.visit(scanner);
+        scanner.finish();
+
+        if ((scanner.flags & MUTE) != 0) {
+            return FilterAction.MUTE;
+        }
+        if (mentionable && (scanner.flags & MENTION) != 0) {
+            return FilterAction.MENTION;
+        }
+        if ((scanner.flags & HIGHLIGHT) != 0) {
+            return FilterAction.HIGHLIGHT;
+        }
+        return FilterAction.NONE;
+    }
+
+    /**
+     * コンポーネントの境界をまたいで状態を引き継ぎながらオートマトンを進めるビジター。
+     * ミュート対象が見つかった時点で走査を打ち切ります。
+     *
+     * メンションは一致した時点では確定させず、一致の直前の文字と直後の文字が名前に使える文字でない場合だけ数えます。
+     * 直前の文字はコンポーネントをまたいでも引けるよう、名前の長さ + 1 文字分を循環バッファに残しておきます。
+     */
+    private static final class Scanner implements StringVisitable.Visitor<Boolean> {
+        private final AhoCorasick automaton;
+        private final int mentionLength;
+        private final char[] recent;
+        private int state;
+        private int flags = 0;
+        private int position = 0;
+        // 前の境界を満たす名前が直前の文字で終わり、次の文字（またはテキストの終わり）を待っている
+        private boolean mentionPending = false;
+
+        private Scanner(AhoCorasick automaton, int mentionLength) {
+            this.automaton = automaton;
+            this.mentionLength = mentionLength;
+            this.recent = new char[mentionLength + 1];
+            this.state = automaton.initialState();
+        }
+
+        @Override
+        public Optional<Boolean> accept(String segment) {
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+                if (mentionPending) {
+                    mentionPending = false;
+                    if (!isNameChar(c)) {
+                        flags |= MENTION;
+                    }
+                }
+
+                state = automaton.next(state, c);
+                int output = automaton.output(state);
+                flags |= output & ~MENTION;
+                recent[position % recent.length] = c;
+                if ((output & MENTION) != 0) {
+                    // 一致は position - mentionLength + 1 から始まるので、その 1 文字前を見る
+                    int before = position - mentionLength;
+                    mentionPending = before < 0 || !isNameChar(recent[before % recent.length]);
+                }
+                position++;
+            }
+            return (flags & MUTE) != 0 ? Optional.of(Boolean.TRUE) : Optional.empty();
+        }
+
+        /**
+         * テキストの終わりで名前が終わっていた場合のメンションを確定させます。
+         */
+        private void finish() {
+            if (mentionPending) {
+                mentionPending = false;
+                flags |= MENTION;
+            }
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.danmakuchat.chat;
+
+import net.minecraft.text.StringVisitable;
+import net.minecraft.text.Text;
+import net.minecraft.text.TranslatableTextContent;
+
+import java.util.Optional;
+
+/**
+ * チャット行をプレイヤーチャットとシステムメッセージに分類し、送信者名を取り出します。
+ *
+ * テキスト全体を {@link Text#getString()} で平坦化して正規表現にかける代わりに、
+ * コンポーネントを先頭から辿って判定に必要な先頭部分だけを読み、手書きの照合で分類します。
+ * 先頭部分を読み終えた時点で走査を打ち切るため、長いメッセージでもコストはほぼ一定です。
+ *
+ * 自分宛てのささやきは翻訳キー {@code commands.message.display.incoming} で判定し、
+ * それ以外の形式の判定は {@link ChatLineParser} に任せます。
+ */
+public final class MessageClassifier {
+    /** 判定のために読む先頭部分の最大文字数 */
+    private static final int HEAD_LENGTH = 96;
+    private static final String WHISPER_KEY = "commands.message.display.incoming";
+
+    private MessageClassifier() {
+    }
+
+    /**
+     * チャット行を分類します。
+     *
+     * @param message チャットメッセージテキスト
+     * @return 判定結果
+     */
+    public static ChatClassification classify(Text message) {
+        // ささやきは翻訳可能なテキストとして届くので、文字列を読む前に翻訳キーで判定する
+        if (message.getContent() instanceof TranslatableTextContent translatable
+            && WHISPER_KEY.equals(translatable.getKey())) {
+            return classifyWhisper(translatable);
+        }
+
+        Head head = new Head();
+        message.visit(head);
+        return ChatLineParser.classify(head.chars, head.length, head.truncated);
+    }
+
+    /**
+     * 「name whispers to you: message」形式のささやきから送信者を取り出します。
+     * 本文の位置は翻訳によって変わるため 0 とします。
+     */
+    private static ChatClassification classifyWhisper(TranslatableTextContent translatable) {
+        Object[] args = translatable.getArgs();
+        String sender = null;
+        if (args.length > 0) {
+            sender = args[0] instanceof Text text ? text.getString() : String.valueOf(args[0]);
+        }
+        return new ChatClassification(MessageKind.WHISPER, sender, 0);
+    }
+
+    /**
+     * テキストのコンポーネントを順に受け取り、先頭部分だけを集めるビジター。
+     * 必要な文字数が集まったら走査を打ち切ります。
+     */
+    private static final class Head implements StringVisitable.Visitor<Boolean> {
+        private final char[] chars = new char[HEAD_LENGTH];
+        private int length = 0;
+        private boolean truncated = false;
+
+        @Override
+        public Optional<Boolean> accept(String segment) {
+            int copy = Math.min(segment.length(), HEAD_LENGTH - length);
+            segment.getChars(0, copy, chars, length);
+            length += copy;
+
+            if (copy < segment.length()) {
+                truncated = true;
+                return Optional.of(Boolean.TRUE);
+            }
+            return Optional.empty();
+        }
+    }
+}
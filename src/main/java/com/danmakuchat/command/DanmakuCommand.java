@@ -1,14 +1,26 @@
 package com.danmakuchat.command;
 
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.chat.KeywordFilter;
 import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.external.ExternalChatServer;
+import com.danmakuchat.record.SessionLog;
+import com.danmakuchat.record.SessionRecorder;
+import com.danmakuchat.record.SessionReplayer;
+import com.danmakuchat.stats.DanmakuStats;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.BoolArgumentType;
 import com.mojang.brigadier.arguments.FloatArgumentType;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.minecraft.text.Text;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.argument;
 import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.literal;
 
@@ -42,6 +54,59 @@ public class DanmakuCommand {
             .then(literal("vanilla")
                 .then(argument("value", BoolArgumentType.bool())
                     .executes(ctx -> setVanillaChat(ctx, BoolArgumentType.getBool(ctx, "value")))))
+            .then(literal("filter")
+                .then(literal("add")
+                    .then(literal("mute")
+                        .then(argument("word", StringArgumentType.greedyString())
+                            .executes(ctx -> addFilterWord(ctx, StringArgumentType.getString(ctx, "word"), false))))
+                    .then(literal("highlight")
+                        .then(argument("word", StringArgumentType.greedyString())
+                            .executes(ctx -> addFilterWord(ctx, StringArgumentType.getString(ctx, "word"), true)))))
+                .then(literal("remove")
+                    .then(argument("word", StringArgumentType.greedyString())
+                        .executes(ctx -> removeFilterWord(ctx, StringArgumentType.getString(ctx, "word")))))
+                .then(literal("list")
+                    .executes(DanmakuCommand::listFilterWords)))
+            .then(literal("friend")
+                .then(literal("add")
+                    .then(argument("name", StringArgumentType.word())
+                        .executes(ctx -> addFriend(ctx, StringArgumentType.getString(ctx, "name")))))
+                .then(literal("remove")
+                    .then(argument("name", StringArgumentType.word())
+                        .executes(ctx -> removeFriend(ctx, StringArgumentType.getString(ctx, "name")))))
+                .then(literal("list")
+                    .executes(DanmakuCommand::listFriends)))
+            .then(literal("external")
+                .then(argument("value", BoolArgumentType.bool())
+                    .executes(ctx -> setExternal(ctx, BoolArgumentType.getBool(ctx, "value"))))
+                .then(literal("port")
+                    .then(argument("port", IntegerArgumentType.integer(1024, 65535))
+                        .executes(ctx -> setExternalPort(ctx, IntegerArgumentType.getInteger(ctx, "port"))))))
+            .then(literal("governor")
+                .then(argument("value", BoolArgumentType.bool())
+                    .executes(ctx -> setGovernor(ctx, BoolArgumentType.getBool(ctx, "value"))))
+                .then(literal("budget")
+                    .then(argument("millis", FloatArgumentType.floatArg(0.1f, 10.0f))
+                        .executes(ctx -> setFrameBudget(ctx, FloatArgumentType.getFloat(ctx, "millis"))))))
+            .then(literal("stats")
+                .executes(DanmakuCommand::showStats)
+                .then(literal("reset")
+                    .executes(DanmakuCommand::resetStats))
+                .then(literal("overlay")
+                    .then(argument("value", BoolArgumentType.bool())
+                        .executes(ctx -> setStatsOverlay(ctx, BoolArgumentType.getBool(ctx, "value"))))))
+            .then(literal("record")
+                .then(literal("start")
+                    .executes(DanmakuCommand::startRecording))
+                .then(literal("stop")
+                    .executes(DanmakuCommand::stopRecording)))
+            .then(literal("replay")
+                .then(literal("stop")
+                    .executes(DanmakuCommand::stopReplay))
+                .then(argument("file", StringArgumentType.string())
+                    .executes(ctx -> startReplay(ctx, StringArgumentType.getString(ctx, "file"), 1.0f))
+                    .then(argument("speed", FloatArgumentType.floatArg(0.1f, 100.0f))
+                        .executes(ctx -> startReplay(ctx, StringArgumentType.getString(ctx, "file"), FloatArgumentType.getFloat(ctx, "speed"))))))
             .then(literal("reload")
                 .executes(DanmakuCommand::reload))
         );
@@ -108,6 +173,165 @@ public class DanmakuCommand {
         return 1;
     }
 
+    private static int addFilterWord(CommandContext<FabricClientCommandSource> ctx, String word, boolean highlight) {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        boolean added = highlight ? config.addHighlightedWord(word) : config.addMutedWord(word);
+        if (!added) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.filter.exists", word));
+            return 0;
+        }
+        KeywordFilter.getInstance().rebuild();
+        ctx.getSource().sendFeedback(Text.translatable(
+            highlight ? "danmakuchat.command.filter.add.highlight" : "danmakuchat.command.filter.add.mute", word));
+        return 1;
+    }
+
+    private static int removeFilterWord(CommandContext<FabricClientCommandSource> ctx, String word) {
+        if (!DanmakuConfig.getInstance().removeFilterWord(word)) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.filter.not_found", word));
+            return 0;
+        }
+        KeywordFilter.getInstance().rebuild();
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.filter.remove", word));
+        return 1;
+    }
+
+    private static int listFilterWords(CommandContext<FabricClientCommandSource> ctx) {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        FabricClientCommandSource source = ctx.getSource();
+
+        source.sendFeedback(Text.translatable("danmakuchat.command.filter.list.mute", String.join(", ", config.getMutedWords())));
+        source.sendFeedback(Text.translatable("danmakuchat.command.filter.list.highlight", String.join(", ", config.getHighlightedWords())));
+        return 1;
+    }
+
+    private static int addFriend(CommandContext<FabricClientCommandSource> ctx, String name) {
+        if (!DanmakuConfig.getInstance().addFriend(name)) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.friend.exists", name));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.friend.add", name));
+        return 1;
+    }
+
+    private static int removeFriend(CommandContext<FabricClientCommandSource> ctx, String name) {
+        if (!DanmakuConfig.getInstance().removeFriend(name)) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.friend.not_found", name));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.friend.remove", name));
+        return 1;
+    }
+
+    private static int listFriends(CommandContext<FabricClientCommandSource> ctx) {
+        String friends = String.join(", ", DanmakuConfig.getInstance().getFriends());
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.friend.list", friends));
+        return 1;
+    }
+
+    private static int setExternal(CommandContext<FabricClientCommandSource> ctx, boolean enabled) {
+        DanmakuConfig.getInstance().setDiscordIntegration(enabled);
+        ExternalChatServer server = ExternalChatServer.getInstance();
+        server.sync();
+        if (enabled && !server.isRunning()) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.external.failed", DanmakuConfig.getInstance().getExternalChatPort()));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.set.external", getEnableStatusText(enabled)));
+        return 1;
+    }
+
+    private static int setExternalPort(CommandContext<FabricClientCommandSource> ctx, int port) {
+        DanmakuConfig.getInstance().setExternalChatPort(port);
+        ExternalChatServer.getInstance().sync();
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.set.external_port", port));
+        return 1;
+    }
+
+    private static int setGovernor(CommandContext<FabricClientCommandSource> ctx, boolean enabled) {
+        DanmakuConfig.getInstance().setAdaptiveQuality(enabled);
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.set.governor", getEnableStatusText(enabled)));
+        return 1;
+    }
+
+    private static int setFrameBudget(CommandContext<FabricClientCommandSource> ctx, float millis) {
+        DanmakuConfig.getInstance().setFrameBudgetMillis(millis);
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.set.frame_budget", millis));
+        return 1;
+    }
+
+    private static int showStats(CommandContext<FabricClientCommandSource> ctx) {
+        for (Text line : DanmakuStats.getInstance().describe()) {
+            ctx.getSource().sendFeedback(line);
+        }
+        return 1;
+    }
+
+    private static int resetStats(CommandContext<FabricClientCommandSource> ctx) {
+        DanmakuStats.getInstance().reset();
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.stats.reset"));
+        return 1;
+    }
+
+    private static int setStatsOverlay(CommandContext<FabricClientCommandSource> ctx, boolean visible) {
+        DanmakuStats.getInstance().setOverlayVisible(visible);
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.set.stats_overlay", getEnableStatusText(visible)));
+        return 1;
+    }
+
+    private static int startRecording(CommandContext<FabricClientCommandSource> ctx) {
+        SessionRecorder recorder = SessionRecorder.getInstance();
+        if (recorder.isRecording()) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.record.already", recorder.getRecordingPath().getFileName().toString()));
+            return 0;
+        }
+
+        Path path;
+        try {
+            path = recorder.start();
+        } catch (IOException e) {
+            DanmakuChat.LOGGER.warn("弾幕の記録を開始できませんでした: {}", e.getMessage());
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.record.failed"));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.record.start", path.getFileName().toString()));
+        return 1;
+    }
+
+    private static int stopRecording(CommandContext<FabricClientCommandSource> ctx) {
+        SessionRecorder recorder = SessionRecorder.getInstance();
+        Path path = recorder.getRecordingPath();
+        long count = recorder.stop();
+        if (path == null || count < 0) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.record.not_recording"));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.record.stop", path.getFileName().toString(), count));
+        return 1;
+    }
+
+    private static int startReplay(CommandContext<FabricClientCommandSource> ctx, String file, float speed) {
+        Path path = SessionRecorder.getRecordingsDirectory().resolve(file);
+        if (!file.endsWith(SessionLog.FILE_EXTENSION) && !Files.exists(path)) {
+            path = SessionRecorder.getRecordingsDirectory().resolve(file + SessionLog.FILE_EXTENSION);
+        }
+
+        try {
+            SessionReplayer.getInstance().start(path, speed);
+        } catch (IOException e) {
+            ctx.getSource().sendError(Text.translatable("danmakuchat.command.replay.failed", file));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.replay.start", path.getFileName().toString(), speed));
+        return 1;
+    }
+
+    private static int stopReplay(CommandContext<FabricClientCommandSource> ctx) {
+        SessionReplayer.getInstance().stop();
+        ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.replay.stop"));
+        return 1;
+    }
+
     private static int reload(CommandContext<FabricClientCommandSource> ctx) {
         DanmakuConfig.getInstance().save();
         ctx.getSource().sendFeedback(Text.translatable("danmakuchat.command.reload"));
@@ -1,47 +1,136 @@
 package com.danmakuchat.config;
 
+import com.danmakuchat.danmaku.LaneSchedulerType;
+import com.danmakuchat.danmaku.OverflowPolicy;
+import com.danmakuchat.jfr.ConfigSavedEvent;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import net.fabricmc.loader.api.FabricLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration manager for DanmakuChat.
  * Handles settings for danmaku display behavior.
  */
 public class DanmakuConfig {
-    private static DanmakuConfig instance;
+    private static volatile DanmakuConfig instance;
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final Path CONFIG_PATH = FabricLoader.getInstance().getConfigDir().resolve("danmakuchat.json");
     public static final Logger LOGGER = LoggerFactory.getLogger("DanmakuChat");
+    private static final long SAVE_DELAY_MILLIS = 500;
+    private static final ScheduledExecutorService SAVE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DanmakuChat config saver");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // Display settings
     private boolean enabled = true;
     private boolean hideVanillaChat = true;
+    // Skip ChatHud.addMessage entirely while vanilla chat is hidden; its lines are rebuilt lazily when shown again
+    private boolean bypassVanillaChat = false;
     private float scrollSpeed = 1.0f;
     private float displayDuration = 5.0f;
     private int maxLanes = 10;
     private float opacity = 0.8f;
     private float fontSize = 1.0f;
 
+    // Pending queue settings
+    private int maxPendingMessages = 50;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private float pendingMaxAge = 10.0f;
+
+    // Merge identical lines arriving within the window into one "×N" danmaku (0 disables)
+    private float repeatWindow = 3.0f;
+    private boolean repeatIgnoreCase = true;
+    private boolean repeatCollapseWhitespace = true;
+
+    // Per-sender rate limit (token bucket); a rate of 0 disables the limit.
+    // Off by default so ordinary chat is never dropped; opt in to stop one sender from taking over the lanes
+    private float senderRate = 0.0f;
+    private int senderBurst = 5;
+
+    // Priority classes: players treated as friends, and whether the top lane is kept for mentions and whispers
+    private List<String> friends = new ArrayList<>();
+    private boolean reserveTopLane = true;
+
+    // Lane assignment strategy
+    private LaneSchedulerType laneScheduler = LaneSchedulerType.GREEDY;
+
+    // Keep active messages in a structure-of-arrays store instead of one object per message
+    private boolean compactStore = false;
+
+    // Draw each distinct message from a pre-rasterized texture atlas instead of glyph by glyph
+    private boolean spriteCache = false;
+
+    // Step danmaku quality down while its share of the frame stays over the budget
+    private boolean adaptiveQuality = false;
+    // Danmaku time per frame, in milliseconds, that the quality governor aims to stay under
+    private float frameBudgetMillis = 0.5f;
+
+    // Run ingestion, lane assignment and culling on a dedicated thread; the render thread only draws
+    private boolean simulationThread = false;
+
+    // Keyword filter (matched case-insensitively anywhere in the message)
+    private List<String> mutedWords = new ArrayList<>();
+    private List<String> highlightedWords = new ArrayList<>();
+
     // External chat integration
     private boolean discordIntegration = false;
+    // Loopback port of the newline-delimited JSON ingestion server used by external bridges
+    private int externalChatPort = 25580;
 
     // Message filtering settings
     private boolean showSystemChat = false;  // System messages OFF by default
 
+    // Latest published snapshot; never serialized (the fields above are the file format)
+    private transient volatile DanmakuSettings settings;
+    // Pending debounced write, guarded by this
+    private transient ScheduledFuture<?> pendingSave;
+
     private DanmakuConfig() {}
 
+    /**
+     * Loads the configuration. Called once from mod initialization so that the file is never read mid-frame.
+     */
+    public static void init() {
+        getInstance();
+    }
+
     public static DanmakuConfig getInstance() {
-        if (instance == null) {
-            instance = load();
+        DanmakuConfig config = instance;
+        if (config == null) {
+            synchronized (DanmakuConfig.class) {
+                config = instance;
+                if (config == null) {
+                    config = load();
+                    instance = config;
+                }
+            }
         }
-        return instance;
+        return config;
+    }
+
+    /**
+     * Returns the current settings as one consistent immutable snapshot.
+     */
+    public DanmakuSettings getSettings() {
+        return settings;
     }
 
     /**
@@ -53,75 +142,289 @@ public class DanmakuConfig {
                 String json = Files.readString(CONFIG_PATH);
                 DanmakuConfig config = GSON.fromJson(json, DanmakuConfig.class);
                 if (config != null) {
+                    config.publish();
                     return config;
                 }
-            } catch (IOException e) {
+            } catch (IOException | JsonParseException e) {
                 LOGGER.error("Failed to load DanmakuChat config: " + e.getMessage());
             }
         }
         // If the file doesn't exist or loading fails, return default settings
         DanmakuConfig defaultConfig = new DanmakuConfig();
+        defaultConfig.publish();
         defaultConfig.save();
         return defaultConfig;
     }
 
     /**
-     * Saves the current configuration to the file.
+     * Publishes the current field values as a new snapshot.
      */
-    public void save() {
+    private synchronized void publish() {
+        settings = new DanmakuSettings(
+            enabled, hideVanillaChat, bypassVanillaChat, scrollSpeed, displayDuration, maxLanes, opacity, fontSize,
+            maxPendingMessages, overflowPolicy, pendingMaxAge,
+            repeatWindow, repeatIgnoreCase, repeatCollapseWhitespace,
+            senderRate, senderBurst,
+            copyOf(friends), reserveTopLane,
+            laneScheduler, compactStore, spriteCache, adaptiveQuality, frameBudgetMillis, simulationThread,
+            copyOf(mutedWords), copyOf(highlightedWords),
+            discordIntegration, externalChatPort, showSystemChat
+        );
+    }
+
+    private static List<String> copyOf(List<String> list) {
+        return list == null ? List.of() : List.copyOf(list);
+    }
+
+    /**
+     * Publishes the current configuration and schedules it to be written to the file.
+     * Calls within {@link #SAVE_DELAY_MILLIS} of each other are coalesced into one write
+     * (e.g. while a slider is being dragged), which happens off the render thread.
+     */
+    public synchronized void save() {
+        publish();
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = SAVE_EXECUTOR.schedule(this::writeSnapshot, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending change immediately. Called when the client is stopping.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (pendingSave == null || !pendingSave.cancel(false)) {
+                // Nothing pending, or the write has already started
+                return;
+            }
+            pendingSave = null;
+        }
+        writeSnapshot();
+    }
+
+    /**
+     * Writes the latest snapshot to a temporary file and moves it over the config file,
+     * so that a crash mid-write never leaves a truncated config behind.
+     */
+    private void writeSnapshot() {
+        ConfigSavedEvent event = new ConfigSavedEvent();
+        event.begin();
+
+        String json = GSON.toJson(settings);
+        Path tempPath = CONFIG_PATH.resolveSibling(CONFIG_PATH.getFileName() + ".tmp");
         try {
-            String json = GSON.toJson(this);
-            Files.writeString(CONFIG_PATH, json);
+            Files.writeString(tempPath, json);
+            try {
+                Files.move(tempPath, CONFIG_PATH, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, CONFIG_PATH, StandardCopyOption.REPLACE_EXISTING);
+            }
+            event.succeeded = true;
         } catch (IOException e) {
             LOGGER.error("Failed to save DanmakuChat config: " + e.getMessage());
         }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = CONFIG_PATH.toString();
+            event.size = json.getBytes(StandardCharsets.UTF_8).length;
+            event.commit();
+        }
     }
 
-    // Getters
-    public boolean isEnabled() { return enabled; }
-    public boolean shouldHideVanillaChat() { return hideVanillaChat; }
-    public float getScrollSpeed() { return scrollSpeed; }
-    public float getDisplayDuration() { return displayDuration; }
-    public int getMaxLanes() { return maxLanes; }
-    public float getOpacity() { return opacity; }
-    public float getFontSize() { return fontSize; }
-    public boolean isDiscordIntegrationEnabled() { return discordIntegration; }
-    public boolean shouldShowSystemChat() { return showSystemChat; }
+    // Getters (read the published snapshot, safe from any thread)
+    public boolean isEnabled() { return settings.enabled(); }
+    public boolean shouldHideVanillaChat() { return settings.hideVanillaChat(); }
+    public boolean shouldBypassVanillaChat() { return settings.bypassVanillaChat(); }
+    public float getScrollSpeed() { return settings.scrollSpeed(); }
+    public float getDisplayDuration() { return settings.displayDuration(); }
+    public int getMaxLanes() { return settings.maxLanes(); }
+    public float getOpacity() { return settings.opacity(); }
+    public float getFontSize() { return settings.fontSize(); }
+    public int getMaxPendingMessages() { return settings.maxPendingMessages(); }
+    public OverflowPolicy getOverflowPolicy() { return settings.overflowPolicy(); }
+    public float getPendingMaxAge() { return settings.pendingMaxAge(); }
+    public float getRepeatWindow() { return settings.repeatWindow(); }
+    public boolean isRepeatIgnoreCase() { return settings.repeatIgnoreCase(); }
+    public boolean isRepeatCollapseWhitespace() { return settings.repeatCollapseWhitespace(); }
+    public float getSenderRate() { return settings.senderRate(); }
+    public int getSenderBurst() { return settings.senderBurst(); }
+    public List<String> getFriends() { return settings.friends(); }
+    public boolean shouldReserveTopLane() { return settings.reserveTopLane(); }
+    public LaneSchedulerType getLaneScheduler() { return settings.laneScheduler(); }
+    public boolean useCompactStore() { return settings.compactStore(); }
+    public boolean useSpriteCache() { return settings.spriteCache(); }
+    public boolean isAdaptiveQualityEnabled() { return settings.adaptiveQuality(); }
+    public float getFrameBudgetMillis() { return settings.frameBudgetMillis(); }
+    public boolean useSimulationThread() { return settings.simulationThread(); }
+    public List<String> getMutedWords() { return settings.mutedWords(); }
+    public List<String> getHighlightedWords() { return settings.highlightedWords(); }
+    public boolean isDiscordIntegrationEnabled() { return settings.discordIntegration(); }
+    public int getExternalChatPort() { return settings.externalChatPort(); }
+    public boolean shouldShowSystemChat() { return settings.showSystemChat(); }
 
-    // Setters (auto-save on change)
-    public void setEnabled(boolean enabled) {
+    // Setters (publish a new snapshot and schedule a save on change)
+    public synchronized void setEnabled(boolean enabled) {
         this.enabled = enabled;
         save();
     }
-    public void setHideVanillaChat(boolean hide) {
+    public synchronized void setHideVanillaChat(boolean hide) {
         this.hideVanillaChat = hide;
         save();
     }
-    public void setScrollSpeed(float speed) {
+    public synchronized void setBypassVanillaChat(boolean bypass) {
+        this.bypassVanillaChat = bypass;
+        save();
+    }
+    public synchronized void setScrollSpeed(float speed) {
         this.scrollSpeed = Math.max(0.1f, Math.min(5.0f, speed));
         save();
     }
-    public void setDisplayDuration(float duration) {
+    public synchronized void setDisplayDuration(float duration) {
         this.displayDuration = Math.max(1.0f, Math.min(30.0f, duration));
         save();
     }
-    public void setMaxLanes(int lanes) {
+    public synchronized void setMaxLanes(int lanes) {
         this.maxLanes = Math.max(1, Math.min(20, lanes));
         save();
     }
-    public void setOpacity(float opacity) {
+    public synchronized void setOpacity(float opacity) {
         this.opacity = Math.max(0.0f, Math.min(1.0f, opacity));
         save();
     }
-    public void setFontSize(float size) {
+    public synchronized void setFontSize(float size) {
         this.fontSize = Math.max(0.5f, Math.min(2.0f, size));
         save();
     }
-    public void setDiscordIntegration(boolean enabled) {
+    public synchronized void setMaxPendingMessages(int max) {
+        this.maxPendingMessages = Math.max(1, Math.min(500, max));
+        save();
+    }
+    public synchronized void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+        save();
+    }
+    public synchronized void setPendingMaxAge(float seconds) {
+        this.pendingMaxAge = Math.max(1.0f, Math.min(60.0f, seconds));
+        save();
+    }
+    public synchronized void setRepeatWindow(float seconds) {
+        this.repeatWindow = Math.max(0.0f, Math.min(30.0f, seconds));
+        save();
+    }
+    public synchronized void setRepeatIgnoreCase(boolean ignoreCase) {
+        this.repeatIgnoreCase = ignoreCase;
+        save();
+    }
+    public synchronized void setRepeatCollapseWhitespace(boolean collapse) {
+        this.repeatCollapseWhitespace = collapse;
+        save();
+    }
+    public synchronized void setSenderRate(float rate) {
+        this.senderRate = Math.max(0.0f, Math.min(20.0f, rate));
+        save();
+    }
+    public synchronized void setSenderBurst(int burst) {
+        this.senderBurst = Math.max(1, Math.min(50, burst));
+        save();
+    }
+    public boolean isFriend(String name) {
+        if (name == null) {
+            return false;
+        }
+        for (String friend : settings.friends()) {
+            if (friend.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    public synchronized boolean addFriend(String name) {
+        if (friends == null) {
+            friends = new ArrayList<>();
+        }
+        if (name.isEmpty() || isFriend(name)) {
+            return false;
+        }
+        friends.add(name);
+        save();
+        return true;
+    }
+    public synchronized boolean removeFriend(String name) {
+        boolean removed = friends != null && friends.removeIf(friend -> friend.equalsIgnoreCase(name));
+        if (removed) {
+            save();
+        }
+        return removed;
+    }
+    public synchronized void setReserveTopLane(boolean reserve) {
+        this.reserveTopLane = reserve;
+        save();
+    }
+    public synchronized void setLaneScheduler(LaneSchedulerType scheduler) {
+        this.laneScheduler = scheduler;
+        save();
+    }
+    public synchronized void setCompactStore(boolean compact) {
+        this.compactStore = compact;
+        save();
+    }
+    public synchronized void setSpriteCache(boolean enabled) {
+        this.spriteCache = enabled;
+        save();
+    }
+    public synchronized boolean addMutedWord(String word) {
+        if (mutedWords == null) {
+            mutedWords = new ArrayList<>();
+        }
+        if (word.isEmpty() || mutedWords.contains(word)) {
+            return false;
+        }
+        mutedWords.add(word);
+        save();
+        return true;
+    }
+    public synchronized boolean addHighlightedWord(String word) {
+        if (highlightedWords == null) {
+            highlightedWords = new ArrayList<>();
+        }
+        if (word.isEmpty() || highlightedWords.contains(word)) {
+            return false;
+        }
+        highlightedWords.add(word);
+        save();
+        return true;
+    }
+    public synchronized boolean removeFilterWord(String word) {
+        boolean removed = mutedWords != null && mutedWords.remove(word);
+        removed |= highlightedWords != null && highlightedWords.remove(word);
+        if (removed) {
+            save();
+        }
+        return removed;
+    }
+    public synchronized void setAdaptiveQuality(boolean enabled) {
+        this.adaptiveQuality = enabled;
+        save();
+    }
+    public synchronized void setFrameBudgetMillis(float frameBudgetMillis) {
+        this.frameBudgetMillis = Math.max(0.1f, Math.min(10.0f, frameBudgetMillis));
+        save();
+    }
+    public synchronized void setSimulationThread(boolean enabled) {
+        this.simulationThread = enabled;
+        save();
+    }
+    public synchronized void setDiscordIntegration(boolean enabled) {
         this.discordIntegration = enabled;
         save();
     }
-    public void setShowSystemChat(boolean show) {
+    public synchronized void setExternalChatPort(int port) {
+        this.externalChatPort = Math.max(1024, Math.min(65535, port));
+        save();
+    }
+    public synchronized void setShowSystemChat(boolean show) {
         this.showSystemChat = show;
         save();
     }
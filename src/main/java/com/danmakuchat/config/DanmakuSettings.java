@@ -0,0 +1,44 @@
+package com.danmakuchat.config;
+
+import com.danmakuchat.danmaku.LaneSchedulerType;
+import com.danmakuchat.danmaku.OverflowPolicy;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of the DanmakuChat settings.
+ * A new snapshot is published by {@link DanmakuConfig} after every change, so readers on any thread
+ * see a consistent set of values without locking. Component names match the config file keys.
+ */
+public record DanmakuSettings(
+    boolean enabled,
+    boolean hideVanillaChat,
+    boolean bypassVanillaChat,
+    float scrollSpeed,
+    float displayDuration,
+    int maxLanes,
+    float opacity,
+    float fontSize,
+    int maxPendingMessages,
+    OverflowPolicy overflowPolicy,
+    float pendingMaxAge,
+    float repeatWindow,
+    boolean repeatIgnoreCase,
+    boolean repeatCollapseWhitespace,
+    float senderRate,
+    int senderBurst,
+    List<String> friends,
+    boolean reserveTopLane,
+    LaneSchedulerType laneScheduler,
+    boolean compactStore,
+    boolean spriteCache,
+    boolean adaptiveQuality,
+    float frameBudgetMillis,
+    boolean simulationThread,
+    List<String> mutedWords,
+    List<String> highlightedWords,
+    boolean discordIntegration,
+    int externalChatPort,
+    boolean showSystemChat
+) {
+}
@@ -61,6 +61,17 @@ class ModMenuIntegration : ModMenuApi {
                     button.message = getEnableText("danmakuchat.config.vanilla_chat", !config.shouldHideVanillaChat())
                 }.dimensions(centerX - buttonWidth / 2, y, buttonWidth, buttonHeight).build()
             )
+            y += spacing
+
+            // Bypass Vanilla Chat toggle
+            addDrawableChild(
+                ButtonWidget.builder(
+                    getEnableText("danmakuchat.config.bypass_vanilla_chat", config.shouldBypassVanillaChat())
+                ) { button ->
+                    config.setBypassVanillaChat(!config.shouldBypassVanillaChat())
+                    button.message = getEnableText("danmakuchat.config.bypass_vanilla_chat", config.shouldBypassVanillaChat())
+                }.dimensions(centerX - buttonWidth / 2, y, buttonWidth, buttonHeight).build()
+            )
             y += spacing + 10
 
             // Scroll Speed slider
@@ -127,6 +138,41 @@ class ModMenuIntegration : ModMenuApi {
                     config.fontSize = value.toFloat()
                 }
             })
+            y += spacing
+
+            // Per-sender rate slider (0 = unlimited)
+            addDrawableChild(object : SliderWidget(
+                centerX - buttonWidth / 2, y, buttonWidth, buttonHeight,
+                Text.literal(""), config.senderRate / 20.0
+            ) {
+                init { updateMessage() }
+                override fun updateMessage() {
+                    val value = (this.value * 20.0 * 2).roundToInt() / 2.0
+                    val label = if (value == 0.0) Text.translatable("danmakuchat.value.unlimited") else Text.literal(String.format("%.1f", value))
+                    message = Text.translatable("danmakuchat.config.sender_rate").append(": ").append(label)
+                }
+                override fun applyValue() {
+                    val value = (this.value * 20.0 * 2).roundToInt() / 2.0
+                    config.senderRate = value.toFloat()
+                }
+            })
+            y += spacing
+
+            // Per-sender burst slider
+            addDrawableChild(object : SliderWidget(
+                centerX - buttonWidth / 2, y, buttonWidth, buttonHeight,
+                Text.literal(""), (config.senderBurst - 1) / 49.0
+            ) {
+                init { updateMessage() }
+                override fun updateMessage() {
+                    val value = (1 + this.value * 49).roundToInt()
+                    message = Text.translatable("danmakuchat.config.sender_burst").append(": $value")
+                }
+                override fun applyValue() {
+                    val value = (1 + this.value * 49).roundToInt()
+                    config.senderBurst = value
+                }
+            })
             y += spacing + 30 // Make space for Done button
 
             // Done button
@@ -1,11 +1,19 @@
 package com.danmakuchat.danmaku;
 
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.chat.MessageKind;
 import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.config.DanmakuSettings;
+import com.danmakuchat.jfr.MessageIngestedEvent;
+import com.danmakuchat.record.SessionRecorder;
+import com.danmakuchat.render.CachedText;
+import com.danmakuchat.stats.DanmakuStats;
 import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 弾幕メッセージキューとレーン割り当てを管理します。
@@ -14,171 +22,399 @@ import java.util.List;
  * メッセージの重複を防ぎながら可読性を保ちます。
  */
 public class DanmakuManager {
-    private static DanmakuManager instance;
-
-    private final List<DanmakuMessage> activeMessages = new ArrayList<>();
-    private final List<LaneInfo> lanes = new ArrayList<>();
-
-    private static class LaneInfo {
-        int laneIndex;
-        DanmakuMessage lastMessage;  // このレーン内の最後のメッセージへの参照
-
-        LaneInfo(int index) {
-            this.laneIndex = index;
-            this.lastMessage = null;
-        }
-    }
+    /** レーン 1 本の高さ（ピクセル） */
+    public static final int LANE_HEIGHT = 20;
+    /** 最上段のレーンの上端の余白（ピクセル） */
+    public static final int TOP_MARGIN = 10;
+
+    // 描画スレッド以外のプロデューサーからも参照されるため、クラス初期化時に生成する
+    private static final DanmakuManager instance = new DanmakuManager();
+
+    // 表示中のメッセージ。画面から出る時刻の早い順に取り出せるヒープで保持する
+    private final ExitTimeHeap activeMessages = new ExitTimeHeap();
+    // 毎フレームのコピーを避けるための読み取り専用ビュー
+    private final List<DanmakuMessage> activeMessagesView = Collections.unmodifiableList(activeMessages);
+    // compactStore 有効時に表示中のメッセージを保持する SoA ストア
+    private final DanmakuStore<CachedText> store = new DanmakuStore<>();
+    private final MpscQueue<DanmakuMessage> ingressQueue = new MpscQueue<>();
+    // 受信キューに入ったまま描画スレッドがまだ取り出していない件数（外部入力の背圧に使う）
+    private final AtomicInteger ingressBacklog = new AtomicInteger();
+    private final PendingQueue<DanmakuMessage> pendingQueue = new PendingQueue<>();
+    private final RepeatCoalescer repeatCoalescer = new RepeatCoalescer();
+    private final SenderRateLimiter rateLimiter = new SenderRateLimiter();
+    private final LaneTable lanes = new LaneTable();
+    private final LaneScheduler greedyScheduler = new GreedyLaneScheduler();
+    private final LaneScheduler lookaheadScheduler = new LookaheadLaneScheduler();
+    // 処理時間が予算を超えたときに品質を下げるガバナー（設定値は書き換えない）
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+
+    // 待機キューからのレーン割り当て（ヘッドレスのテストと同じ処理）
+    private final LaneAssigner<DanmakuMessage> assigner = new LaneAssigner<>(
+        pendingQueue, lanes, DanmakuStats.getInstance().getDisplayLatency(), this::spawn
+    );
+
+    // 直近の update に渡された時刻（System.nanoTime）。レーン判定の位置計算に使う
+    private long currentTimeNanos = System.nanoTime();
+
+    // 待機キューを最後に処理したときの設定と品質。変わったら入場可能時刻を求め直すため待機キューを起こす
+    private DanmakuSettings pendingSettings;
+    private QualityGovernor.Level pendingQualityLevel;
 
     private DanmakuManager() {
         initializeLanes();
     }
 
     public static DanmakuManager getInstance() {
-        if (instance == null) {
-            instance = new DanmakuManager();
-        }
         return instance;
     }
 
     private void initializeLanes() {
-        DanmakuConfig config = DanmakuConfig.getInstance();
-        int maxLanes = config.getMaxLanes();
+        lanes.resize(getTargetLaneCount());
+    }
 
-        lanes.clear();
-        for (int i = 0; i < maxLanes; i++) {
-            lanes.add(new LaneInfo(i));
+    private void ensureLaneCount() {
+        if (lanes.size() != getTargetLaneCount()) {
+            initializeLanes();
         }
     }
 
+    /**
+     * 設定されたレーン数に品質ガバナーの制限を適用した、実際に使うレーン数を返します。
+     */
+    private int getTargetLaneCount() {
+        return qualityGovernor.getLaneCount(DanmakuConfig.getInstance().getMaxLanes());
+    }
+
     /**
      * Add a new message to the danmaku system.
      * Lane assignment is deferred until rendering (when text width can be measured).
+     * The message waits in a bounded pending queue until a lane becomes available.
+     * Safe to call from any thread: the message is handed over through a lock-free
+     * queue and picked up in {@link #drainIngress()} by the render thread, or by the
+     * simulation thread while {@link DanmakuSimulation} is running.
      *
      * @param message The text message to display
      */
     public void addMessage(Text message) {
+        enqueue(message, null, MessagePriority.NORMAL, System.nanoTime());
+    }
+
+    /**
+     * Add a chat line to the danmaku system together with how it was classified.
+     * The sender prefix is ignored when merging repeated lines.
+     *
+     * @param message The text message to display
+     * @param classification Kind, sender and body offset of the chat line
+     * @param priority Priority class used under overload
+     */
+    public void addMessage(Text message, ChatClassification classification, MessagePriority priority) {
+        addMessage(message, classification, priority, System.nanoTime());
+    }
+
+    /**
+     * Add a chat line that arrived earlier than this call, such as an external chat line that waited
+     * for ingress capacity after it was read from the socket. The display latency is measured from ingressNanos.
+     *
+     * @param message The text message to display
+     * @param classification Kind, sender and body offset of the chat line
+     * @param priority Priority class used under overload
+     * @param ingressNanos Monotonic time ({@link System#nanoTime()}) at which the line arrived
+     */
+    public void addMessage(Text message, ChatClassification classification, MessagePriority priority, long ingressNanos) {
+        enqueue(message, classification, priority, ingressNanos);
+    }
+
+    private void enqueue(Text message, @Nullable ChatClassification classification, MessagePriority priority,
+                         long ingressNanos) {
         DanmakuConfig config = DanmakuConfig.getInstance();
         if (!config.isEnabled()) {
             return;
         }
+        MessageKind kind = classification != null ? classification.kind() : null;
+        String sender = classification != null ? classification.sender() : null;
+        int bodyStart = classification != null ? classification.bodyStart() : 0;
+        MessageIngestedEvent.emit(kind, priority, sender, message);
 
         // 固定速度ではなく、目標表示時間T_targetを渡す
         float targetDuration = config.getDisplayDuration();
 
         // DanmakuMessageのコンストラクタを変更（速度 -> 目標時間）
-        DanmakuMessage danmaku = new DanmakuMessage(message, targetDuration);
+        DanmakuMessage danmaku = new DanmakuMessage(message, targetDuration, sender, bodyStart, priority, ingressNanos);
 
-        activeMessages.add(danmaku);
+        // 表示されるメッセージだけを記録し、受信キューに入れる順と揃える
+        SessionRecorder.getInstance().record(message, classification, priority);
+        ingressBacklog.incrementAndGet();
+        ingressQueue.offer(danmaku);
     }
 
     /**
-     * ニコニコ風の衝突回避アルゴリズムを使用して、最適な利用可能なレーンを見つけます。
-     * 修正点: ベストスコア方式を削除し、上から順（レーンインデックスが小さい順）に
-     * 最初に見つかった衝突しないレーンを即座に返します。
+     * 受信キューに溜まっていて、まだ描画スレッドが取り出していないメッセージ数を返します。
+     * どのスレッドから呼び出しても安全です。
      *
-     * @param screenWidth 画面幅（ピクセル）
-     * @param newMessageWidth 新しいメッセージの幅（ピクセル）
-     * @param newCalculatedSpeed 新しいメッセージの計算された速度
-     * @return レーンインデックス、または利用可能なレーンがない場合は -1
+     * @return 未処理の受信メッセージ数
      */
-    public int findBestLane(int screenWidth, int newMessageWidth, float newCalculatedSpeed) {
-        int maxLanes = DanmakuConfig.getInstance().getMaxLanes();
+    public int getIngressBacklog() {
+        return ingressBacklog.get();
+    }
 
-        if (lanes.size() != maxLanes) {
-            initializeLanes();
+    /**
+     * 受信キューに溜まったメッセージをまとめて待機キューに移します。
+     * 一定時間内に届いた同じ内容のメッセージは、待機中または表示中の最初の 1 件にまとめます。
+     * まとめられなかったメッセージは送信者ごとのトークンバケットで流量を制限します。
+     * 描画スレッドから 1 フレームに 1 回だけ呼び出してください。
+     */
+    public void drainIngress() {
+        if (ingressQueue.isEmpty()) {
+            return;
         }
 
-        final float MIN_SPACING = 5.0f;
-
-        // レーンはインデックスの昇順（上から下）に並んでいるため、
-        // ループで上から順にチェックすることで、垂直方向の優先度が保証されます。
-
-        for (LaneInfo lane : lanes) {
+        DanmakuConfig config = DanmakuConfig.getInstance();
 
-            // --- 1. 空きレーンの即時採用 (最優先) ---
-            if (lane.lastMessage == null || !lane.lastMessage.isInitialized()) {
-                return lane.laneIndex; // 最初に空きレーンが見つかったら即座に採用
+        // 待機キューの上限を超えた場合は設定された方針に従って破棄・統合する
+        pendingQueue.setLimits(
+            config.getMaxPendingMessages(),
+            config.getOverflowPolicy(),
+            (long) (config.getPendingMaxAge() * 1000)
+        );
+        repeatCoalescer.configure(
+            (long) (config.getRepeatWindow() * 1000),
+            config.isRepeatIgnoreCase(),
+            config.isRepeatCollapseWhitespace()
+        );
+        rateLimiter.setLimits(config.getSenderRate(), config.getSenderBurst());
+
+        DanmakuMessage message;
+        while ((message = ingressQueue.poll()) != null) {
+            ingressBacklog.decrementAndGet();
+            if (repeatCoalescer.coalesce(message, currentTimeNanos)) {
+                // 待機中のメッセージにまとめられた場合は「×N」の分だけ幅が変わる
+                pendingQueue.wake();
+                continue;
             }
-
-            DanmakuMessage prevMessage = lane.lastMessage;
-            float prevPosX = prevMessage.getPosX();
-            int prevMessageWidth = prevMessage.getTextWidth();
-            float prevCalculatedSpeed = prevMessage.getCalculatedSpeed();
-
-            // --- 2. 初期衝突チェック (右端での衝突回避) ---
-            if (prevPosX + prevMessageWidth + MIN_SPACING > screenWidth) {
-                 continue;
+            if (!rateLimiter.tryAcquire(message.getSender(), message.getCreationTime())) {
+                continue;
             }
+            pendingQueue.offer(message);
+        }
+    }
 
-            // --- 3. 追い越し衝突チェック ---
-            if (newCalculatedSpeed > prevCalculatedSpeed) {
+    /**
+     * レーンの割り当てを待っているメッセージのキューを取得します。
+     *
+     * @return 待機キュー
+     */
+    public PendingQueue<DanmakuMessage> getPendingQueue() {
+        return pendingQueue;
+    }
 
-                float relativeSpeed = newCalculatedSpeed - prevCalculatedSpeed;
-                // Prevの終点: prevPosX + prevMessageWidth
-                // Newの始点: screenWidth
-                float distanceToClose = screenWidth - (prevPosX + prevMessageWidth) + MIN_SPACING;
+    /**
+     * 待機キューの走査とレーン割り当てがこのフレームで必要かどうかを返します。
+     *
+     * 待機中のメッセージがすべて入場可能時刻待ちになると、{@link #assignPending} はその最小の時刻を
+     * 待機キューに記録します。その時刻になるか、レーン数や画面幅が変わって索引が作り直されるか、
+     * メッセージが届くか、設定や品質レベルが変わるまでは false を返すので、
+     * 呼び出し側は幅と速度を求める走査ごと省略できます。
+     *
+     * @param screenWidth 画面幅（ピクセル）
+     * @param nowNanos 現在の単調時刻
+     * @return 待機中のメッセージを処理する必要がある場合は true
+     */
+    public boolean needsPendingPass(int screenWidth, long nowNanos) {
+        if (pendingQueue.size() == 0) {
+            return false;
+        }
+        ensureLaneCount();
+        lanes.ensureIndex(screenWidth);
+
+        // フォントサイズ・速度・レーンの予約などは設定のスナップショットごと比べる
+        DanmakuSettings settings = DanmakuConfig.getInstance().getSettings();
+        QualityGovernor.Level level = qualityGovernor.getLevel();
+        if (settings != pendingSettings || level != pendingQualityLevel) {
+            pendingSettings = settings;
+            pendingQualityLevel = level;
+            pendingQueue.wake();
+        }
+        return !pendingQueue.isAsleep(nowNanos, lanes.getEpoch());
+    }
 
-                if (distanceToClose > 0) {
-                    float timeToCollision = distanceToClose / relativeSpeed;
-                    float prevTimeToExitScreen = (prevPosX + prevMessageWidth) / prevCalculatedSpeed;
+    /**
+     * 待機中のメッセージに、設定されたスケジューラーでレーンを割り当てます。
+     * 割り当てられたメッセージは画面右端から出現し、表示中のメッセージになります。
+     * 割り当てられなかったメッセージは待機キュー内の元の位置に戻ります。
+     * 待機中のメッセージは幅と速度が計算済みである必要があります。
+     *
+     * reserveTopLane が有効でレーンが 2 本以上ある場合、最上段のレーンはメンションとささやき専用になり、
+     * ほかのメッセージは 2 段目から下に割り当てられます。
+     *
+     * 割り当てられなかったメッセージには、どこかのレーンに入れるようになる最も早い時刻を記録し、
+     * その時刻まではスケジューラーに渡しません。流量が多いときに、入れないと分かっている
+     * メッセージを毎フレーム全レーンで再試行するのを避けるためです。
+     * 戻したメッセージがすべて待ち時刻付きになった場合は、その最小値を待機キューに記録し、
+     * {@link #needsPendingPass} がその時刻まで待機キューの処理をまとめて止めます。
+     * 処理の本体は {@link LaneAssigner} にあり、ヘッドレスのテストも同じものを動かします。
+     *
+     * @param screenWidth 画面幅（ピクセル）
+     * @param nowNanos 現在の単調時刻（出現時刻として記録される）
+     */
+    public void assignPending(int screenWidth, long nowNanos) {
+        ensureLaneCount();
+        lanes.ensureIndex(screenWidth);
 
-                    if (timeToCollision < prevTimeToExitScreen) {
-                        continue; // 衝突予測があるためスキップ
-                    }
-                }
-            }
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        LaneScheduler scheduler = config.getLaneScheduler() == LaneSchedulerType.LOOKAHEAD
+            ? lookaheadScheduler
+            : greedyScheduler;
+        boolean reserveTopLane = config.shouldReserveTopLane() && lanes.size() > 1;
+
+        // 品質ガバナーが表示数を制限している間は、空きの分だけを出現させる
+        int room = qualityGovernor.getVisibleLimit(lanes.size()) - getActiveCount();
+        assigner.assign(scheduler, reserveTopLane, room, getEarliestExitTime(), screenWidth, nowNanos);
+    }
 
-            // --- 4. 適合レーンの採用 (垂直優先を保証) ---
-            // 衝突回避の条件をすべてパスした場合、このレーンは利用可能な最も上のレーンです。
-            return lane.laneIndex;
-        }
+    /**
+     * レーンを割り当てられたメッセージを右端から出現させ、出現時刻を記録して表示中のメッセージにします。
+     */
+    private void spawn(DanmakuMessage message, int lane, int screenWidth, long nowNanos) {
+        message.spawn(lane, screenWidth, TOP_MARGIN + lane * LANE_HEIGHT, nowNanos);
+        activateMessage(message);
+    }
 
-        // すべてのレーンが埋まっているか、衝突するため利用できない
-        return -1;
+    /**
+     * 表示中のメッセージが最も早く画面から出る時刻を返します。
+     */
+    private long getEarliestExitTime() {
+        DanmakuMessage head = activeMessages.peek();
+        long earliest = head != null ? head.getExitTime() : Long.MAX_VALUE;
+        return Math.min(earliest, store.getEarliestExitNanos());
     }
 
     /**
-     * Update lane information after assigning a message to a lane.
+     * 待機中のメッセージが、レーンに入れる時刻を待っている最中かどうかを返します。
      *
-     * @param laneIndex The index of the lane
-     * @param message The message assigned to this lane
+     * @param message 待機中のメッセージ
+     * @param nowNanos 現在の単調時刻
+     * @return まだどのレーンにも入れないと分かっている場合は true
+     */
+    public boolean isDeferred(DanmakuMessage message, long nowNanos) {
+        return message.isDeferred(nowNanos, lanes.getEpoch());
+    }
+
+    /**
+     * 出現済みのメッセージを表示中のメッセージとして登録します。
+     * compactStore が有効な場合は SoA ストアに値をコピーして保持します。
      */
-    public void updateLaneInfo(int laneIndex, DanmakuMessage message) {
-        if (laneIndex >= 0 && laneIndex < lanes.size()) {
-            LaneInfo lane = lanes.get(laneIndex);
-            lane.lastMessage = message;
+    private void activateMessage(DanmakuMessage message) {
+        if (DanmakuConfig.getInstance().useCompactStore()) {
+            store.add(
+                message.getStartX(), message.getPosY(), message.getCalculatedSpeed(), message.getTextWidth(),
+                message.getLane(), message.getSpawnTime(), message.getExitTime(),
+                message.getLayout(), message.getRepeats(), message.getRepeatSuffix(), message.getMeasuredRepeatCount()
+            );
+        } else {
+            activeMessages.offer(message);
         }
     }
 
     /**
-     * すべてのアクティブなメッセージを更新し、画面外のものを削除します。
+     * ニコニコ風の衝突回避アルゴリズムを使用して、最適な利用可能なレーンを見つけます。
+     * 修正点: ベストスコア方式を削除し、上から順（レーンインデックスが小さい順）に
+     * 最初に見つかった衝突しないレーンを即座に返します。
+     * 衝突判定は {@link LaneTable#canEnter} にあり、{@link GreedyLaneScheduler} と同じ結果になります。
      *
-     * @param deltaTimeSeconds 前回の更新からの経過時間（秒単位）
+     * @param screenWidth 画面幅（ピクセル）
+     * @param newMessageWidth 新しいメッセージの幅（ピクセル）
+     * @param newCalculatedSpeed 新しいメッセージの計算された速度
+     * @return レーンインデックス、または利用可能なレーンがない場合は -1
      */
-    public void update(float deltaTimeSeconds) {
-        Iterator<DanmakuMessage> iterator = activeMessages.iterator();
-        while (iterator.hasNext()) {
-            DanmakuMessage message = iterator.next();
+    public int findBestLane(int screenWidth, int newMessageWidth, float newCalculatedSpeed) {
+        ensureLaneCount();
+        return lanes.findFirstFit(screenWidth, newMessageWidth, newCalculatedSpeed, currentTimeNanos);
+    }
 
-            // 初期化されている場合のみ更新
-            if (message.isInitialized()) {
-                message.update(deltaTimeSeconds);
+    /**
+     * 画面外に出たメッセージを削除します。
+     * 位置は出現時刻からの経過時間で求まるため、メッセージごとの積分は行いません。
+     * 画面外に出る時刻の早い順にヒープから取り出すので、コストは実際に出ていくメッセージ数に比例します。
+     *
+     * @param nowNanos 現在の単調時刻（{@link System#nanoTime()}）
+     */
+    public void update(long nowNanos) {
+        currentTimeNanos = nowNanos;
 
-                // 画面外のメッセージを削除（初期化されたメッセージのみ）
-                // メッセージは右端（posX + textWidth）が左端（x < 0）を超えたときに削除されます
-                if (message.isOffScreen(message.getTextWidth())) {
-                    iterator.remove();
-                }
-            }
-            // 初期化されていないメッセージは削除しない - 最初にレンダリングされる機会が必要です
+        DanmakuMessage head;
+        while ((head = activeMessages.peek()) != null && head.isOffScreen(nowNanos)) {
+            activeMessages.poll();
         }
+
+        // 設定が切り替わっても表示中のメッセージが流れ切るよう、ストアも常に更新する
+        store.update(nowNanos);
     }
 
+    /**
+     * 表示中のメッセージの読み取り専用ビューを取得します。
+     * コピーを作らないため、描画スレッドでの走査中に {@link #update(long)} を呼ばないでください。
+     * 並び順は不定です。
+     *
+     * @return 表示中のメッセージのビュー
+     */
     public List<DanmakuMessage> getActiveMessages() {
-        return new ArrayList<>(activeMessages);
+        return activeMessagesView;
+    }
+
+    /**
+     * compactStore 有効時に表示中のメッセージを保持する SoA ストアを取得します。
+     *
+     * @return SoA ストア
+     */
+    public DanmakuStore<CachedText> getStore() {
+        return store;
+    }
+
+    /**
+     * 表示中のメッセージ数を返します（SoA ストアに保持されたものを含む）。
+     *
+     * @return 表示中のメッセージ数
+     */
+    public int getActiveCount() {
+        return activeMessages.size() + store.size();
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * 最後尾のメッセージがまだ画面内にあるレーンの数を返します。
+     *
+     * @param nowNanos 現在の単調時刻
+     * @return 使用中のレーン数
+     */
+    public int getOccupiedLaneCount(long nowNanos) {
+        return lanes.countOccupied(nowNanos);
+    }
+
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    public RepeatCoalescer getRepeatCoalescer() {
+        return repeatCoalescer;
+    }
+
+    public SenderRateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     public void clear() {
+        repeatCoalescer.clear();
+        rateLimiter.clear();
         activeMessages.clear();
+        store.clear();
+        pendingQueue.clear();
+        lanes.clear();
+        while (ingressQueue.poll() != null) {
+            // 受信済みで未処理のメッセージも破棄する
+            ingressBacklog.decrementAndGet();
+        }
     }
 }
@@ -1,15 +1,18 @@
 package com.danmakuchat.danmaku;
 
 import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.render.CachedText;
 import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a single danmaku message that flows across the screen.
  */
-public class DanmakuMessage {
+public class DanmakuMessage extends PendingMessage {
     private final Text message;
-    private final long creationTime;
-    private float posX;
+    private long spawnTimeNanos;  // Monotonic time (System.nanoTime) when the message entered the screen
+    private long exitTimeNanos;   // Monotonic time when the message fully leaves the screen
+    private float posX;           // X position at spawn time; the current position is derived from it
     private float posY;
     private float calculatedSpeed;
     private final float targetDuration;
@@ -17,12 +20,46 @@ public class DanmakuMessage {
     private int lane;
     private boolean initialized = false;
     private int textWidth = 0;  // Measured width of the text
-
+    private CachedText layout;  // Shared layout (prepared text and width) from the layout cache
+    private final int bodyStart;            // Offset of the body (after the sender prefix) in the plain text
+    private final RepeatCounter repeats = new RepeatCounter();  // How many identical lines were merged into this one
+    private @Nullable CachedText repeatSuffix;  // Layout of the " ×N" suffix, part of the width while pending
+    private @Nullable String contentKey;        // Normalized content used by the repeat coalescer
+    private boolean measuring;                  // Waiting for the render thread to lay out the text (simulation thread)
+    private float measureFontSize;              // Font size the outstanding layout request is for
+    private int measureRepeatCount;             // Repeat count the outstanding layout request is for
+    private int measuredRepeatCount = 1;        // Repeat count the current repeat suffix was laid out for
 
     // コンストラクタを変更
     public DanmakuMessage(Text message, float targetDuration) {
+        this(message, targetDuration, null, 0, MessagePriority.NORMAL);
+    }
+
+    /**
+     * @param message The text message to display
+     * @param targetDuration Time in seconds the message should take to cross the screen
+     * @param sender Sender parsed from the chat line, or null for system lines
+     * @param bodyStart Offset in the plain text where the body starts after the sender prefix
+     * @param priority Priority class used by the pending queue and the reserved lane
+     */
+    public DanmakuMessage(Text message, float targetDuration, @Nullable String sender, int bodyStart,
+                          MessagePriority priority) {
+        this(message, targetDuration, sender, bodyStart, priority, System.nanoTime());
+    }
+
+    /**
+     * @param message The text message to display
+     * @param targetDuration Time in seconds the message should take to cross the screen
+     * @param sender Sender parsed from the chat line, or null for system lines
+     * @param bodyStart Offset in the plain text where the body starts after the sender prefix
+     * @param priority Priority class used by the pending queue and the reserved lane
+     * @param ingressNanos Monotonic time ({@link System#nanoTime()}) at which the message arrived
+     */
+    public DanmakuMessage(Text message, float targetDuration, @Nullable String sender, int bodyStart,
+                          MessagePriority priority, long ingressNanos) {
+        super(sender, priority, System.currentTimeMillis(), ingressNanos);
         this.message = message;
-        this.creationTime = System.currentTimeMillis();
+        this.bodyStart = bodyStart;
         this.targetDuration = targetDuration; // 目標時間を保持
         // speedは初期化時に計算しない
         this.lane = -1;
@@ -34,16 +71,63 @@ public class DanmakuMessage {
         return message;
     }
 
-    public long getCreationTime() {
-        return creationTime;
+    @Override
+    public String getPlainText() {
+        return message.getString();
     }
 
-    public float getPosX() {
-        return posX;
+    /**
+     * Asks for the text to be laid out by the render thread. Until {@link #finishMeasuring()} is called,
+     * the simulation thread must not read the layout or width and the lane scheduler skips the message.
+     *
+     * @param fontSize Font size to lay out for
+     * @param repeatCount Repeat count to lay out the " ×N" suffix for
+     */
+    void requestMeasure(float fontSize, int repeatCount) {
+        this.measuring = true;
+        this.measureFontSize = fontSize;
+        this.measureRepeatCount = repeatCount;
+    }
+
+    public float getMeasureFontSize() {
+        return measureFontSize;
+    }
+
+    public int getMeasureRepeatCount() {
+        return measureRepeatCount;
+    }
+
+    void finishMeasuring() {
+        this.measuring = false;
     }
 
-    public void setPosX(float posX) {
-        this.posX = posX;
+    @Override
+    public boolean isMeasuring() {
+        return measuring;
+    }
+
+    /**
+     * Returns the repeat count the current " ×N" suffix was laid out for.
+     * The suffix only has to be laid out again when {@link #getRepeatCount()} differs from it.
+     */
+    public int getMeasuredRepeatCount() {
+        return measuredRepeatCount;
+    }
+
+    /**
+     * Returns the X position at the given time.
+     * Speed is constant after {@link #calculateSpeed(int)}, so the position is a closed-form
+     * function of the spawn time and never accumulates per-frame integration drift.
+     *
+     * @param nowNanos Current monotonic time ({@link System#nanoTime()})
+     * @return X position in pixels
+     */
+    public float getPosX(long nowNanos) {
+        return DanmakuMotion.positionAt(posX, calculatedSpeed, spawnTimeNanos, nowNanos);
+    }
+
+    public float getStartX() {
+        return posX;
     }
 
     public float getPosY() {
@@ -74,6 +158,106 @@ public class DanmakuMessage {
         this.initialized = initialized;
     }
 
+    /**
+     * Places the message on screen: assigns its lane and start position, records the spawn
+     * time and precomputes the time at which it leaves the screen.
+     * Must be called after {@link #calculateSpeed(int)}.
+     *
+     * @param lane Assigned lane index
+     * @param startX X position at spawn time (the right edge of the screen)
+     * @param posY Y position of the lane
+     * @param nowNanos Current monotonic time ({@link System#nanoTime()})
+     */
+    public void spawn(int lane, float startX, float posY, long nowNanos) {
+        this.lane = lane;
+        this.posX = startX;
+        this.posY = posY;
+        this.spawnTimeNanos = nowNanos;
+        // The message is off screen once its right edge (posX + textWidth) passes x = 0
+        this.exitTimeNanos = DanmakuMotion.exitTime(startX, textWidth, calculatedSpeed, nowNanos);
+        this.initialized = true;
+    }
+
+    public long getSpawnTime() {
+        return spawnTimeNanos;
+    }
+
+    public long getExitTime() {
+        return exitTimeNanos;
+    }
+
+    public CachedText getLayout() {
+        return layout;
+    }
+
+    /**
+     * Attaches a cached layout and takes the scaled text width from it.
+     *
+     * @param layout Layout shared through the layout cache
+     */
+    public void setLayout(CachedText layout) {
+        this.layout = layout;
+        updateTextWidth();
+    }
+
+    public @Nullable CachedText getRepeatSuffix() {
+        return repeatSuffix;
+    }
+
+    /**
+     * Attaches the layout of the " ×N" repeat suffix so that lane assignment reserves room for it.
+     * Once the message is on screen its lane is already reserved, so the width is left unchanged.
+     *
+     * @param repeatSuffix Suffix layout, or null when the message has not been repeated
+     * @param repeatCount Repeat count the suffix was laid out for
+     */
+    public void setRepeatSuffix(@Nullable CachedText repeatSuffix, int repeatCount) {
+        this.repeatSuffix = repeatSuffix;
+        this.measuredRepeatCount = repeatCount;
+        if (!initialized) {
+            updateTextWidth();
+        }
+    }
+
+    private void updateTextWidth() {
+        int width = (layout != null ? layout.getScaledWidth() : 0) + (repeatSuffix != null ? repeatSuffix.getScaledWidth() : 0);
+        if (width != textWidth) {
+            // The earliest entry time depends on the width, so it has to be computed again
+            clearDeferral();
+        }
+        this.textWidth = width;
+    }
+
+    public int getBodyStart() {
+        return bodyStart;
+    }
+
+    public RepeatCounter getRepeats() {
+        return repeats;
+    }
+
+    public int getRepeatCount() {
+        return repeats.get();
+    }
+
+    /**
+     * Counts one more identical line merged into this message.
+     */
+    void addRepeat() {
+        repeats.increment();
+        // A pending message has to be measured again with the new suffix
+        clearDeferral();
+    }
+
+    @Nullable String getContentKey() {
+        return contentKey;
+    }
+
+    void setContentKey(String contentKey) {
+        this.contentKey = contentKey;
+    }
+
+    @Override
     public int getTextWidth() {
         return textWidth;
     }
@@ -84,17 +268,21 @@ public class DanmakuMessage {
 
     public boolean isExpired(float maxDuration) {
         long currentTime = System.currentTimeMillis();
-        return (currentTime - creationTime) > (maxDuration * 1000);
+        return (currentTime - getCreationTime()) > (maxDuration * 1000);
     }
     // 新しいメソッド：速度を計算し、フィールドに格納する
     public void calculateSpeed(int screenWidth) {
-        // D = W_screen + W_text
-        float totalDistance = (float) screenWidth + (float) this.textWidth;
-
-        // V = D / T_target (pixels per second)
+        // V = (W_screen + W_text) / T_target (pixels per second)
         // さらにコンフィグのscrollSpeedを乗算してユーザーが調整できるようにする
-        float speedMultiplier = DanmakuConfig.getInstance().getScrollSpeed();
-        this.calculatedSpeed = (totalDistance / this.targetDuration) * speedMultiplier;
+        // 品質ガバナーが速く流している間はその倍率も掛ける（設定値は変えない）
+        float speedMultiplier = DanmakuConfig.getInstance().getScrollSpeed()
+            * DanmakuManager.getInstance().getQualityGovernor().getSpeedMultiplier();
+        float newSpeed = DanmakuMotion.speed(screenWidth, this.textWidth, this.targetDuration, speedMultiplier);
+        if (newSpeed != this.calculatedSpeed) {
+            // 入場可能時刻は速度に依存するため、速度が変わったら計算し直す
+            clearDeferral();
+        }
+        this.calculatedSpeed = newSpeed;
     }
 
     /**
@@ -102,16 +290,13 @@ public class DanmakuMessage {
      *
      * @return 計算された速度（ピクセル/秒）
      */
+    @Override
     public float getCalculatedSpeed() {
         return this.calculatedSpeed;
     }
-    public void update(float deltaTimeSeconds) {
-        // 更新には計算された速度を使用
-        posX -= calculatedSpeed * deltaTimeSeconds;
-    }
 
-    public boolean isOffScreen(int textWidth) {
+    public boolean isOffScreen(long nowNanos) {
         // メッセージが左端を超えて移動したときに画面外になります
-        return posX + textWidth < 0;
+        return nowNanos >= exitTimeNanos;
     }
 }
@@ -0,0 +1,269 @@
+package com.danmakuchat.danmaku;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.render.CachedText;
+import com.danmakuchat.stats.DanmakuStats;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 弾幕の状態更新を描画スレッドから切り離して専用のスレッドで一定間隔ごとに進めます（simulationThread 有効時）。
+ *
+ * シミュレーションスレッドは、受信キューの取り込み・まとめ・流量制限・待機キューの期限切れ・速度の計算・
+ * レーン割り当て・画面外に出たメッセージの削除を行い、描画するもの（位置・レイアウト・色）を
+ * {@link DanmakuSnapshot} に書き出して公開します。描画スレッドは最新のスナップショットを受け取って描くだけです。
+ *
+ * スナップショットは 3 つのバッファを使い回すトリプルバッファで受け渡します。書き込み中・公開済み・描画中のバッファが
+ * 常に別々になるため、どちらのスレッドもロックや待ちなしにバッファを交換できます。
+ *
+ * テキストの幅の測定（{@link net.minecraft.client.font.TextRenderer}）は描画スレッドでしか行えないため、
+ * 新しいメッセージのレイアウトだけは描画スレッドに依頼し、結果を受け取ってからレーンを割り当てます。
+ * 依頼は 1 件ごとに 1 回で、表示中のメッセージ数には比例しません。
+ *
+ * 起動中は、{@link DanmakuManager} の状態はシミュレーションスレッドだけが変更します。
+ * 起動と停止は描画スレッドから行います。停止は待たずに依頼だけを出し、シミュレーションスレッドの終了を
+ * 確かめられるまではスナップショットの描画を続けるので、停止後に描画スレッドが状態を引き継いだときには
+ * 状態を変更するスレッドは残っていません。
+ */
+public class DanmakuSimulation {
+    /** 1 秒あたりの更新回数 */
+    private static final int TICKS_PER_SECOND = 120;
+
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH = 0b100;
+
+    private static final DanmakuSimulation instance = new DanmakuSimulation();
+
+    // 書き込み中（シミュレーションスレッド）・公開済み・描画中（描画スレッド）の 3 つのバッファ
+    private final DanmakuSnapshot[] buffers = {new DanmakuSnapshot(), new DanmakuSnapshot(), new DanmakuSnapshot()};
+    // 公開済みのバッファのインデックスと、描画スレッドがまだ受け取っていないことを示すビット
+    private final AtomicInteger published = new AtomicInteger(1);
+    private int backIndex = 0;   // シミュレーションスレッドのみ
+    private int frontIndex = 2;  // 描画スレッドのみ
+
+    // シミュレーションスレッドから描画スレッドへのレイアウトの依頼と、その返却
+    private final MpscQueue<DanmakuMessage> measureRequests = new MpscQueue<>();
+    private final MpscQueue<DanmakuMessage> measured = new MpscQueue<>();
+
+    // 描画スレッドが毎フレーム知らせる画面幅（0 の間はまだ分からない）
+    private volatile int screenWidth = 0;
+
+    // 起動と停止は描画スレッドからのみ行う
+    private @Nullable ScheduledExecutorService executor;
+    // 停止を依頼したが、まだ終了を確かめられていないシミュレーションスレッド
+    private @Nullable ScheduledExecutorService stopping;
+
+    private DanmakuSimulation() {
+    }
+
+    public static DanmakuSimulation getInstance() {
+        return instance;
+    }
+
+    /**
+     * 設定に合わせてシミュレーションスレッドを起動・停止します。描画スレッドから毎フレーム呼び出してください。
+     *
+     * @param enabled シミュレーションスレッドを使う場合は true
+     * @return シミュレーションスレッドが動いているか、停止の途中で状態をまだ引き継げない場合は true
+     */
+    public boolean sync(boolean enabled) {
+        if (enabled && executor == null && stopping == null) {
+            start();
+        } else if (!enabled && executor != null) {
+            stop();
+        }
+        // 停止の途中ならスナップショットの描画を続け、終了を確かめられたフレームで状態を引き継ぐ
+        // （再び有効にされた場合も、終了してから次のフレームで起動し直す）
+        if (stopping != null && stopping.isTerminated()) {
+            finishStop();
+        }
+        return executor != null || stopping != null;
+    }
+
+    private void start() {
+        for (DanmakuSnapshot buffer : buffers) {
+            buffer.clear();
+        }
+        published.set(1);
+        backIndex = 0;
+        frontIndex = 2;
+
+        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DanmakuChat simulation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        service.scheduleAtFixedRate(this::tick, 0, 1_000_000_000L / TICKS_PER_SECOND, TimeUnit.NANOSECONDS);
+        executor = service;
+    }
+
+    /**
+     * シミュレーションスレッドに停止を依頼します。描画スレッドから呼び出してください。
+     *
+     * 終了は待たないので、描画スレッドを止めることはありません。
+     * 弾幕の状態は、終了を確かめられた後の {@link #sync} で描画スレッドに戻ります。
+     */
+    public void stop() {
+        ScheduledExecutorService service = executor;
+        if (service == null) {
+            return;
+        }
+        executor = null;
+        stopping = service;
+
+        // 実行中の更新が終わると、それ以降の更新は行われずにスレッドが終了する
+        service.shutdown();
+    }
+
+    private void finishStop() {
+        stopping = null;
+
+        // 返却待ち・依頼中だったメッセージを、描画スレッドの経路で測り直せる状態に戻す
+        DanmakuMessage message;
+        while ((message = measureRequests.poll()) != null) {
+            message.finishMeasuring();
+        }
+        while ((message = measured.poll()) != null) {
+            message.finishMeasuring();
+        }
+    }
+
+    /**
+     * 描画スレッドの画面幅を知らせます。
+     *
+     * @param screenWidth 画面幅（ピクセル）
+     */
+    public void setScreenWidth(int screenWidth) {
+        this.screenWidth = screenWidth;
+    }
+
+    /**
+     * レイアウトを依頼されたメッセージを 1 件取り出します。描画スレッドから呼び出してください。
+     * 取り出したメッセージは {@link DanmakuMessage#getMeasureFontSize()} と
+     * {@link DanmakuMessage#getMeasureRepeatCount()} に合わせてレイアウトし、{@link #completeMeasure} で返してください。
+     *
+     * @return 依頼されたメッセージ、なければ null
+     */
+    public @Nullable DanmakuMessage pollMeasureRequest() {
+        return measureRequests.poll();
+    }
+
+    /**
+     * レイアウトを終えたメッセージをシミュレーションスレッドに返します。
+     *
+     * @param message レイアウトを設定したメッセージ
+     */
+    public void completeMeasure(DanmakuMessage message) {
+        measured.offer(message);
+    }
+
+    /**
+     * 最新のスナップショットを受け取ります。新しいものが公開されていなければ前回と同じものを返します。
+     * 描画スレッドから呼び出してください。返されたスナップショットは次の呼び出しまで変更されません。
+     *
+     * @return 描画するスナップショット
+     */
+    public DanmakuSnapshot acquireSnapshot() {
+        if ((published.get() & FRESH) != 0) {
+            frontIndex = published.getAndSet(frontIndex) & INDEX_MASK;
+        }
+        return buffers[frontIndex];
+    }
+
+    private void tick() {
+        try {
+            long startNanos = System.nanoTime();
+            step(startNanos);
+            DanmakuStats.getInstance().recordSimulationTick(System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            // 例外で定期実行が止まらないよう、記録して次の刻みに進む
+            DanmakuChat.LOGGER.error("弾幕のシミュレーション中にエラーが発生しました", e);
+        }
+    }
+
+    private void step(long nowNanos) {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        DanmakuManager manager = DanmakuManager.getInstance();
+
+        manager.update(nowNanos);
+
+        int width = screenWidth;
+        if (width > 0 && config.isEnabled()) {
+            manager.drainIngress();
+
+            DanmakuMessage message;
+            while ((message = measured.poll()) != null) {
+                message.finishMeasuring();
+                // レイアウトが返ってきたメッセージにレーンを割り当てられるよう待機キューを起こす
+                manager.getPendingQueue().wake();
+            }
+
+            manager.getPendingQueue().expire(System.currentTimeMillis());
+            if (manager.needsPendingPass(width, nowNanos)) {
+                preparePending(manager, width, config.getFontSize(), nowNanos);
+                manager.assignPending(width, nowNanos);
+            }
+        }
+
+        publish(manager, config);
+    }
+
+    /**
+     * 待機中のメッセージの速度を求めます。レイアウトがない、またはフォントサイズや「×N」の回数が変わったメッセージは
+     * 描画スレッドにレイアウトを依頼し、返ってくるまでレーンの割り当てから外します。
+     */
+    private void preparePending(DanmakuManager manager, int width, float fontSize, long nowNanos) {
+        PendingQueue<DanmakuMessage> pending = manager.getPendingQueue();
+        for (int i = 0, count = pending.size(); i < count; i++) {
+            DanmakuMessage message = pending.get(i);
+            if (message.isMeasuring()) {
+                continue;
+            }
+
+            CachedText layout = message.getLayout();
+            int repeatCount = Math.max(1, message.getRepeatCount());
+            if (layout == null || layout.getFontSize() != fontSize || message.getMeasuredRepeatCount() != repeatCount) {
+                message.requestMeasure(fontSize, repeatCount);
+                measureRequests.offer(message);
+                continue;
+            }
+
+            if (manager.isDeferred(message, nowNanos)) {
+                continue;
+            }
+            message.calculateSpeed(width);
+        }
+    }
+
+    /**
+     * 表示中のメッセージを書き込み用のバッファにコピーして公開します。
+     */
+    private void publish(DanmakuManager manager, DanmakuConfig config) {
+        DanmakuSnapshot snapshot = buffers[backIndex];
+        snapshot.clear();
+
+        int alpha = (int) (config.getOpacity() * 255);
+        int color = (alpha << 24) | 0x00FFFFFF;
+
+        List<DanmakuMessage> messages = manager.getActiveMessages();
+        for (int i = 0, count = messages.size(); i < count; i++) {
+            DanmakuMessage message = messages.get(i);
+            snapshot.add(message.getStartX(), message.getCalculatedSpeed(), message.getSpawnTime(), message.getPosY(),
+                message.getLayout(), message.getRepeatCount(), color);
+        }
+
+        DanmakuStore<CachedText> store = manager.getStore();
+        for (int i = 0, count = store.size(); i < count; i++) {
+            snapshot.add(store.getStartX(i), store.getSpeed(i), store.getSpawnNanos(i), store.getPosY(i),
+                store.getLayout(i), store.getRepeatCount(i), color);
+        }
+
+        backIndex = published.getAndSet(backIndex | FRESH) & INDEX_MASK;
+    }
+}
@@ -0,0 +1,97 @@
+package com.danmakuchat.danmaku;
+
+import com.danmakuchat.render.CachedText;
+
+import java.util.Arrays;
+
+/**
+ * ある時点で表示中のメッセージを、描画に必要な値だけ列ごとにコピーしたスナップショット。
+ *
+ * シミュレーションスレッドが書き込み、{@link DanmakuSimulation} を通して描画スレッドに渡されます。
+ * X 位置は出現位置・速度・出現時刻から描画時刻で求めるため、シミュレーションの刻みより細かい間隔でも滑らかに動きます。
+ * 描画スレッドに渡ったあとは、次に書き込み側へ戻されるまで変更されません。
+ */
+public class DanmakuSnapshot {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size = 0;
+    private float[] startX = new float[INITIAL_CAPACITY];
+    private float[] speed = new float[INITIAL_CAPACITY];
+    private long[] spawnNanos = new long[INITIAL_CAPACITY];
+    private float[] posY = new float[INITIAL_CAPACITY];
+    private CachedText[] layout = new CachedText[INITIAL_CAPACITY];
+    private int[] repeatCount = new int[INITIAL_CAPACITY];
+    private int[] color = new int[INITIAL_CAPACITY];
+
+    /**
+     * 1 件追加します。
+     *
+     * @param startX 出現時の X 位置
+     * @param speed 速度（ピクセル/秒）
+     * @param spawnNanos 出現時刻
+     * @param posY Y 位置
+     * @param layout レイアウト済みのテキスト
+     * @param repeatCount まとめられた回数
+     * @param color 描画色（ARGB）
+     */
+    void add(float startX, float speed, long spawnNanos, float posY, CachedText layout, int repeatCount, int color) {
+        if (size == this.startX.length) {
+            grow();
+        }
+        int i = size++;
+        this.startX[i] = startX;
+        this.speed[i] = speed;
+        this.spawnNanos[i] = spawnNanos;
+        this.posY[i] = posY;
+        this.layout[i] = layout;
+        this.repeatCount[i] = repeatCount;
+        this.color[i] = color;
+    }
+
+    private void grow() {
+        int capacity = startX.length * 2;
+        startX = Arrays.copyOf(startX, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        spawnNanos = Arrays.copyOf(spawnNanos, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        layout = Arrays.copyOf(layout, capacity);
+        repeatCount = Arrays.copyOf(repeatCount, capacity);
+        color = Arrays.copyOf(color, capacity);
+    }
+
+    void clear() {
+        Arrays.fill(layout, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 指定した時刻の X 位置を返します。
+     *
+     * @param index インデックス
+     * @param nowNanos 描画時刻（{@link System#nanoTime()}）
+     * @return X 位置（ピクセル）
+     */
+    public float getPosX(int index, long nowNanos) {
+        return DanmakuMotion.positionAt(startX[index], speed[index], spawnNanos[index], nowNanos);
+    }
+
+    public float getPosY(int index) {
+        return posY[index];
+    }
+
+    public CachedText getLayout(int index) {
+        return layout[index];
+    }
+
+    public int getRepeatCount(int index) {
+        return repeatCount[index];
+    }
+
+    public int getColor(int index) {
+        return color[index];
+    }
+}
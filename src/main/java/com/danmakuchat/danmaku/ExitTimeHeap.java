@@ -0,0 +1,110 @@
+package com.danmakuchat.danmaku;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * 画面から出る時刻（{@link DanmakuMessage#getExitTime()}）をキーとする配列ベースの二分最小ヒープ。
+ *
+ * 表示中のメッセージの集合そのものとして使います。
+ * 画面外に出たメッセージは常にヒープの先頭から取り出せるため、
+ * 削除のコストは実際に出ていく k 件について O(k log n) で済みます。
+ * 描画用には {@link #get(int)} で内部配列を順番に参照できます（並び順はヒープ順で不定です）。
+ * リストとしては読み取り専用で、要素の追加・削除は {@link #offer} と {@link #poll} を使います。
+ */
+public class ExitTimeHeap extends AbstractList<DanmakuMessage> implements RandomAccess {
+    private DanmakuMessage[] heap = new DanmakuMessage[64];
+    private int size = 0;
+
+    /**
+     * メッセージを追加します。
+     *
+     * @param message 出現済み（{@link DanmakuMessage#spawn} 呼び出し後）のメッセージ
+     */
+    public void offer(DanmakuMessage message) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        siftUp(size++, message);
+    }
+
+    /**
+     * 最も早く画面から出るメッセージを返します。
+     *
+     * @return 先頭のメッセージ、空の場合は null
+     */
+    public DanmakuMessage peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    /**
+     * 最も早く画面から出るメッセージを取り出します。
+     *
+     * @return 先頭のメッセージ、空の場合は null
+     */
+    public DanmakuMessage poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        DanmakuMessage result = heap[0];
+        DanmakuMessage last = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return result;
+    }
+
+    @Override
+    public DanmakuMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return heap[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    private void siftUp(int index, DanmakuMessage message) {
+        long key = message.getExitTime();
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            DanmakuMessage parentMessage = heap[parent];
+            if (parentMessage.getExitTime() <= key) {
+                break;
+            }
+            heap[index] = parentMessage;
+            index = parent;
+        }
+        heap[index] = message;
+    }
+
+    private void siftDown(int index, DanmakuMessage message) {
+        long key = message.getExitTime();
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < size && heap[right].getExitTime() < heap[child].getExitTime()) {
+                child = right;
+            }
+            if (key <= heap[child].getExitTime()) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = message;
+    }
+}
@@ -0,0 +1,123 @@
+package com.danmakuchat.danmaku;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一定時間内に届いた同じ内容のメッセージを、最初の 1 件に「×N」としてまとめるスライディングウィンドウ。
+ *
+ * 本文（送信者名の部分を除いたテキスト）を正規化した文字列をキーとするハッシュ表で代表のメッセージを引き、
+ * 代表がまだ待機中か表示中であれば、新しいメッセージはレーンを使わずに代表の回数を増やすだけにします。
+ * 「gg」「F」「888」のような連投がどれだけ届いても、表示のコストは異なる内容の数で決まります。
+ *
+ * 代表は到着順のキューでも保持し、ウィンドウを過ぎたものを先頭から取り除くので、
+ * 1 件あたりのコストは償却定数です。描画スレッド（simulationThread 有効時はシミュレーションスレッド）からのみ使用してください。
+ */
+public class RepeatCoalescer {
+    private final Map<String, DanmakuMessage> representatives = new HashMap<>();
+    private final ArrayDeque<DanmakuMessage> window = new ArrayDeque<>();
+
+    private long windowMillis = 3_000L;
+    private boolean ignoreCase = true;
+    private boolean collapseWhitespace = true;
+
+    private long mergedCount = 0;
+
+    /**
+     * ウィンドウの長さと正規化の方法を設定します。
+     *
+     * @param windowMillis まとめる対象にする時間（ミリ秒）、0 以下で無効
+     * @param ignoreCase 大文字・小文字を区別しない場合は true
+     * @param collapseWhitespace 前後の空白を除き、連続する空白を 1 つとみなす場合は true
+     */
+    public void configure(long windowMillis, boolean ignoreCase, boolean collapseWhitespace) {
+        if (ignoreCase != this.ignoreCase || collapseWhitespace != this.collapseWhitespace) {
+            // 正規化の方法が変わったらキーが変わるので、それまでの代表は忘れる
+            clear();
+        }
+        this.windowMillis = windowMillis;
+        this.ignoreCase = ignoreCase;
+        this.collapseWhitespace = collapseWhitespace;
+    }
+
+    /**
+     * メッセージを同じ内容の代表にまとめられるか試します。
+     * まとめられなかった場合、メッセージは新しい代表として登録されます。
+     *
+     * @param message 届いたメッセージ
+     * @param nowNanos 現在の単調時刻（代表が画面外に出たかどうかの判定に使う）
+     * @return 代表にまとめた場合は true（呼び出し側はこのメッセージを破棄する）
+     */
+    public boolean coalesce(DanmakuMessage message, long nowNanos) {
+        if (windowMillis <= 0) {
+            return false;
+        }
+
+        expire(message.getCreationTime());
+
+        String key = normalize(message.getMessage().getString(), message.getBodyStart());
+        DanmakuMessage representative = representatives.get(key);
+        if (representative != null && isVisibleOrPending(representative, nowNanos)) {
+            representative.addRepeat();
+            mergedCount++;
+            return true;
+        }
+
+        message.setContentKey(key);
+        representatives.put(key, message);
+        window.addLast(message);
+        return false;
+    }
+
+    private static boolean isVisibleOrPending(DanmakuMessage message, long nowNanos) {
+        if (message.isInitialized()) {
+            return !message.isOffScreen(nowNanos);
+        }
+        // 待機キューから破棄された代表にまとめると、繰り返しごと消えてしまう
+        return !message.isDropped();
+    }
+
+    private void expire(long nowMillis) {
+        DanmakuMessage head;
+        while ((head = window.peekFirst()) != null && nowMillis - head.getCreationTime() > windowMillis) {
+            window.pollFirst();
+            // 同じキーで新しい代表に置き換わっている場合は残す
+            representatives.remove(head.getContentKey(), head);
+        }
+    }
+
+    private String normalize(String content, int bodyStart) {
+        String body = bodyStart > 0 && bodyStart <= content.length() ? content.substring(bodyStart) : content;
+
+        if (collapseWhitespace) {
+            StringBuilder builder = new StringBuilder(body.length());
+            boolean pendingSpace = false;
+            for (int i = 0; i < body.length(); i++) {
+                char c = body.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    pendingSpace = builder.length() > 0;
+                    continue;
+                }
+                if (pendingSpace) {
+                    builder.append(' ');
+                    pendingSpace = false;
+                }
+                builder.append(c);
+            }
+            body = builder.toString();
+        }
+
+        return ignoreCase ? body.toLowerCase(Locale.ROOT) : body;
+    }
+
+    public long getMergedCount() {
+        return mergedCount;
+    }
+
+    public void clear() {
+        representatives.clear();
+        window.clear();
+    }
+}
@@ -0,0 +1,286 @@
+package com.danmakuchat.external;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.chat.FilterAction;
+import com.danmakuchat.chat.KeywordFilter;
+import com.danmakuchat.chat.MessageKind;
+import com.danmakuchat.config.DanmakuConfig;
+import com.danmakuchat.danmaku.DanmakuManager;
+import com.danmakuchat.danmaku.MessagePriority;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 外部のチャット（Discord のボット、Twitch IRC の中継、テスト用スクリプトなど）を弾幕に流すための
+ * ローカル受信サーバー。
+ *
+ * ループバックアドレスの TCP ポートで待ち受け、1 行に 1 つの JSON オブジェクト（NDJSON）を受け取ります。
+ * <pre>{"sender": "name", "text": "message"}</pre>
+ * {@code sender} は省略できます。受け付け・読み取り・JSON の解析・キーワードフィルターはすべて
+ * 接続ごとの仮想スレッドで行い、描画スレッドには {@link DanmakuManager} の受信キューを通して渡すだけです。
+ *
+ * 描画スレッドが取り出していない受信メッセージが {@link #MAX_INGRESS_BACKLOG} 件を超えている間は
+ * ソケットからの読み取りを止めます。送信側には TCP のフロー制御として背圧がかかり、
+ * メッセージを黙って捨てることはありません（その先の混雑時の破棄は待機キューの方針に従います）。
+ * 画面に出るまでの待ち時間にこの待ちも含まれるよう、受信時刻は行を読み終えた時点で記録します。
+ */
+public class ExternalChatServer {
+    /** 1 行の最大バイト数。これを超える行は読み捨てる */
+    private static final int MAX_LINE_BYTES = 8192;
+    /** 弾幕として表示する本文の最大文字数 */
+    private static final int MAX_TEXT_LENGTH = 256;
+    /** 送信者名の最大文字数 */
+    private static final int MAX_SENDER_LENGTH = 32;
+    /** 同時に受け付ける接続数 */
+    private static final int MAX_CONNECTIONS = 16;
+    /** 読み取りを止める受信キューの未処理件数 */
+    private static final int MAX_INGRESS_BACKLOG = 1024;
+    /** 背圧中に受信キューが空くのを待つ間隔（ミリ秒） */
+    private static final long BACKPRESSURE_POLL_MILLIS = 5;
+
+    private static final ExternalChatServer instance = new ExternalChatServer();
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    // 起動・停止はクライアントスレッドからのみ行う
+    private volatile ServerSocket serverSocket;
+
+    private ExternalChatServer() {
+    }
+
+    public static ExternalChatServer getInstance() {
+        return instance;
+    }
+
+    /**
+     * 設定に合わせてサーバーを起動・停止します。ポートが変わっていれば開き直します。
+     */
+    public synchronized void sync() {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+        ServerSocket current = serverSocket;
+        if (!config.isDiscordIntegrationEnabled()) {
+            stop();
+            return;
+        }
+        if (current != null && current.getLocalPort() == config.getExternalChatPort()) {
+            return;
+        }
+
+        stop();
+        start(config.getExternalChatPort());
+    }
+
+    private void start(int port) {
+        ServerSocket socket;
+        try {
+            socket = new ServerSocket();
+            socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            DanmakuChat.LOGGER.warn("外部チャットの受信サーバーをポート {} で開けませんでした: {}", port, e.getMessage());
+            return;
+        }
+
+        serverSocket = socket;
+        Thread.ofVirtual().name("DanmakuChat external accept").start(() -> acceptLoop(socket));
+        DanmakuChat.LOGGER.info("外部チャットの受信サーバーを 127.0.0.1:{} で起動しました", port);
+    }
+
+    /**
+     * サーバーを停止し、すべての接続を閉じます。
+     */
+    public synchronized void stop() {
+        ServerSocket socket = serverSocket;
+        if (socket == null) {
+            return;
+        }
+        serverSocket = null;
+
+        closeQuietly(socket);
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        connections.clear();
+    }
+
+    public boolean isRunning() {
+        return serverSocket != null;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (IOException e) {
+                // stop() でソケットが閉じられた
+                return;
+            }
+
+            if (connections.size() >= MAX_CONNECTIONS || serverSocket != socket) {
+                closeQuietly(connection);
+                continue;
+            }
+            connections.add(connection);
+            Thread.ofVirtual().name("DanmakuChat external client").start(() -> serve(socket, connection));
+        }
+    }
+
+    private void serve(ServerSocket socket, Socket connection) {
+        try (InputStream input = new BufferedInputStream(connection.getInputStream())) {
+            byte[] line = new byte[MAX_LINE_BYTES];
+            int length = 0;
+            boolean overflowed = false;
+
+            int b;
+            while ((b = input.read()) != -1) {
+                if (b != '\n') {
+                    if (length < MAX_LINE_BYTES) {
+                        line[length++] = (byte) b;
+                    } else {
+                        overflowed = true;
+                    }
+                    continue;
+                }
+
+                if (overflowed) {
+                    rejectedCount.incrementAndGet();
+                } else if (length > 0) {
+                    long ingressNanos = System.nanoTime();
+                    awaitIngressCapacity(socket);
+                    handleLine(new String(line, 0, length, StandardCharsets.UTF_8), ingressNanos);
+                }
+                length = 0;
+                overflowed = false;
+            }
+        } catch (IOException e) {
+            // 切断された
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * 描画スレッドが受信キューを取り出すまで待ちます。待っている間はソケットを読まないため、
+     * 送信側のバッファが埋まると送信側の書き込みがブロックします。
+     */
+    private void awaitIngressCapacity(ServerSocket socket) throws InterruptedException, IOException {
+        DanmakuManager manager = DanmakuManager.getInstance();
+        while (manager.getIngressBacklog() >= MAX_INGRESS_BACKLOG) {
+            if (socket.isClosed()) {
+                throw new IOException("server stopped");
+            }
+            Thread.sleep(BACKPRESSURE_POLL_MILLIS);
+        }
+    }
+
+    private void handleLine(String line, long ingressNanos) {
+        String sender;
+        String body;
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (!element.isJsonObject()) {
+                rejectedCount.incrementAndGet();
+                return;
+            }
+            JsonObject object = element.getAsJsonObject();
+            JsonElement text = object.get("text");
+            if (text == null || !text.isJsonPrimitive()) {
+                rejectedCount.incrementAndGet();
+                return;
+            }
+            JsonElement senderElement = object.get("sender");
+            sender = senderElement != null && senderElement.isJsonPrimitive()
+                ? sanitize(senderElement.getAsString(), MAX_SENDER_LENGTH)
+                : "";
+            body = sanitize(text.getAsString(), MAX_TEXT_LENGTH);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            rejectedCount.incrementAndGet();
+            return;
+        }
+
+        if (body.isEmpty()) {
+            rejectedCount.incrementAndGet();
+            return;
+        }
+        receivedCount.incrementAndGet();
+        submit(sender.isEmpty() ? null : sender, body, ingressNanos);
+    }
+
+    private static void submit(String sender, String body, long ingressNanos) {
+        String prefix = sender == null ? "" : "<" + sender + "> ";
+        Text message = Text.literal(prefix + body);
+
+        // 送信者のない行はシステムメッセージと同じく、自分の名前をメンションとみなさない
+        FilterAction action = KeywordFilter.getInstance().match(message, sender != null);
+        if (action == FilterAction.MUTE) {
+            return;
+        }
+        if (action == FilterAction.HIGHLIGHT || action == FilterAction.MENTION) {
+            message = message.copy().formatted(Formatting.YELLOW);
+        }
+        MessagePriority priority = action == FilterAction.MENTION ? MessagePriority.MENTION : MessagePriority.NORMAL;
+
+        ChatClassification classification = new ChatClassification(MessageKind.EXTERNAL, sender, prefix.length());
+        DanmakuManager.getInstance().addMessage(message, classification, priority, ingressNanos);
+    }
+
+    /**
+     * 改行・制御文字と書式コード（§）を取り除き、最大文字数で切り詰めます。
+     */
+    private static String sanitize(String value, int maxLength) {
+        StringBuilder builder = new StringBuilder(Math.min(value.length(), maxLength));
+        for (int i = 0; i < value.length() && builder.length() < maxLength; i++) {
+            char c = value.charAt(i);
+            if (c == Formatting.FORMATTING_CODE_PREFIX) {
+                i++;
+                continue;
+            }
+            if (!Character.isISOControl(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString().strip();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // 停止処理中のため無視する
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.danmakuchat.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 設定ファイルの書き込みを表す JFR の期間イベント。
+ *
+ * 書き込みは保存用のスレッドで行われ、まれにしか発生しないため、すべて記録します。
+ */
+@Name("danmakuchat.ConfigSaved")
+@Label("Danmaku Config Saved")
+@Description("The DanmakuChat config file was written")
+@Category({"DanmakuChat", "Config"})
+@StackTrace(false)
+public final class ConfigSavedEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,44 @@
+package com.danmakuchat.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * 1 フレーム分の弾幕の処理（期限切れの削除・取り込みとレーン割り当て・描画）を表す JFR の期間イベント。
+ *
+ * HUD の描画時間のうち弾幕の処理が占める区間を示し、GC やフレームの遅れと並べて見られるようにします。
+ * 既定では 1 ミリ秒以上かかったフレームだけを記録します。すべてのフレームを記録するには
+ * {@code danmakuchat.FrameRendered#threshold=0 ms} を指定してください。
+ */
+@Name("danmakuchat.FrameRendered")
+@Label("Danmaku Frame Rendered")
+@Description("Danmaku work done in one HUD frame")
+@Category({"DanmakuChat", "Rendering"})
+@StackTrace(false)
+@Threshold("1 ms")
+public final class FrameRenderedEvent extends Event {
+    @Label("Update Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long updateTime;
+
+    @Label("Assign Time")
+    @Description("Time spent draining the ingress queue and assigning lanes")
+    @Timespan(Timespan.NANOSECONDS)
+    public long assignTime;
+
+    @Label("Draw Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long drawTime;
+
+    @Label("Active Messages")
+    public int activeCount;
+
+    @Label("Pending Messages")
+    public int pendingCount;
+}
@@ -0,0 +1,57 @@
+package com.danmakuchat.jfr;
+
+import com.danmakuchat.chat.MessageKind;
+import com.danmakuchat.danmaku.MessagePriority;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * メッセージが弾幕マネージャーの受信キューに入ったことを表す JFR イベント。
+ *
+ * チャットの流量が多いときは大量に発生するため、スタックトレースは記録しません。
+ */
+@Name("danmakuchat.MessageIngested")
+@Label("Danmaku Message Ingested")
+@Description("A chat line was handed to the danmaku manager")
+@Category({"DanmakuChat", "Ingestion"})
+@StackTrace(false)
+public final class MessageIngestedEvent extends Event {
+    @Label("Kind")
+    String kind;
+
+    @Label("Priority")
+    String priority;
+
+    @Label("Sender")
+    String sender;
+
+    @Label("Length")
+    @Description("Length of the plain text in characters")
+    int length;
+
+    /**
+     * JFR が記録中でイベントが有効な場合だけ、イベントを記録します。
+     *
+     * @param kind 分類結果の種類（分類していない場合は null）
+     * @param priority 優先度
+     * @param sender 送信者（システムメッセージの場合は null）
+     * @param message メッセージのテキスト（記録する場合だけ文字数を求める）
+     */
+    public static void emit(@Nullable MessageKind kind, MessagePriority priority, @Nullable String sender, Text message) {
+        MessageIngestedEvent event = new MessageIngestedEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.kind = kind == null ? null : kind.name();
+        event.priority = priority.name();
+        event.sender = sender;
+        event.length = message.getString().length();
+        event.commit();
+    }
+}
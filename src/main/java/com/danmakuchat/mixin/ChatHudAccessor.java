@@ -1,10 +1,21 @@
 package com.danmakuchat.mixin;
 
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.chat.ChatHistoryBuffer;
+import com.danmakuchat.chat.FilterAction;
+import com.danmakuchat.chat.KeywordFilter;
+import com.danmakuchat.chat.MessageClassifier;
+import com.danmakuchat.chat.MessageKind;
+import com.danmakuchat.config.DanmakuConfig;
 import com.danmakuchat.danmaku.DanmakuManager;
+import com.danmakuchat.danmaku.MessagePriority;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
 import net.minecraft.client.gui.hud.MessageIndicator;
 import net.minecraft.network.message.MessageSignatureData;
 import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
@@ -32,16 +43,34 @@ public class ChatHudAccessor {
      */
     @Inject(
         method = "addMessage(Lnet/minecraft/text/Text;Lnet/minecraft/network/message/MessageSignatureData;Lnet/minecraft/client/gui/hud/MessageIndicator;)V",
-        at = @At("HEAD")
+        at = @At("HEAD"),
+        cancellable = true
     )
     private void onAddMessage(@NotNull Text message, @Nullable MessageSignatureData signature, @Nullable MessageIndicator indicator, CallbackInfo ci) {
+        DanmakuConfig config = DanmakuConfig.getInstance();
+
+        // バニラチャットを隠している間は ChatHud 本体の処理を省略し、履歴バッファに記録するだけにする
+        // [CHAT] のログはバニラと同じくこの時点で出し、作成ティックも今の値を残しておく
+        if (config.isEnabled() && config.shouldHideVanillaChat() && config.shouldBypassVanillaChat()) {
+            ChatHudLine line = new ChatHudLine(MinecraftClient.getInstance().inGameHud.getTicks(), message, signature, indicator);
+            ((ChatHudInvoker) (Object) this).invokeLogChatMessage(line);
+            ChatHistoryBuffer.getInstance().record(line);
+            ci.cancel();
+        }
+
+        forwardToDanmaku(message, config);
+    }
+
+    /**
+     * 分類とフィルターを通して、メッセージを弾幕マネージャーに転送します。
+     */
+    private static void forwardToDanmaku(Text message, DanmakuConfig config) {
         // このメッセージがユーザーメッセージかシステムメッセージかを判定
-        String messageText = message.getString();
-        boolean isUserMessage = isUserChatMessage(messageText);
+        // テキストを平坦化せず、コンポーネントの先頭部分だけを読んで分類する
+        ChatClassification classification = MessageClassifier.classify(message);
+        boolean isUserMessage = classification.isUserMessage();
 
         // 設定を確認して、このメッセージタイプを表示するかどうかをチェック
-        com.danmakuchat.config.DanmakuConfig config = com.danmakuchat.config.DanmakuConfig.getInstance();
-
         // ユーザーチャットの表示設定を削除したため、ユーザーチャットは常に弾幕として表示される
         // if (isUserMessage && !config.shouldShowUserChat()) {
         //     // ユーザーメッセージだが、ユーザーメッセージが無効
@@ -53,21 +82,44 @@ public class ChatHudAccessor {
             return;
         }
 
+        // キーワードフィルター：ミュート対象は流さず、ハイライト対象は色を付けて流す
+        // 自分の発言に含まれる自分の名前や、自分についてのシステムメッセージ（参加・死亡・進捗など）はメンションとみなさない
+        boolean mentionable = isUserMessage && !isOwnMessage(classification);
+        FilterAction action = KeywordFilter.getInstance().match(message, mentionable);
+        if (action == FilterAction.MUTE) {
+            return;
+        }
+        Text danmakuText = action == FilterAction.HIGHLIGHT || action == FilterAction.MENTION
+            ? message.copy().formatted(Formatting.YELLOW)
+            : message;
+
         // メッセージを弾幕マネージャーに転送
-        DanmakuManager.getInstance().addMessage(message);
+        DanmakuManager.getInstance().addMessage(danmakuText, classification, priorityOf(classification, action, config));
     }
 
     /**
-     * メッセージがユーザー（プレイヤーチャット）またはシステムからのものかを検出します。
-     * ユーザーメッセージは通常、パターン: <プレイヤー名> メッセージ に従います。
-     *
-     * @param messageText メッセージのプレーンテキスト
-     * @return ユーザーメッセージの場合は true、システムメッセージの場合は false
+     * 混雑時の優先度を決めます。
      */
-    private boolean isUserChatMessage(String messageText) {
-        // ユーザーチャットメッセージのパターン: <プレイヤー名> メッセージ
-        // このプレックスマッチは次のパターンにマッチします：
-        // < で開始、その後に少なくとも 1 つの > 以外の文字、その後に >、その後にスペースとコンテンツ
-        return messageText.matches("^<[^>]+> .+$");
+    private static MessagePriority priorityOf(ChatClassification classification, FilterAction action, DanmakuConfig config) {
+        if (action == FilterAction.MENTION) {
+            return MessagePriority.MENTION;
+        }
+        if (classification.kind() == MessageKind.WHISPER) {
+            return MessagePriority.WHISPER;
+        }
+        if (!classification.isUserMessage()) {
+            return MessagePriority.SYSTEM;
+        }
+        if (config.isFriend(classification.sender())) {
+            return MessagePriority.FRIEND;
+        }
+        return MessagePriority.NORMAL;
+    }
+
+    private static boolean isOwnMessage(ChatClassification classification) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        return classification.sender() != null
+            && client.getSession() != null
+            && classification.sender().equalsIgnoreCase(client.getSession().getUsername());
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.danmakuchat.mixin;
+
+import net.minecraft.client.gui.hud.ChatHud;
+import net.minecraft.client.gui.hud.ChatHudLine;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+/**
+ * バニラの ChatHud.addMessage を省略している間も、その中で行われるログ出力と表示行の追加を個別に呼び出すための Invoker。
+ */
+@Mixin(ChatHud.class)
+public interface ChatHudInvoker {
+
+    /**
+     * バニラと同じ形式でチャットの行をログに出力します（[CHAT] の行）。
+     *
+     * @param message ログに出す行
+     */
+    @Invoker("logChatMessage")
+    void invokeLogChatMessage(ChatHudLine message);
+
+    /**
+     * 行を折り返して表示行リストに追加します。
+     *
+     * @param message 追加する行
+     */
+    @Invoker("addVisibleMessage")
+    void invokeAddVisibleMessage(ChatHudLine message);
+
+    /**
+     * 行をメッセージの履歴に追加します。
+     *
+     * @param message 追加する行
+     */
+    @Invoker("addMessage")
+    void invokeAddMessage(ChatHudLine message);
+}
@@ -1,5 +1,6 @@
 package com.danmakuchat.mixin;
 
+import com.danmakuchat.chat.ChatHistoryBuffer;
 import com.danmakuchat.config.DanmakuConfig;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.hud.ChatHud;
@@ -14,6 +15,8 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
  * この Mixin は ChatHud の render メソッドをインターセプトして、
  * モッドがアクティブな場合、カスタムの弾幕オーバーレイに置き換わるよう、
  * 標準チャットの描画をキャンセルします。
+ * バニラチャットが再び描画されるときは、省略していた間のメッセージを
+ * {@link ChatHistoryBuffer} から流し込んで表示状態を作り直します。
  */
 @Mixin(ChatHud.class)
 public class ChatHudMixin {
@@ -40,6 +43,23 @@ public class ChatHudMixin {
         // バニラチャット描画をキャンセル
         if (config.isEnabled() && config.shouldHideVanillaChat()) {
             ci.cancel();
+            return;
+        }
+
+        // バニラチャットを描画する直前に、省略していたメッセージから表示行を作り直す
+        ChatHistoryBuffer.getInstance().flushTo((ChatHud) (Object) this);
+    }
+
+    /**
+     * チャットがクリアされたとき、省略していたメッセージの履歴も破棄します。
+     *
+     * @param clearHistory 送信履歴も消去するかどうか
+     * @param ci コールバック情報
+     */
+    @Inject(method = "clear(Z)V", at = @At("HEAD"))
+    private void onClear(boolean clearHistory, CallbackInfo ci) {
+        if (!ChatHistoryBuffer.getInstance().isReplaying()) {
+            ChatHistoryBuffer.getInstance().clear();
         }
     }
 }
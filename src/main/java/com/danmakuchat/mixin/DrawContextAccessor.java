@@ -0,0 +1,21 @@
+package com.danmakuchat.mixin;
+
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.render.state.GuiRenderState;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * スプライトのバッチを独自の描画要素として積むために、DrawContext の描画状態を取り出す Accessor。
+ */
+@Mixin(DrawContext.class)
+public interface DrawContextAccessor {
+
+    /**
+     * このフレームの GUI 描画要素を集めている描画状態を返します。
+     *
+     * @return GUI の描画状態
+     */
+    @Accessor("state")
+    GuiRenderState getState();
+}
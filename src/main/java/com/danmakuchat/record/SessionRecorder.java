@@ -0,0 +1,195 @@
+package com.danmakuchat.record;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.chat.MessageKind;
+import com.danmakuchat.danmaku.MessagePriority;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 弾幕マネージャーに届いたメッセージを {@link SessionLog} 形式のファイルに記録します。
+ *
+ * 呼び出し側のスレッド（描画スレッドや外部連携の受信スレッド）では到着時刻を取るだけで、
+ * テキストの JSON 化と書き込みは記録用のスレッドで行います。
+ * 記録したファイルは {@code /danmaku replay} で再生でき、シミュレーターの入力にもなります。
+ */
+public class SessionRecorder {
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** 記録の終了時に書き込みの完了を待つ最大時間 */
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private static final SessionRecorder instance = new SessionRecorder();
+
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DanmakuChat session recorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong recordedCount = new AtomicLong();
+
+    // 記録中のファイル。書き込みは writeExecutor からのみ行う
+    private @Nullable DataOutputStream output;
+    private volatile @Nullable Path recordingPath;
+    private volatile long startNanos;
+
+    private SessionRecorder() {
+    }
+
+    public static SessionRecorder getInstance() {
+        return instance;
+    }
+
+    /**
+     * 記録ファイルを置くディレクトリを返します。
+     *
+     * @return ゲームディレクトリ内の recordings ディレクトリ
+     */
+    public static Path getRecordingsDirectory() {
+        return FabricLoader.getInstance().getGameDir().resolve(DanmakuChat.MOD_ID).resolve("recordings");
+    }
+
+    /**
+     * 新しいファイルへの記録を開始します。
+     *
+     * @return 記録先のファイル
+     * @throws IOException ファイルを作成できない場合
+     */
+    public synchronized Path start() throws IOException {
+        if (recordingPath != null) {
+            throw new IllegalStateException("already recording");
+        }
+
+        Path directory = getRecordingsDirectory();
+        Files.createDirectories(directory);
+        Path path = directory.resolve(LocalDateTime.now().format(FILE_NAME_FORMAT) + SessionLog.FILE_EXTENSION);
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+        ));
+        SessionLog.writeHeader(stream, System.currentTimeMillis());
+
+        recordedCount.set(0);
+        startNanos = System.nanoTime();
+        writeExecutor.execute(() -> output = stream);
+        recordingPath = path;
+        return path;
+    }
+
+    /**
+     * 記録を終了し、ファイルを閉じます。書き込み待ちのメッセージを書き終えるまで最大 {@link #CLOSE_TIMEOUT_MILLIS} ミリ秒待ちます。
+     *
+     * @return 記録したメッセージ数、記録していなかった場合は -1
+     */
+    public synchronized long stop() {
+        if (recordingPath == null) {
+            return -1;
+        }
+        recordingPath = null;
+
+        Future<?> closed = writeExecutor.submit(() -> {
+            DataOutputStream stream = output;
+            output = null;
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    DanmakuChat.LOGGER.warn("弾幕の記録ファイルを閉じられませんでした: {}", e.getMessage());
+                }
+            }
+        });
+        try {
+            closed.get(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            DanmakuChat.LOGGER.warn("弾幕の記録ファイルの書き込みが終わる前に記録を終了しました");
+        }
+        return recordedCount.get();
+    }
+
+    public boolean isRecording() {
+        return recordingPath != null;
+    }
+
+    public @Nullable Path getRecordingPath() {
+        return recordingPath;
+    }
+
+    /**
+     * メッセージを記録します。記録中でなければ何もしません。どのスレッドから呼び出しても安全です。
+     *
+     * @param message メッセージのテキスト
+     * @param classification 分類結果（分類していない場合は null）
+     * @param priority 優先度
+     */
+    public void record(Text message, @Nullable ChatClassification classification, MessagePriority priority) {
+        if (recordingPath == null) {
+            return;
+        }
+
+        long arrivalNanos = System.nanoTime() - startNanos;
+        recordedCount.incrementAndGet();
+        writeExecutor.execute(() -> write(message, classification, priority, arrivalNanos));
+    }
+
+    private void write(Text message, @Nullable ChatClassification classification, MessagePriority priority, long arrivalNanos) {
+        DataOutputStream stream = output;
+        if (stream == null) {
+            return;
+        }
+
+        SessionLog.Entry entry = new SessionLog.Entry(
+            arrivalNanos,
+            classification == null ? MessageKind.SYSTEM : classification.kind(),
+            priority,
+            classification == null ? null : classification.sender(),
+            classification == null ? 0 : classification.bodyStart(),
+            message.getString(),
+            Text.Serialization.toJsonString(message, registries())
+        );
+        try {
+            SessionLog.writeEntry(stream, entry);
+        } catch (IOException e) {
+            DanmakuChat.LOGGER.warn("弾幕の記録に失敗したため、記録を終了します: {}", e.getMessage());
+            output = null;
+            recordingPath = null;
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // すでに書き込みに失敗している
+            }
+        }
+    }
+
+    /**
+     * テキストの JSON 変換に使うレジストリを返します。ワールドに入っていなければ空のレジストリを使います。
+     */
+    static RegistryWrapper.WrapperLookup registries() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client != null && client.world != null) {
+            return client.world.getRegistryManager();
+        }
+        return DynamicRegistryManager.EMPTY;
+    }
+}
@@ -0,0 +1,105 @@
+package com.danmakuchat.record;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.chat.ChatClassification;
+import com.danmakuchat.danmaku.DanmakuManager;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link SessionRecorder} で記録したファイルをメモリマップして読み、記録時と同じ間隔
+ * （または指定した倍率で速めた間隔）で {@link DanmakuManager} に流し直します。
+ *
+ * 再生は専用のスレッドで行い、メッセージは通常のチャットと同じ受信キューに入るため、
+ * 取り込み以降の処理（まとめ・流量制限・待機キュー・レーン割り当て・描画）は記録時と同じ経路を通ります。
+ */
+public class SessionReplayer {
+    private static final SessionReplayer instance = new SessionReplayer();
+
+    private volatile @Nullable Thread replayThread;
+
+    private SessionReplayer() {
+    }
+
+    public static SessionReplayer getInstance() {
+        return instance;
+    }
+
+    /**
+     * 再生を開始します。再生中のものがあれば止めてから開始します。
+     *
+     * @param path 記録ファイル
+     * @param speed 再生速度の倍率（1 で記録時と同じ速さ）
+     * @throws IOException ファイルを開けない場合、または記録ファイルの形式でない場合
+     */
+    public synchronized void start(Path path, float speed) throws IOException {
+        stop();
+
+        SessionLog.Reader reader = SessionLog.open(path);
+        Thread thread = new Thread(() -> replay(reader, speed), "DanmakuChat session replay");
+        thread.setDaemon(true);
+        replayThread = thread;
+        thread.start();
+    }
+
+    /**
+     * 再生を止めます。
+     */
+    public synchronized void stop() {
+        Thread thread = replayThread;
+        replayThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isReplaying() {
+        return replayThread != null;
+    }
+
+    private void replay(SessionLog.Reader reader, float speed) {
+        long startNanos = System.nanoTime();
+        int replayed = 0;
+
+        SessionLog.Entry entry;
+        while ((entry = reader.next()) != null) {
+            long dueNanos = startNanos + (long) (entry.arrivalNanos() / (double) speed);
+            long waitNanos;
+            while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            Text message;
+            try {
+                message = Text.Serialization.fromJson(entry.textJson(), SessionRecorder.registries());
+            } catch (RuntimeException e) {
+                message = null;
+            }
+            if (message == null) {
+                // 装飾を復元できない場合は平文で流す
+                message = Text.literal(entry.plainText());
+            }
+
+            ChatClassification classification = new ChatClassification(entry.kind(), entry.sender(), entry.bodyStart());
+            DanmakuManager.getInstance().addMessage(message, classification, entry.priority());
+            replayed++;
+        }
+
+        DanmakuChat.LOGGER.info("弾幕の記録の再生が終わりました（{} 件）", replayed);
+        synchronized (this) {
+            if (replayThread == Thread.currentThread()) {
+                replayThread = null;
+            }
+        }
+    }
+}
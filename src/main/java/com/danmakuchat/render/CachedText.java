@@ -0,0 +1,103 @@
+package com.danmakuchat.render;
+
+import net.minecraft.client.font.BakedGlyph;
+import net.minecraft.client.font.TextDrawable;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.text.OrderedText;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * レイアウト済みのテキスト。{@link TextLayoutCache} のエントリとして共有されます。
+ *
+ * 描画用に変換済みの {@link OrderedText} と測定済みの幅を保持するため、
+ * メッセージはフレームごとにテキストを変換・測定し直す必要がありません。
+ * グリフ描画のバッチ用に、原点に置いたときの影付きのグリフも色ごとに 1 組だけ保持します（描画スレッドのみ）。
+ */
+public final class CachedText {
+    private final OrderedText orderedText;
+    private final int width;
+    private final float fontSize;
+
+    // 原点に置いたグリフと、それを作ったときの色・影の有無（下線などの装飾を含む場合は null）
+    private @Nullable TextDrawable[] glyphs;
+    private boolean glyphsPrepared;
+    private int glyphColor;
+    private boolean glyphShadow;
+
+    CachedText(OrderedText orderedText, int width, float fontSize) {
+        this.orderedText = orderedText;
+        this.width = width;
+        this.fontSize = fontSize;
+    }
+
+    public OrderedText getOrderedText() {
+        return orderedText;
+    }
+
+    /**
+     * フォントサイズを適用する前の幅を取得します。
+     *
+     * @return 幅（ピクセル）
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * フォントサイズを適用した幅を取得します。
+     *
+     * @return 幅（ピクセル）
+     */
+    public int getScaledWidth() {
+        return (int) (width * fontSize);
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    /**
+     * 原点 (0, 0) に置いたときのグリフを返します。影付きの場合、各グリフは影と本体をまとめて書き出します。
+     * 色か影の有無が変わったとき、またはリソースの再読み込みでフォントのテクスチャが作り直されたときだけ作り直します。
+     * 描画スレッドからのみ呼んでください。
+     *
+     * @param textRenderer グリフを用意するレンダラー
+     * @param color 描画色（ARGB）
+     * @param shadow 影を付ける場合は true
+     * @return グリフ、下線や取り消し線などグリフ以外の装飾を含むためバッチにできない場合は null
+     */
+    @Nullable TextDrawable[] getGlyphs(TextRenderer textRenderer, int color, boolean shadow) {
+        if (!glyphsPrepared || color != glyphColor || shadow != glyphShadow || isStale(glyphs)) {
+            glyphs = prepareGlyphs(textRenderer, color, shadow);
+            glyphsPrepared = true;
+            glyphColor = color;
+            glyphShadow = shadow;
+        }
+        return glyphs;
+    }
+
+    private @Nullable TextDrawable[] prepareGlyphs(TextRenderer textRenderer, int color, boolean shadow) {
+        List<TextDrawable> prepared = new ArrayList<>();
+        boolean[] decorated = new boolean[1];
+        textRenderer.prepare(orderedText, 0, 0, color, shadow, 0).draw(new TextRenderer.GlyphDrawer() {
+            @Override
+            public void drawGlyph(BakedGlyph.DrawnGlyph glyph) {
+                prepared.add(glyph);
+            }
+
+            @Override
+            public void drawRectangle(BakedGlyph glyph, BakedGlyph.Rectangle rectangle) {
+                decorated[0] = true;
+            }
+        });
+        return decorated[0] ? null : prepared.toArray(new TextDrawable[0]);
+    }
+
+    private static boolean isStale(@Nullable TextDrawable[] glyphs) {
+        // フォントのテクスチャはまとめて作り直されるので、先頭のグリフだけを見れば足りる
+        return glyphs != null && glyphs.length > 0 && glyphs[0].textureView().isClosed();
+    }
+}
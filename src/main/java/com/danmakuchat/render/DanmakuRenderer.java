@@ -1,14 +1,23 @@
 package com.danmakuchat.render;
 
+import com.danmakuchat.DanmakuChat;
 import com.danmakuchat.config.DanmakuConfig;
 import com.danmakuchat.danmaku.DanmakuManager;
 import com.danmakuchat.danmaku.DanmakuMessage;
+import com.danmakuchat.danmaku.DanmakuSimulation;
+import com.danmakuchat.danmaku.DanmakuSnapshot;
+import com.danmakuchat.danmaku.DanmakuStore;
+import com.danmakuchat.danmaku.PendingQueue;
+import com.danmakuchat.danmaku.QualityGovernor;
+import com.danmakuchat.jfr.FrameRenderedEvent;
+import com.danmakuchat.stats.DanmakuStats;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.render.RenderTickCounter;
 import net.minecraft.text.Text;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -18,14 +27,28 @@ import java.util.List;
  * 流れるチャットメッセージの視覚的表示を実装します。
  */
 public class DanmakuRenderer {
-    private static final int LANE_HEIGHT = 20;
-    private static final int TOP_MARGIN = 10;
-
-    private long lastFrameTime = -1;
+    private static final int LAYOUT_CACHE_SIZE = 512;
+    /** 「×N」のレイアウトを配列に保持する回数の上限 */
+    private static final int REPEAT_SUFFIX_CACHE_SIZE = 256;
+
+    // 繰り返し流れる同じ内容のテキストの幅と描画用テキストを使い回すキャッシュ
+    private final TextLayoutCache layoutCache = new TextLayoutCache(LAYOUT_CACHE_SIZE);
+    // 各メッセージを一度だけラスタライズして矩形 1 枚で描くためのアトラス（spriteCache 有効時）
+    private final SpriteAtlas spriteAtlas = new SpriteAtlas();
+    private final GlyphBatch glyphBatch = new GlyphBatch();
+    // /danmaku stats overlay で表示する計測値のオーバーレイ
+    private final StatsOverlay statsOverlay = new StatsOverlay();
+    // 回数ごとの「×N」のレイアウト（フォントサイズが変わったら作り直す）
+    private final CachedText[] repeatSuffixes = new CachedText[REPEAT_SUFFIX_CACHE_SIZE];
+    private float repeatSuffixFontSize = Float.NaN;
 
     public DanmakuRenderer() {
     }
 
+    public TextLayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
     /**
      * すべてのアクティブな弾幕メッセージを描画します。
      *
@@ -35,28 +58,26 @@ public class DanmakuRenderer {
     public void render(DrawContext context, RenderTickCounter tickCounter) {
         DanmakuConfig config = DanmakuConfig.getInstance();
 
+        // 無効化されている間はシミュレーションスレッドも止め、状態を描画スレッドに戻しておく
+        DanmakuSimulation simulation = DanmakuSimulation.getInstance();
+        boolean simulated = simulation.sync(config.isEnabled() && config.useSimulationThread());
+
         if (!config.isEnabled()) {
             return;
         }
 
-        // リアルタイム（ナノ秒）を使用してデルタタイムを計算
-        long currentTime = System.nanoTime();
-        float deltaTimeSeconds;
+        FrameRenderedEvent frameEvent = new FrameRenderedEvent();
+        frameEvent.begin();
 
-        if (lastFrameTime == -1) {
-            // 最初のフレーム、60 FPSと仮定
-            deltaTimeSeconds = 1.0f / 60.0f;
-        } else {
-            // 実際の時間差を計算
-            deltaTimeSeconds = (currentTime - lastFrameTime) / 1_000_000_000.0f;
-            // 合理的な値に制限（大きなジャンプを防止）
-            deltaTimeSeconds = Math.min(deltaTimeSeconds, 0.1f);
-        }
-        lastFrameTime = currentTime;
+        // 位置は出現時刻からの経過時間で決まるため、現在の単調時刻だけを求める
+        long currentTime = System.nanoTime();
 
-        // すべてのメッセージを更新
+        // 画面外に出たメッセージを削除（シミュレーションスレッドの有効時はそちらで行う）
         DanmakuManager manager = DanmakuManager.getInstance();
-        manager.update(deltaTimeSeconds);
+        if (!simulated) {
+            manager.update(currentTime);
+        }
+        long updatedTime = System.nanoTime();
 
         // MinecraftClient インスタンスを取得
         MinecraftClient client = MinecraftClient.getInstance();
@@ -68,96 +89,295 @@ public class DanmakuRenderer {
         int screenWidth = client.getWindow().getScaledWidth();
         int screenHeight = client.getWindow().getScaledHeight();
 
-        // 描画状態を保存
+        // フレーム内で変化しない値を先に求めておく
+        float fontSize = config.getFontSize();
+
+        // 設定から不透明度を取得（0.0 - 1.0）し、設定可能な不透明度を持つ白色テキストの色を作る
+        int alpha = (int) (config.getOpacity() * 255);
+        int textColor = (alpha << 24) | 0x00FFFFFF;
+
+        TextRenderer textRenderer = client.textRenderer;
+
+        if (simulated) {
+            // シミュレーションスレッドに依頼された新しいメッセージのレイアウトだけを行う
+            simulation.setScreenWidth(screenWidth);
+            measureRequested(simulation, textRenderer);
+        } else {
+            // 他スレッドから届いたメッセージを取り込み、待機中のメッセージにレーンを割り当てる
+            manager.drainIngress();
+            assignPendingMessages(manager, textRenderer, screenWidth, fontSize, currentTime);
+        }
+        long assignedTime = System.nanoTime();
+
+        // スプライト描画はアトラスが利用できる間だけ使い、失敗時はグリフ描画に戻る
+        boolean useSprites = config.useSpriteCache() && spriteAtlas.isAvailable();
+        // スプライトは影込みでラスタライズ済みなので、影を止めて軽くなるのはグリフ描画だけ
+        boolean shadow = manager.getQualityGovernor().shouldDrawShadows();
+        if (useSprites) {
+            spriteAtlas.beginFrame();
+        }
+        glyphBatch.begin();
+
+        // 描画状態を保存し、全メッセージ共通のフォントサイズでスケールを 1 回だけ適用
         context.getMatrices().pushMatrix();
+        context.getMatrices().scale(fontSize, fontSize);
 
         try {
-            // 各メッセージを描画
-            List<DanmakuMessage> messages = manager.getActiveMessages();
-            TextRenderer textRenderer = client.textRenderer;
-
-            for (DanmakuMessage message : messages) {
-            // 最初のレンダリング前に位置を初期化
-            if (!message.isInitialized()) {
-                // フォントサイズ設定を取得
-                float fontSize = config.getFontSize();
-
-                // テキスト幅を測定（フォントサイズを考慮）
-                Text text = message.getMessage();
-                int baseTextWidth = textRenderer.getWidth(text);
-                int scaledTextWidth = (int) (baseTextWidth * fontSize);
-                message.setTextWidth(scaledTextWidth);
-
-                // ① 速度の計算と設定 (screenWidth を使用して速度を確定)
-                message.calculateSpeed(screenWidth);
-
-                // ② レーンの割り当てと衝突回避アルゴリズム
-                int bestLane = manager.findBestLane(screenWidth, scaledTextWidth, message.getCalculatedSpeed());
-
-                if (bestLane != -1) {
-                    // レーンを割り当て
-                    message.setLane(bestLane);
-
-                    // 位置を設定
-                    message.setPosX(screenWidth); // 右端から開始
-                    message.setPosY(TOP_MARGIN + bestLane * LANE_HEIGHT);
-
-                    // レーン追跡を更新
-                    manager.updateLaneInfo(bestLane, message);
-
-                    // 初期化済みとしてマーク
-                    message.setInitialized(true);
-                } else {
-                    // 利用可能なレーンがない - このメッセージをスキップ
-                    continue;
+            if (simulated) {
+                drawSnapshot(context, textRenderer, simulation.acquireSnapshot(), fontSize, currentTime, useSprites, shadow);
+            } else {
+                drawMessages(context, textRenderer, manager, fontSize, textColor, currentTime, useSprites, shadow);
+            }
+            if (useSprites) {
+                // 溜めたスプライトをページごとにまとめて提出する（スケールを戻す前に行う）
+                spriteAtlas.flush(context);
+            }
+            // スプライトにできなかったテキストのグリフも、フォントのページごとにまとめて提出する
+            glyphBatch.flush(context);
+        } finally {
+            // 描画状態を復元
+            context.getMatrices().popMatrix();
+        }
+
+        long drawnTime = System.nanoTime();
+        updateQualityGovernor(config, manager, drawnTime - currentTime, drawnTime);
+        int activeCount = manager.getActiveCount();
+        int pendingCount = manager.getPendingQueue().size();
+        DanmakuStats stats = DanmakuStats.getInstance();
+        stats.recordFrame(updatedTime - currentTime, assignedTime - updatedTime, drawnTime - assignedTime,
+            activeCount, pendingCount);
+
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.updateTime = updatedTime - currentTime;
+            frameEvent.assignTime = assignedTime - updatedTime;
+            frameEvent.drawTime = drawnTime - assignedTime;
+            frameEvent.activeCount = activeCount;
+            frameEvent.pendingCount = pendingCount;
+            frameEvent.commit();
+        }
+        if (stats.isOverlayVisible()) {
+            statsOverlay.render(context, textRenderer, screenWidth, currentTime);
+        }
+    }
+
+    /**
+     * 表示中のメッセージを直接走査して描画します（シミュレーションスレッドを使わない場合）。
+     */
+    private void drawMessages(DrawContext context, TextRenderer textRenderer, DanmakuManager manager, float fontSize,
+                              int textColor, long currentTime, boolean useSprites, boolean shadow) {
+        // 各メッセージを描画（イテレーターを生成しないようにインデックスで走査）
+        List<DanmakuMessage> messages = manager.getActiveMessages();
+
+        for (int i = 0, count = messages.size(); i < count; i++) {
+            DanmakuMessage message = messages.get(i);
+
+            // スケール後の座標を計算（スケール適用後の座標系に変換）
+            int scaledX = (int) ((int) message.getPosX(currentTime) / fontSize);
+            int scaledY = (int) ((int) message.getPosY() / fontSize);
+
+            drawLayout(context, textRenderer, message.getLayout(), scaledX, scaledY, textColor, useSprites, shadow);
+            if (message.getRepeatCount() > 1) {
+                // 回数が変わったときだけ「×N」をレイアウトし直し、メッセージに保持しておく
+                if (message.getMeasuredRepeatCount() != message.getRepeatCount()) {
+                    message.setRepeatSuffix(
+                        getRepeatSuffix(message.getRepeatCount(), fontSize, textRenderer), message.getRepeatCount());
                 }
+                drawLayout(context, textRenderer, message.getRepeatSuffix(),
+                    scaledX + message.getLayout().getWidth(), scaledY, textColor, useSprites, shadow);
             }
+        }
 
-            // 初期化されていない場合は描画をスキップ
-            if (!message.isInitialized()) {
-                continue;
+        // SoA ストアに保持されたメッセージを描画（位置は update で計算済み）
+        DanmakuStore<CachedText> store = manager.getStore();
+        for (int i = 0, count = store.size(); i < count; i++) {
+            int scaledX = (int) ((int) store.getPosX(i) / fontSize);
+            int scaledY = (int) ((int) store.getPosY(i) / fontSize);
+
+            drawLayout(context, textRenderer, store.getLayout(i), scaledX, scaledY, textColor, useSprites, shadow);
+            int repeatCount = store.getRepeatCount(i);
+            if (repeatCount > 1) {
+                if (store.getRepeatSuffixCount(i) != repeatCount) {
+                    store.setRepeatSuffix(i, getRepeatSuffix(repeatCount, fontSize, textRenderer), repeatCount);
+                }
+                drawLayout(context, textRenderer, store.getRepeatSuffix(i),
+                    scaledX + store.getLayout(i).getWidth(), scaledY, textColor, useSprites, shadow);
             }
+        }
+    }
 
-            // メッセージの寸法を取得（キャッシュされた幅を使用）
-            Text text = message.getMessage();
+    /**
+     * シミュレーションスレッドが公開したスナップショットを描画します。
+     * X 位置はスナップショットの出現位置と速度から描画時刻で求めます。
+     */
+    private void drawSnapshot(DrawContext context, TextRenderer textRenderer, DanmakuSnapshot snapshot, float fontSize,
+                              long currentTime, boolean useSprites, boolean shadow) {
+        for (int i = 0, count = snapshot.size(); i < count; i++) {
+            int scaledX = (int) ((int) snapshot.getPosX(i, currentTime) / fontSize);
+            int scaledY = (int) ((int) snapshot.getPosY(i) / fontSize);
+            int color = snapshot.getColor(i);
+
+            drawLayout(context, textRenderer, snapshot.getLayout(i), scaledX, scaledY, color, useSprites, shadow);
+            drawRepeatSuffix(context, textRenderer, snapshot.getLayout(i), snapshot.getRepeatCount(i),
+                scaledX, scaledY, fontSize, color, useSprites, shadow);
+        }
+    }
 
-            // 位置を計算
-            int x = (int) message.getPosX();
-            int y = (int) message.getPosY();
+    /**
+     * シミュレーションスレッドから依頼されたメッセージをレイアウトして返します。
+     * テキストの幅の測定は描画スレッドでしか行えないため、ここだけは描画スレッドで行います。
+     */
+    private void measureRequested(DanmakuSimulation simulation, TextRenderer textRenderer) {
+        DanmakuMessage message;
+        while ((message = simulation.pollMeasureRequest()) != null) {
+            float fontSize = message.getMeasureFontSize();
+            int repeatCount = message.getMeasureRepeatCount();
+
+            CachedText current = message.getLayout();
+            if (current == null || current.getFontSize() != fontSize) {
+                message.setLayout(layoutCache.get(message.getMessage(), fontSize, textRenderer));
+            }
+            updateRepeatSuffix(message, repeatCount, fontSize, textRenderer);
 
-            // 設定から不透明度を取得（0.0 - 1.0）
-            float opacity = config.getOpacity();
-            int alpha = (int) (opacity * 255);
+            simulation.completeMeasure(message);
+        }
+    }
 
-            // 設定可能な不透明度を持つ白色テキスト
-            int textColor = (alpha << 24) | 0x00FFFFFF;
+    /**
+     * このフレームの弾幕の処理時間を品質ガバナーに渡します。ガバナーが無効なら設定どおりの品質に戻します。
+     */
+    private static void updateQualityGovernor(DanmakuConfig config, DanmakuManager manager, long frameNanos, long nowNanos) {
+        QualityGovernor governor = manager.getQualityGovernor();
+        if (!config.isAdaptiveQualityEnabled()) {
+            if (governor.getLevel() != QualityGovernor.Level.FULL) {
+                governor.reset();
+            }
+            return;
+        }
 
-            // フォントサイズ設定を取得
-            float fontSize = config.getFontSize();
+        long budgetNanos = (long) (config.getFrameBudgetMillis() * 1_000_000L);
+        if (governor.onFrame(frameNanos, budgetNanos, nowNanos)) {
+            DanmakuChat.LOGGER.debug("弾幕の表示品質を {} に変更しました（平均 {} ns/フレーム）",
+                governor.getLevel(), (long) governor.getSmoothedNanos());
+        }
+    }
 
-            // フォントサイズをスケール適用するためにマトリックスをプッシュ
-            context.getMatrices().pushMatrix();
-            context.getMatrices().scale(fontSize, fontSize);
+    /**
+     * レイアウト済みのテキストを 1 件描画します。
+     * スプライト描画が有効ならアトラス上の矩形 1 枚としてフレームのバッチに追加し、アトラスに載せられない場合は
+     * 影付きのグリフをフォントのページごとのバッチに追加します。下線などの装飾を含むテキストだけは通常のテキスト描画で描きます。
+     */
+    private void drawLayout(DrawContext context, TextRenderer textRenderer, CachedText layout,
+                            int x, int y, int textColor, boolean useSprites, boolean shadow) {
+        if (useSprites) {
+            SpriteAtlas.Sprite sprite = spriteAtlas.getOrCreate(layout, textRenderer);
+            if (sprite != null) {
+                spriteAtlas.draw(sprite, x, y, textColor);
+                return;
+            }
+        }
 
-            // スケール後の座標を計算（スケール適用後の座標系に変換）
-            int scaledX = (int) (x / fontSize);
-            int scaledY = (int) (y / fontSize);
-
-            // 視認性のための影付きテキストを描画
-            context.drawTextWithShadow(
-                textRenderer,
-                text,
-                scaledX,
-                scaledY,
-                textColor
-            );
-
-            // マトリックスを復元
-            context.getMatrices().popMatrix();
+        // 視認性のための影付きテキストを描画（レイアウト済みのテキストを再利用）
+        // 品質ガバナーが影を止めている間は本体だけを描く
+        if (glyphBatch.add(layout, textRenderer, x, y, textColor, shadow)) {
+            return;
         }
-        } finally {
-            // 描画状態を復元
-            context.getMatrices().popMatrix();
+        context.drawText(textRenderer, layout.getOrderedText(), x, y, textColor, shadow);
+    }
+
+    /**
+     * 同じ内容のメッセージがまとめられている場合、本文の直後に「×N」を描画します。
+     * 回数は出現後も増えるため、毎フレーム現在の回数で描画します（回数ごとのレイアウトは {@link #getRepeatSuffix} が保持する）。
+     * レーンで確保される幅は出現時点の回数までなので、出現後に伸びた分は後続との間隔に食い込むことがあります。
+     */
+    private void drawRepeatSuffix(DrawContext context, TextRenderer textRenderer, CachedText layout, int repeatCount,
+                                  int x, int y, float fontSize, int textColor, boolean useSprites, boolean shadow) {
+        if (repeatCount <= 1) {
+            return;
+        }
+        CachedText suffix = getRepeatSuffix(repeatCount, fontSize, textRenderer);
+        drawLayout(context, textRenderer, suffix, x + layout.getWidth(), y, textColor, useSprites, shadow);
+    }
+
+    /**
+     * 待機中のメッセージの「×N」のレイアウトを、回数かフォントサイズが変わったときだけ作り直します。
+     */
+    private void updateRepeatSuffix(DanmakuMessage message, int repeatCount, float fontSize, TextRenderer textRenderer) {
+        CachedText suffix = message.getRepeatSuffix();
+        if (repeatCount <= 1) {
+            if (suffix != null) {
+                message.setRepeatSuffix(null, 1);
+            }
+            return;
+        }
+        if (suffix == null || suffix.getFontSize() != fontSize || message.getMeasuredRepeatCount() != repeatCount) {
+            message.setRepeatSuffix(getRepeatSuffix(repeatCount, fontSize, textRenderer), repeatCount);
         }
     }
+
+    /**
+     * 「×N」のレイアウトを返します。よく使う回数の分は配列に保持し、テキストの生成とキャッシュの検索を省きます。
+     */
+    private CachedText getRepeatSuffix(int repeatCount, float fontSize, TextRenderer textRenderer) {
+        if (fontSize != repeatSuffixFontSize) {
+            Arrays.fill(repeatSuffixes, null);
+            repeatSuffixFontSize = fontSize;
+        }
+        if (repeatCount >= repeatSuffixes.length) {
+            return layoutCache.get(Text.literal(" ×" + repeatCount), fontSize, textRenderer);
+        }
+        CachedText suffix = repeatSuffixes[repeatCount];
+        if (suffix == null) {
+            suffix = layoutCache.get(Text.literal(" ×" + repeatCount), fontSize, textRenderer);
+            repeatSuffixes[repeatCount] = suffix;
+        }
+        return suffix;
+    }
+
+    /**
+     * 待機キューのメッセージをすべて走査して幅と速度を求め、マネージャーにレーンを割り当てさせます。
+     * レーンが見つからなかったメッセージはキューに残り、次のフレームで再試行されます。
+     * キューは有界なので、チャットの流量に関わらず 1 フレームあたりの試行回数は上限で抑えられます。
+     *
+     * @param manager 弾幕マネージャー
+     * @param textRenderer テキスト幅の測定に使うレンダラー
+     * @param screenWidth 画面幅（ピクセル）
+     * @param fontSize フォントサイズの倍率
+     * @param nowNanos 現在の単調時刻（出現時刻として記録される）
+     */
+    private void assignPendingMessages(DanmakuManager manager, TextRenderer textRenderer, int screenWidth, float fontSize, long nowNanos) {
+        PendingQueue<DanmakuMessage> pending = manager.getPendingQueue();
+        pending.expire(System.currentTimeMillis());
+
+        // どのメッセージもまだレーンに入れないと分かっている間は、走査も割り当ても行わない
+        if (!manager.needsPendingPass(screenWidth, nowNanos)) {
+            return;
+        }
+
+        // 取り出さずにその場で走査する（並び順は変わらない）
+        for (int i = 0, count = pending.size(); i < count; i++) {
+            DanmakuMessage message = pending.get(i);
+
+            // まだどのレーンにも入れないと分かっているメッセージは測り直さない
+            CachedText current = message.getLayout();
+            if (current != null && current.getFontSize() == fontSize && manager.isDeferred(message, nowNanos)) {
+                continue;
+            }
+
+            // テキスト幅を測定（フォントサイズを考慮）
+            // 同じ内容のテキストはキャッシュから、再試行時はメッセージが保持するレイアウトをそのまま使う
+            if (current == null || current.getFontSize() != fontSize) {
+                message.setLayout(layoutCache.get(message.getMessage(), fontSize, textRenderer));
+            }
+
+            // まとめられたメッセージは「×N」の幅も含めてレーンを確保する
+            updateRepeatSuffix(message, message.getRepeatCount(), fontSize, textRenderer);
+
+            // 速度の計算と設定 (screenWidth を使用して速度を確定)
+            message.calculateSpeed(screenWidth);
+        }
+
+        // レーンの割り当てと衝突回避アルゴリズム
+        manager.assignPending(screenWidth, nowNanos);
+    }
 }
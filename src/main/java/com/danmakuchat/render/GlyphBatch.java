@@ -0,0 +1,147 @@
+package com.danmakuchat.render;
+
+import com.danmakuchat.mixin.DrawContextAccessor;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import net.minecraft.client.font.TextDrawable;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.ScreenRect;
+import net.minecraft.client.gui.render.state.SimpleGuiElementRenderState;
+import net.minecraft.client.render.LightmapTextureManager;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.texture.TextureSetup;
+import org.joml.Matrix3x2f;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1 フレーム分の弾幕のグリフをフォントのテクスチャのページごとにまとめ、ページ 1 枚につき 1 つの描画要素として提出するバッチ。
+ *
+ * {@link DrawContext#drawText} では、テキストはグリフ 1 文字ごとに描画要素になります。
+ * ここでは {@link CachedText} が原点に置いて用意しておいたグリフを、描画先の位置と一緒にページごとに溜めておき、
+ * フレームの最後にページごとに頂点をまとめて書き出します。各グリフは影と本体を続けて書き出すので、影と本体も同じ描画です。
+ * 頂点は 1 件ずつ描画した場合と同じで、ページの中ではメッセージの順序も保たれます。
+ *
+ * 下線などグリフ以外の装飾を含むテキストはバッチにできないため、{@link #add} が false を返し、呼び出し側が通常の描画に戻します。
+ *
+ * 配列と描画要素はフレームをまたいで再利用します。
+ * 提出した描画要素は同じフレームの GUI 描画で頂点に変換されるため、次のフレームの {@link #begin()} までは中身を書き換えません。
+ * {@link #flush} は 1 フレームに 1 回だけ呼んでください。
+ *
+ * 描画スレッドからのみ使用してください。
+ */
+class GlyphBatch {
+    private final GroupedBatch<GpuTextureView, TextDrawable> glyphs = new GroupedBatch<>();
+    // GroupedBatch のまとまりと同じ順に並ぶ描画要素
+    private final List<PageElement> elements = new ArrayList<>();
+    private final AffinePose pose = new AffinePose();
+    private ScreenRect bounds;
+
+    /**
+     * ページ 1 枚分のグリフを頂点に書き出す描画要素。
+     * グリフごとに現在の変換行列に描画先の位置への平行移動を掛けた行列を作り、バニラのグリフの描画要素と同じ引数で書き出します。
+     */
+    private final class PageElement implements SimpleGuiElementRenderState {
+        private final GroupedBatch.Group<GpuTextureView, TextDrawable> group;
+        private final TextureSetup textureSetup;
+        private final AffinePose offset = new AffinePose();
+        private final Matrix4f matrix = new Matrix4f();
+        private int count;
+
+        private PageElement(GroupedBatch.Group<GpuTextureView, TextDrawable> group) {
+            this.group = group;
+            this.textureSetup = TextureSetup.withoutGlTexture(group.getKey());
+        }
+
+        @Override
+        public void setupVertices(VertexConsumer vertices, float depth) {
+            for (int i = 0; i < count; i++) {
+                offset.setTranslated(pose, group.getX(i), group.getY(i));
+                matrix.set(
+                    offset.m00(), offset.m01(), 0, 0,
+                    offset.m10(), offset.m11(), 0, 0,
+                    0, 0, 1, 0,
+                    offset.m20(), offset.m21(), depth, 1
+                );
+                group.get(i).render(matrix, vertices, LightmapTextureManager.MAX_LIGHT_COORDINATE, true);
+            }
+        }
+
+        @Override
+        public RenderPipeline pipeline() {
+            // 同じページのグリフは同じパイプラインを使う
+            return group.get(0).getPipeline();
+        }
+
+        @Override
+        public TextureSetup textureSetup() {
+            return textureSetup;
+        }
+
+        @Override
+        public ScreenRect scissorArea() {
+            return null;
+        }
+
+        @Override
+        public ScreenRect bounds() {
+            return bounds;
+        }
+    }
+
+    /**
+     * フレームの開始時に呼び、前のフレームのグリフを捨てます（配列は再利用する）。
+     */
+    void begin() {
+        glyphs.begin();
+    }
+
+    /**
+     * レイアウト済みのテキストのグリフを追加します。
+     *
+     * @param layout レイアウト済みのテキスト
+     * @param textRenderer グリフを用意するレンダラー
+     * @param x 描画先の X 座標
+     * @param y 描画先の Y 座標
+     * @param color 描画色（ARGB）
+     * @param shadow 影を付ける場合は true
+     * @return 追加した場合は true、装飾を含むためバッチにできない場合は false
+     */
+    boolean add(CachedText layout, TextRenderer textRenderer, int x, int y, int color, boolean shadow) {
+        TextDrawable[] prepared = layout.getGlyphs(textRenderer, color, shadow);
+        if (prepared == null) {
+            return false;
+        }
+        for (TextDrawable glyph : prepared) {
+            glyphs.add(glyph.textureView(), glyph, x, y);
+        }
+        return true;
+    }
+
+    /**
+     * 溜めたグリフをページごとに 1 つの描画要素として提出します。
+     * 現在の変換行列（フォントサイズのスケールを含む）を使うため、行列を戻す前に呼んでください。
+     *
+     * @param context 描画コンテキスト
+     */
+    void flush(DrawContext context) {
+        Matrix3x2f matrices = context.getMatrices();
+        pose.set(matrices.m00(), matrices.m01(), matrices.m10(), matrices.m11(), matrices.m20(), matrices.m21());
+        bounds = SpriteBatch.screenBounds(context, bounds);
+        for (int i = 0, size = glyphs.groupCount(); i < size; i++) {
+            GroupedBatch.Group<GpuTextureView, TextDrawable> group = glyphs.getGroup(i);
+            if (i == elements.size()) {
+                elements.add(new PageElement(group));
+            }
+            if (group.size() == 0) {
+                continue;
+            }
+            PageElement element = elements.get(i);
+            element.count = group.size();
+            ((DrawContextAccessor) context).getState().addSimpleElement(element);
+        }
+    }
+}
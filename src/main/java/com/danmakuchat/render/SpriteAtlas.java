@@ -0,0 +1,199 @@
+package com.danmakuchat.render;
+
+import com.danmakuchat.DanmakuChat;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 弾幕の各行を一度だけテクスチャにラスタライズし、以降は矩形 1 枚として描画するためのスプライトアトラス。
+ *
+ * 流れている間のメッセージのピクセルは変化しないため、フレームごとにグリフを 1 文字ずつ
+ * （影の分も含めて）描く代わりに、平行移動した四角形を 1 枚描くだけで済みます。
+ * 同じ内容のメッセージは {@link TextLayoutCache} で同じ {@link CachedText} を共有しているので、
+ * アトラス上のエントリも共有されます。
+ *
+ * アトラスは固定サイズのページの集まりで、空きがなくなると
+ * 現在のフレームで使われていない中で最も長く使われていないページをまとめて破棄して再利用します。
+ * ラスタライズに失敗した場合はアトラスを無効化し、呼び出し側は通常のグリフ描画に戻ります。
+ *
+ * 描画はフレームの間 {@link SpriteBatch} に溜め、{@link #flush} でページごとに 1 回の描画としてまとめて提出します。
+ *
+ * 描画スレッドからのみ使用してください。
+ */
+public class SpriteAtlas {
+    private static final int PAGE_WIDTH = 1024;
+    private static final int PAGE_HEIGHT = 128;
+    private static final int MAX_PAGES = 8;
+
+    private final List<SpritePage> pages = new ArrayList<>();
+    private final Map<CachedText, Sprite> sprites = new HashMap<>();
+    private final SpriteBatch batch = new SpriteBatch();
+
+    private long frame = 0;
+    private boolean failed = false;
+
+    /**
+     * アトラス上のスプライトの位置。
+     */
+    public static final class Sprite {
+        private final SpritePage page;
+        private final int u;
+        private final int v;
+        private final int width;
+        private final int height;
+
+        private Sprite(SpritePage page, int u, int v, int width, int height) {
+            this.page = page;
+            this.u = u;
+            this.v = v;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * フレームの開始を通知します。現在のフレームで使われたページは破棄の対象になりません。
+     */
+    public void beginFrame() {
+        frame++;
+        batch.begin();
+    }
+
+    /**
+     * アトラスが利用できるかどうかを返します。
+     *
+     * @return ラスタライズに失敗していなければ true
+     */
+    public boolean isAvailable() {
+        return !failed;
+    }
+
+    /**
+     * レイアウト済みテキストのスプライトを取得します。なければラスタライズして登録します。
+     *
+     * @param layout レイアウト済みのテキスト
+     * @param textRenderer ラスタライズに使うレンダラー
+     * @return スプライト、アトラスに載せられない場合は null（呼び出し側はグリフ描画にフォールバックする）
+     */
+    public Sprite getOrCreate(CachedText layout, TextRenderer textRenderer) {
+        Sprite sprite = sprites.get(layout);
+        if (sprite != null) {
+            sprite.page.lastUsedFrame = frame;
+            return sprite;
+        }
+
+        if (failed) {
+            return null;
+        }
+
+        // 影の分だけ幅と高さを 1 ピクセル広げる
+        int width = layout.getWidth() + 1;
+        int height = textRenderer.fontHeight + 1;
+        if (width > PAGE_WIDTH) {
+            return null;
+        }
+
+        try {
+            sprite = allocate(width, height);
+            if (sprite == null) {
+                return null;
+            }
+
+            sprite.page.rasterize(textRenderer, layout.getOrderedText(), sprite.u, sprite.v);
+        } catch (RuntimeException e) {
+            DanmakuChat.LOGGER.warn("弾幕スプライトのラスタライズに失敗したため、グリフ描画に切り替えます: {}", e.toString());
+            failed = true;
+            close();
+            return null;
+        }
+
+        sprite.page.residents.add(layout);
+        sprite.page.lastUsedFrame = frame;
+        sprites.put(layout, sprite);
+        return sprite;
+    }
+
+    private Sprite allocate(int width, int height) {
+        for (SpritePage page : pages) {
+            Sprite sprite = allocateIn(page, width, height);
+            if (sprite != null) {
+                return sprite;
+            }
+        }
+
+        if (pages.size() < MAX_PAGES) {
+            Identifier id = Identifier.of(DanmakuChat.MOD_ID, "danmaku_sprites/" + pages.size());
+            SpritePage page = new SpritePage(id, PAGE_WIDTH, PAGE_HEIGHT, height);
+            MinecraftClient.getInstance().getTextureManager().registerTexture(id, page);
+            pages.add(page);
+            return allocateIn(page, width, height);
+        }
+
+        // アトラスが満杯：このフレームで使われていない中で最も古いページを破棄する
+        SpritePage victim = null;
+        for (SpritePage page : pages) {
+            if (page.lastUsedFrame < frame && (victim == null || page.lastUsedFrame < victim.lastUsedFrame)) {
+                victim = page;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+
+        for (CachedText resident : victim.residents) {
+            sprites.remove(resident);
+        }
+        victim.reset();
+        return allocateIn(victim, width, height);
+    }
+
+    private static Sprite allocateIn(SpritePage page, int width, int height) {
+        int position = page.allocate(width);
+        if (position == -1) {
+            return null;
+        }
+        return new Sprite(page, position & 0xFFFF, position >>> 16, width, height);
+    }
+
+    /**
+     * スプライトを 1 枚の矩形としてこのフレームのバッチに追加します。
+     * 実際の描画要素は {@link #flush} で提出されます。
+     *
+     * @param sprite 描画するスプライト
+     * @param x X 座標
+     * @param y Y 座標
+     * @param color 掛け合わせる色（ARGB、不透明度を含む）
+     */
+    public void draw(Sprite sprite, int x, int y, int color) {
+        batch.add(sprite.page, x, y, sprite.u, sprite.v, sprite.width, sprite.height, color);
+    }
+
+    /**
+     * このフレームに追加したスプライトを、ページごとに 1 つの描画要素として提出します。
+     * 現在の変換行列で描画されるため、フォントサイズのスケールを戻す前に呼んでください。
+     *
+     * @param context 描画コンテキスト
+     */
+    public void flush(DrawContext context) {
+        batch.flush(context);
+    }
+
+    /**
+     * すべてのページを解放します。
+     */
+    public void close() {
+        for (SpritePage page : pages) {
+            MinecraftClient.getInstance().getTextureManager().destroyTexture(page.getId());
+        }
+        pages.clear();
+        sprites.clear();
+        batch.clear();
+    }
+}
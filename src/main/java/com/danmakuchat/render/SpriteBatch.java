@@ -0,0 +1,226 @@
+package com.danmakuchat.render;
+
+import com.danmakuchat.mixin.DrawContextAccessor;
+import com.mojang.blaze3d.pipeline.RenderPipeline;
+import net.minecraft.client.gl.RenderPipelines;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.ScreenRect;
+import net.minecraft.client.gui.render.state.SimpleGuiElementRenderState;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.texture.TextureSetup;
+import org.joml.Matrix3x2f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 1 フレーム分のスプライトの矩形をアトラスのページごとにまとめ、ページ 1 枚につき 1 つの描画要素として提出するバッチ。
+ *
+ * {@link DrawContext#drawTexture} で 1 件ずつ描くと、メッセージごとに描画要素とテクスチャの設定が積まれます。
+ * ここでは矩形の座標と色をページごとの配列に溜めておき、フレームの最後に頂点をまとめて書き出すので、
+ * 同じページのスプライトは 1 回の描画で済みます。影はスプライトに焼き込み済みなので、影と本体も同じ矩形 1 枚です。
+ *
+ * 配列と描画要素、変換行列はフレームをまたいで再利用し、配列は足りなくなったときだけ伸ばします。
+ * 提出した描画要素は同じフレームの GUI 描画で頂点に変換されるため、次のフレームの {@link #begin()} までは中身を書き換えません。
+ * {@link #flush} は 1 フレームに 1 回だけ呼んでください。
+ *
+ * 描画スレッドからのみ使用してください。
+ */
+class SpriteBatch {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<PageQuads> buckets = new ArrayList<>();
+    private PageQuads lastBucket;
+    private final Matrix3x2f pose = new Matrix3x2f();
+    private ScreenRect bounds;
+
+    /**
+     * ページ 1 枚分の矩形。各矩形は変換行列を掛ける前の座標と、0〜1 に正規化したテクスチャ座標を持ちます。
+     */
+    private final class PageQuads {
+        private final SpritePage page;
+        private final PageElement element;
+        private float[] positions = new float[INITIAL_CAPACITY * 4];
+        private float[] uvs = new float[INITIAL_CAPACITY * 4];
+        private int[] colors = new int[INITIAL_CAPACITY];
+        private int count;
+
+        private PageQuads(SpritePage page) {
+            this.page = page;
+            this.element = new PageElement(this, TextureSetup.withoutGlTexture(page.getGlTextureView()));
+        }
+
+        private void add(float x0, float y0, float x1, float y1, float u0, float v0, float u1, float v1, int color) {
+            if (count == colors.length) {
+                int capacity = colors.length * 2;
+                positions = Arrays.copyOf(positions, capacity * 4);
+                uvs = Arrays.copyOf(uvs, capacity * 4);
+                colors = Arrays.copyOf(colors, capacity);
+            }
+            int base = count * 4;
+            positions[base] = x0;
+            positions[base + 1] = y0;
+            positions[base + 2] = x1;
+            positions[base + 3] = y1;
+            uvs[base] = u0;
+            uvs[base + 1] = v0;
+            uvs[base + 2] = u1;
+            uvs[base + 3] = v1;
+            colors[count] = color;
+            count++;
+        }
+    }
+
+    /**
+     * ページ 1 枚分の矩形を頂点に書き出す描画要素。ページごとに 1 つを使い回します。
+     * 頂点の並びはバニラのテクスチャ付き矩形と同じです。
+     */
+    private final class PageElement implements SimpleGuiElementRenderState {
+        private final PageQuads quads;
+        private final TextureSetup textureSetup;
+        private int count;
+
+        private PageElement(PageQuads quads, TextureSetup textureSetup) {
+            this.quads = quads;
+            this.textureSetup = textureSetup;
+        }
+
+        @Override
+        public void setupVertices(VertexConsumer vertices, float depth) {
+            float[] positions = quads.positions;
+            float[] uvs = quads.uvs;
+            int[] colors = quads.colors;
+            for (int i = 0; i < count; i++) {
+                int base = i * 4;
+                float x0 = positions[base];
+                float y0 = positions[base + 1];
+                float x1 = positions[base + 2];
+                float y1 = positions[base + 3];
+                float u0 = uvs[base];
+                float v0 = uvs[base + 1];
+                float u1 = uvs[base + 2];
+                float v1 = uvs[base + 3];
+                int color = colors[i];
+
+                vertices.vertex(pose, x0, y0, depth).texture(u0, v0).color(color);
+                vertices.vertex(pose, x0, y1, depth).texture(u0, v1).color(color);
+                vertices.vertex(pose, x1, y1, depth).texture(u1, v1).color(color);
+                vertices.vertex(pose, x1, y0, depth).texture(u1, v0).color(color);
+            }
+        }
+
+        @Override
+        public RenderPipeline pipeline() {
+            return RenderPipelines.GUI_TEXTURED;
+        }
+
+        @Override
+        public TextureSetup textureSetup() {
+            return textureSetup;
+        }
+
+        @Override
+        public ScreenRect scissorArea() {
+            return null;
+        }
+
+        @Override
+        public ScreenRect bounds() {
+            return bounds;
+        }
+    }
+
+    /**
+     * フレームの開始時に呼び、前のフレームの矩形を捨てます（配列は再利用する）。
+     */
+    void begin() {
+        for (int i = 0, size = buckets.size(); i < size; i++) {
+            buckets.get(i).count = 0;
+        }
+    }
+
+    /**
+     * スプライトの矩形を 1 枚追加します。
+     *
+     * @param page スプライトが載っているページ
+     * @param x 描画先の X 座標
+     * @param y 描画先の Y 座標
+     * @param u ページ上の X 座標（ピクセル）
+     * @param v ページ上の Y 座標（ピクセル）
+     * @param width 幅（ピクセル）
+     * @param height 高さ（ピクセル）
+     * @param color 掛け合わせる色（ARGB、不透明度を含む）
+     */
+    void add(SpritePage page, int x, int y, int u, int v, int width, int height, int color) {
+        float pageWidth = page.getWidth();
+        float pageHeight = page.getHeight();
+        bucketOf(page).add(
+            x, y, x + width, y + height,
+            u / pageWidth, v / pageHeight, (u + width) / pageWidth, (v + height) / pageHeight,
+            color
+        );
+    }
+
+    /**
+     * 溜めた矩形をページごとに 1 つの描画要素として提出します。
+     * 現在の変換行列（フォントサイズのスケールを含む）を使うため、行列を戻す前に呼んでください。
+     *
+     * @param context 描画コンテキスト
+     */
+    void flush(DrawContext context) {
+        pose.set(context.getMatrices());
+        bounds = screenBounds(context, bounds);
+        for (int i = 0, size = buckets.size(); i < size; i++) {
+            PageQuads quads = buckets.get(i);
+            if (quads.count == 0) {
+                continue;
+            }
+            quads.element.count = quads.count;
+            ((DrawContextAccessor) context).getState().addSimpleElement(quads.element);
+        }
+    }
+
+    /**
+     * すべてのページの配列を解放します。
+     */
+    void clear() {
+        buckets.clear();
+        lastBucket = null;
+    }
+
+    private PageQuads bucketOf(SpritePage page) {
+        // 同じページのスプライトが続くことが多いので、直前のページを先に見る
+        if (lastBucket != null && lastBucket.page == page) {
+            return lastBucket;
+        }
+        for (int i = 0, size = buckets.size(); i < size; i++) {
+            PageQuads quads = buckets.get(i);
+            if (quads.page == page) {
+                lastBucket = quads;
+                return quads;
+            }
+        }
+        PageQuads quads = new PageQuads(page);
+        buckets.add(quads);
+        lastBucket = quads;
+        return quads;
+    }
+
+    /**
+     * 描画要素の範囲として画面全体を返します。弾幕は画面全体に散らばるので、要素ごとに範囲を求めても狭くはなりません。
+     * 画面の大きさが変わったときだけ作り直します。
+     *
+     * @param context 描画コンテキスト
+     * @param previous 前のフレームで返した範囲、まだなければ null
+     * @return 画面全体の範囲
+     */
+    static ScreenRect screenBounds(DrawContext context, ScreenRect previous) {
+        int width = context.getScaledWindowWidth();
+        int height = context.getScaledWindowHeight();
+        if (previous != null && previous.width() == width && previous.height() == height) {
+            return previous;
+        }
+        return new ScreenRect(0, 0, width, height);
+    }
+}
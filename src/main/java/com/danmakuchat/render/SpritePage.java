@@ -0,0 +1,138 @@
+package com.danmakuchat.render;
+
+import com.mojang.blaze3d.systems.GpuDevice;
+import com.mojang.blaze3d.systems.ProjectionType;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.textures.GpuTexture;
+import com.mojang.blaze3d.textures.GpuTextureView;
+import com.mojang.blaze3d.textures.TextureFormat;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.render.LightmapTextureManager;
+import net.minecraft.client.render.ProjectionMatrix2;
+import net.minecraft.client.render.VertexConsumerProvider;
+import net.minecraft.client.texture.AbstractTexture;
+import net.minecraft.text.OrderedText;
+import net.minecraft.util.Identifier;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * スプライトアトラスの 1 ページ分のテクスチャ。
+ *
+ * 高さの揃った行（1 行 = テキスト 1 行分）に分割し、各行に左から順にスプライトを詰めていきます。
+ * ページ単位でまとめて破棄・再利用するため、部分的な消去は必要ありません。
+ */
+class SpritePage extends AbstractTexture {
+    private final Identifier id;
+    private final int width;
+    private final int height;
+    private final int rowHeight;
+    private final int[] rowCursor;
+    private final GpuTexture depthTexture;
+    private final GpuTextureView depthTextureView;
+    private final ProjectionMatrix2 projectionMatrix = new ProjectionMatrix2("danmaku sprite page", 1000.0f, 3000.0f, true);
+
+    // このページに載っているスプライト（ページを破棄するときにアトラスの索引から外す）
+    final List<CachedText> residents = new ArrayList<>();
+    long lastUsedFrame;
+
+    SpritePage(Identifier id, int width, int height, int rowHeight) {
+        this.id = id;
+        this.width = width;
+        this.height = height;
+        this.rowHeight = rowHeight;
+        this.rowCursor = new int[height / rowHeight];
+
+        GpuDevice device = RenderSystem.getDevice();
+        this.glTexture = device.createTexture(
+            "danmaku sprite page " + id,
+            GpuTexture.USAGE_TEXTURE_BINDING | GpuTexture.USAGE_RENDER_ATTACHMENT | GpuTexture.USAGE_COPY_DST,
+            TextureFormat.RGBA8, width, height, 1, 1
+        );
+        this.glTextureView = device.createTextureView(this.glTexture);
+        this.depthTexture = device.createTexture(
+            "danmaku sprite page depth " + id,
+            GpuTexture.USAGE_RENDER_ATTACHMENT,
+            TextureFormat.DEPTH32, width, height, 1, 1
+        );
+        this.depthTextureView = device.createTextureView(this.depthTexture);
+        reset();
+    }
+
+    Identifier getId() {
+        return id;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * 指定した幅の領域を確保します。
+     *
+     * @param spriteWidth 確保する幅（ピクセル）
+     * @return 確保した領域の左上座標を {@code (v << 16) | u} で表した値、空きがなければ -1
+     */
+    int allocate(int spriteWidth) {
+        for (int row = 0; row < rowCursor.length; row++) {
+            if (rowCursor[row] + spriteWidth <= width) {
+                int u = rowCursor[row];
+                rowCursor[row] += spriteWidth;
+                return ((row * rowHeight) << 16) | u;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * テキストを影付きで白色のままページ上の指定位置にラスタライズします。
+     * 不透明度は描画時の色で掛け合わせます。
+     */
+    void rasterize(TextRenderer textRenderer, OrderedText text, int u, int v) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        VertexConsumerProvider.Immediate immediate = client.getBufferBuilders().getEntityVertexConsumers();
+
+        RenderSystem.outputColorTextureOverride = this.glTextureView;
+        RenderSystem.outputDepthTextureOverride = this.depthTextureView;
+        RenderSystem.backupProjectionMatrix();
+        try {
+            RenderSystem.setProjectionMatrix(projectionMatrix.set(width, height), ProjectionType.ORTHOGRAPHIC);
+
+            Matrix4f matrix = new Matrix4f().translation(u, v, -2000.0f);
+            textRenderer.draw(
+                text, 0.0f, 0.0f, 0xFFFFFFFF, true, matrix, immediate,
+                TextRenderer.TextLayerType.NORMAL, 0, LightmapTextureManager.MAX_LIGHT_COORDINATE
+            );
+            immediate.draw();
+        } finally {
+            RenderSystem.restoreProjectionMatrix();
+            RenderSystem.outputColorTextureOverride = null;
+            RenderSystem.outputDepthTextureOverride = null;
+        }
+    }
+
+    /**
+     * ページを空にして再利用できる状態に戻します。
+     */
+    void reset() {
+        RenderSystem.getDevice().createCommandEncoder().clearColorAndDepthTextures(this.glTexture, 0, this.depthTexture, 1.0);
+        Arrays.fill(rowCursor, 0);
+        residents.clear();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        depthTextureView.close();
+        depthTexture.close();
+        projectionMatrix.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.danmakuchat.render;
+
+import com.danmakuchat.stats.DanmakuStats;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.text.Text;
+
+import java.util.List;
+
+/**
+ * {@link DanmakuStats} の計測値を画面右上に表示するデバッグ用オーバーレイ。
+ *
+ * 表示する行は {@link #REFRESH_INTERVAL_NANOS} ごとにだけ作り直し、それ以外のフレームでは
+ * 前回作った行をそのまま描画するため、文字列の整形によるフレームごとの割り当てはありません。
+ */
+public class StatsOverlay {
+    private static final long REFRESH_INTERVAL_NANOS = 500_000_000L;
+    private static final int MARGIN = 4;
+    private static final int BACKGROUND_COLOR = 0x90000000;
+    private static final int TEXT_COLOR = 0xFFFFFFFF;
+
+    private List<Text> lines = List.of();
+    private int width = 0;
+    private long lastRefreshNanos = 0;
+    private boolean refreshed = false;
+
+    /**
+     * オーバーレイを描画します。
+     *
+     * @param context 描画コンテキスト
+     * @param textRenderer テキストレンダラー
+     * @param screenWidth 画面幅（ピクセル）
+     * @param nowNanos 現在の単調時刻
+     */
+    public void render(DrawContext context, TextRenderer textRenderer, int screenWidth, long nowNanos) {
+        if (!refreshed || nowNanos - lastRefreshNanos >= REFRESH_INTERVAL_NANOS) {
+            lines = DanmakuStats.getInstance().describe();
+            width = 0;
+            for (Text line : lines) {
+                width = Math.max(width, textRenderer.getWidth(line));
+            }
+            lastRefreshNanos = nowNanos;
+            refreshed = true;
+        }
+
+        int lineHeight = textRenderer.fontHeight + 1;
+        int left = screenWidth - width - MARGIN;
+        context.fill(left - 2, MARGIN - 2, screenWidth - MARGIN + 2, MARGIN + lines.size() * lineHeight, BACKGROUND_COLOR);
+        for (int i = 0, count = lines.size(); i < count; i++) {
+            context.drawTextWithShadow(textRenderer, lines.get(i), left, MARGIN + i * lineHeight, TEXT_COLOR);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.danmakuchat.render;
+
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * テキストの幅と描画用の {@link OrderedText} をキャッシュする有界 LRU キャッシュ。
+ *
+ * チャットでは「gg」「www」「888」や参加・退出メッセージなど同じ内容が何度も流れるため、
+ * スタイル付きの内容とフォントサイズをキーにしてレイアウト結果を使い回します。
+ * キーはテキストの木構造ではなく、スタイルごとに平坦化した文字列の並びなので、
+ * 組み立て方が異なっても見た目が同じテキストは同じエントリを共有します。
+ *
+ * 描画スレッドからのみ使用してください。
+ */
+public class TextLayoutCache {
+    private final Map<Key, CachedText> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxEntries 保持するエントリの最大数
+     */
+    public TextLayoutCache(int maxEntries) {
+        // アクセス順の LinkedHashMap で、最も長く使われていないエントリから追い出す
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedText> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * テキストのレイアウトを取得します。キャッシュになければ測定して登録します。
+     *
+     * @param text レイアウトするテキスト
+     * @param fontSize フォントサイズの倍率
+     * @param textRenderer 幅の測定に使うレンダラー
+     * @return レイアウト済みのテキスト
+     */
+    public CachedText get(Text text, float fontSize, TextRenderer textRenderer) {
+        Key key = new Key(flatten(text), fontSize);
+
+        CachedText cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+
+        misses++;
+        OrderedText orderedText = text.asOrderedText();
+        cached = new CachedText(orderedText, textRenderer.getWidth(orderedText), fontSize);
+        entries.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * テキストをスタイルごとの区間の並びに平坦化します。同じスタイルが続く区間は結合します。
+     */
+    private static List<Segment> flatten(Text text) {
+        List<Segment> segments = new ArrayList<>();
+        text.visit((style, string) -> {
+            if (!string.isEmpty()) {
+                int last = segments.size() - 1;
+                if (last >= 0 && segments.get(last).style().equals(style)) {
+                    segments.set(last, new Segment(style, segments.get(last).content() + string));
+                } else {
+                    segments.add(new Segment(style, string));
+                }
+            }
+            return Optional.empty();
+        }, Style.EMPTY);
+        return segments;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private record Segment(Style style, String content) {
+    }
+
+    private record Key(List<Segment> segments, float fontSize) {
+    }
+}
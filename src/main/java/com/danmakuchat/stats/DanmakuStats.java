@@ -0,0 +1,198 @@
+package com.danmakuchat.stats;
+
+import com.danmakuchat.DanmakuChat;
+import com.danmakuchat.danmaku.DanmakuManager;
+import com.danmakuchat.danmaku.PendingQueue;
+import com.danmakuchat.external.ExternalChatServer;
+import com.danmakuchat.render.DanmakuRenderer;
+import com.danmakuchat.render.TextLayoutCache;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 弾幕の処理にかかった時間と流量の計測値をまとめて保持します。
+ *
+ * フレームごとの処理時間（期限切れの削除・取り込みとレーン割り当て・描画）と、
+ * 受信してから画面に出るまでの待ち時間を {@link LatencyHistogram} に記録します。
+ * ヒストグラムは生成時に確保済みなので、計測によるフレームごとの割り当てはありません。
+ * 破棄件数とレイアウトキャッシュのヒット・ミス・追い出しの回数は各コンポーネントが持つ累計値を読み、
+ * {@link #reset()} した時点からの差分として表示します。
+ *
+ * 描画スレッドからのみ使用してください（クライアントコマンドも描画スレッドで実行されます）。
+ * ただしシミュレーションスレッドの有効時は、刻みの処理時間と表示までの待ち時間はそのスレッドが記録します。
+ * 表示やリセットと記録が重なった場合、その回の値が多少ずれることがあります。
+ */
+public class DanmakuStats {
+    private static final DanmakuStats instance = new DanmakuStats();
+
+    private final LatencyHistogram updateTime = new LatencyHistogram();
+    private final LatencyHistogram assignTime = new LatencyHistogram();
+    private final LatencyHistogram drawTime = new LatencyHistogram();
+    private final LatencyHistogram displayLatency = new LatencyHistogram();
+    private final LatencyHistogram simulationTime = new LatencyHistogram();
+
+    private int peakActive = 0;
+    private int peakPending = 0;
+
+    // reset() 時点の累計値
+    private long baseDropped = 0;
+    private long baseExpired = 0;
+    private long baseRateLimited = 0;
+    private long baseMerged = 0;
+    private long baseRejected = 0;
+    private long baseLayoutHits = 0;
+    private long baseLayoutMisses = 0;
+    private long baseLayoutEvictions = 0;
+
+    private boolean overlayVisible = false;
+
+    private DanmakuStats() {
+    }
+
+    public static DanmakuStats getInstance() {
+        return instance;
+    }
+
+    /**
+     * 1 フレーム分の処理時間と表示件数を記録します。
+     *
+     * @param updateNanos 画面外に出たメッセージの削除にかかった時間
+     * @param assignNanos 受信キューの取り込みとレーン割り当てにかかった時間
+     * @param drawNanos 描画にかかった時間
+     * @param activeCount 表示中のメッセージ数
+     * @param pendingCount 待機中のメッセージ数
+     */
+    public void recordFrame(long updateNanos, long assignNanos, long drawNanos, int activeCount, int pendingCount) {
+        updateTime.record(updateNanos);
+        assignTime.record(assignNanos);
+        drawTime.record(drawNanos);
+        if (activeCount > peakActive) {
+            peakActive = activeCount;
+        }
+        if (pendingCount > peakPending) {
+            peakPending = pendingCount;
+        }
+    }
+
+    /**
+     * メッセージが受信されてからレーンを割り当てられて画面に出るまでの時間のヒストグラムを返します。
+     * {@link com.danmakuchat.danmaku.LaneAssigner} が出現させたときに記録します。
+     *
+     * @return 表示までの待ち時間のヒストグラム
+     */
+    public LatencyHistogram getDisplayLatency() {
+        return displayLatency;
+    }
+
+    /**
+     * シミュレーションスレッドの 1 回の刻みにかかった時間を記録します。
+     *
+     * @param tickNanos 処理時間（ナノ秒）
+     */
+    public void recordSimulationTick(long tickNanos) {
+        simulationTime.record(tickNanos);
+    }
+
+    /**
+     * 計測値をすべて消去し、破棄件数をこの時点から数え直します。
+     */
+    public void reset() {
+        updateTime.reset();
+        assignTime.reset();
+        drawTime.reset();
+        displayLatency.reset();
+        simulationTime.reset();
+        peakActive = 0;
+        peakPending = 0;
+
+        DanmakuManager manager = DanmakuManager.getInstance();
+        PendingQueue<?> pending = manager.getPendingQueue();
+        baseDropped = pending.getDroppedCount();
+        baseExpired = pending.getExpiredCount();
+        baseRateLimited = manager.getRateLimiter().getLimitedCount();
+        baseMerged = manager.getRepeatCoalescer().getMergedCount();
+        baseRejected = ExternalChatServer.getInstance().getRejectedCount();
+
+        TextLayoutCache layoutCache = getLayoutCache();
+        if (layoutCache != null) {
+            baseLayoutHits = layoutCache.getHits();
+            baseLayoutMisses = layoutCache.getMisses();
+            baseLayoutEvictions = layoutCache.getEvictions();
+        }
+    }
+
+    public boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+
+    public void setOverlayVisible(boolean overlayVisible) {
+        this.overlayVisible = overlayVisible;
+    }
+
+    /**
+     * 現在の計測値を表示用の行にまとめます。
+     *
+     * @return 表示する行
+     */
+    public List<Text> describe() {
+        DanmakuManager manager = DanmakuManager.getInstance();
+        PendingQueue<?> pending = manager.getPendingQueue();
+        long expired = pending.getExpiredCount() - baseExpired;
+
+        List<Text> lines = new ArrayList<>(10);
+        lines.add(describeTiming("danmakuchat.stats.update", updateTime));
+        lines.add(describeTiming("danmakuchat.stats.assign", assignTime));
+        lines.add(describeTiming("danmakuchat.stats.draw", drawTime));
+        if (simulationTime.getCount() > 0) {
+            lines.add(describeTiming("danmakuchat.stats.simulation", simulationTime));
+        }
+        lines.add(describeTiming("danmakuchat.stats.latency", displayLatency));
+        lines.add(Text.translatable("danmakuchat.stats.messages",
+            manager.getActiveCount(), pending.size(), peakActive, peakPending, manager.getIngressBacklog()));
+        lines.add(Text.translatable("danmakuchat.stats.lanes",
+            manager.getOccupiedLaneCount(System.nanoTime()), manager.getLaneCount()));
+        lines.add(Text.translatable("danmakuchat.stats.drops",
+            pending.getDroppedCount() - baseDropped - expired,
+            expired,
+            manager.getRateLimiter().getLimitedCount() - baseRateLimited,
+            manager.getRepeatCoalescer().getMergedCount() - baseMerged,
+            ExternalChatServer.getInstance().getRejectedCount() - baseRejected));
+        lines.add(Text.translatable("danmakuchat.stats.quality", manager.getQualityGovernor().getLevel().name()));
+
+        TextLayoutCache layoutCache = getLayoutCache();
+        if (layoutCache != null) {
+            lines.add(Text.translatable("danmakuchat.stats.layout_cache",
+                layoutCache.getHits() - baseLayoutHits,
+                layoutCache.getMisses() - baseLayoutMisses,
+                layoutCache.getEvictions() - baseLayoutEvictions,
+                layoutCache.size()));
+        }
+        return lines;
+    }
+
+    /**
+     * 弾幕レンダラーのレイアウトキャッシュを返します。レンダラーの初期化前は null です。
+     */
+    private static @Nullable TextLayoutCache getLayoutCache() {
+        DanmakuRenderer renderer = DanmakuChat.getRenderer();
+        return renderer != null ? renderer.getLayoutCache() : null;
+    }
+
+    private static Text describeTiming(String key, LatencyHistogram histogram) {
+        return Text.translatable("danmakuchat.stats.timing",
+            Text.translatable(key),
+            formatMillis(histogram.getMean()),
+            formatMillis(histogram.getValueAtPercentile(50)),
+            formatMillis(histogram.getValueAtPercentile(99)),
+            formatMillis(histogram.getMax()),
+            histogram.getCount());
+    }
+
+    private static String formatMillis(double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}